@@ -0,0 +1,440 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.apache.cassandra.thrift.AuthenticationRequest;
+import org.apache.cassandra.thrift.Cassandra;
+import org.apache.cassandra.thrift.Compression;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.CqlPreparedResult;
+import org.apache.cassandra.thrift.CqlResult;
+import org.apache.cassandra.thrift.InvalidRequestException;
+import org.apache.thrift.TException;
+import org.apache.thrift.async.AsyncMethodCallback;
+import org.apache.thrift.async.TAsyncClientManager;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.transport.TNonblockingSocket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTimeoutException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.apache.cassandra.cql.jdbc.Utils.ASYNC_TIMED_OUT;
+import static org.apache.cassandra.cql.jdbc.Utils.WAS_CLOSED_CON;
+
+/**
+ * Non-blocking execution of CQL requests for a {@link CassandraConnection}.
+ * <p/>
+ * Requests are sent over a small set of {@link Cassandra.AsyncClient} channels that are opened lazily against the
+ * host the connection is bound to. A Thrift async client can only carry one call at a time, so each channel runs
+ * one request and then picks up the next pending one. All channels of all connections in the JVM share the single
+ * selector thread of one {@link TAsyncClientManager}.
+ */
+class CassandraAsyncExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(CassandraAsyncExecutor.class);
+
+    private static final TBinaryProtocol.Factory protocolFactory = new TBinaryProtocol.Factory();
+
+    private static TAsyncClientManager clientManager;
+
+    private final String host;
+
+    private final int port;
+
+    private final String username;
+
+    private final String password;
+
+    private final String cqlVersion;
+
+    private final int majorCqlVersion;
+
+    private final int maxChannels;
+
+    /**
+     * the time in milliseconds a call may wait for its response before it fails, 0 to wait forever
+     */
+    private final long timeout;
+
+    private final AtomicInteger openChannels = new AtomicInteger();
+
+    private final ConcurrentLinkedQueue<Channel> idleChannels = new ConcurrentLinkedQueue<Channel>();
+
+    private final ConcurrentLinkedQueue<PendingCall> pendingCalls = new ConcurrentLinkedQueue<PendingCall>();
+
+    /**
+     * the ids of the statements the host forgot, mapped to the ids they were prepared again with
+     */
+    private final ConcurrentMap<Integer, Integer> repreparedIds = new ConcurrentHashMap<Integer, Integer>();
+
+    private volatile boolean closed = false;
+
+    CassandraAsyncExecutor(String host, int port, String username, String password, String cqlVersion,
+                           int majorCqlVersion, int maxChannels, long timeout) {
+        this.host = host;
+        this.port = port;
+        this.username = username;
+        this.password = password;
+        this.cqlVersion = cqlVersion;
+        this.majorCqlVersion = majorCqlVersion;
+        this.maxChannels = Math.max(1, maxChannels);
+        this.timeout = timeout;
+    }
+
+    /**
+     * The client manager (and its selector thread) is created on first use and shared by every connection.
+     */
+    static synchronized TAsyncClientManager getClientManager() throws IOException {
+        if (clientManager == null || !clientManager.isRunning()) {
+            clientManager = new TAsyncClientManager();
+        }
+        return clientManager;
+    }
+
+    /**
+     * Execute a CQL query string in the given keyspace.
+     *
+     * @return a future holding the raw result, or failing with the Thrift exception raised by the server
+     */
+    ListenableFuture<CqlResult> execute(final String queryStr, final Compression compression,
+                                        final ConsistencyLevel consistencyLevel, String keyspace) {
+        return submit(new PendingCall(keyspace) {
+            void invoke(Cassandra.AsyncClient client, Callback callback) throws TException {
+                client.execute_cql3_query(Utils.compressQuery(queryStr, compression), compression, consistencyLevel, callback);
+            }
+
+            CqlResult getResult(Object response) throws Exception {
+                return ((Cassandra.AsyncClient.execute_cql3_query_call) response).getResult();
+            }
+        });
+    }
+
+    /**
+     * Execute a statement that was prepared on the host of this executor. If the host no longer knows the statement,
+     * it is prepared again on the same channel and executed with its new id, which later executions of the old id
+     * go straight to.
+     *
+     * @param queryStr the CQL the statement was prepared from
+     * @return a future holding the raw result, or failing with the Thrift exception raised by the server
+     */
+    ListenableFuture<CqlResult> execute(final String queryStr, final int itemId, final List<ByteBuffer> values,
+                                        final ConsistencyLevel consistencyLevel, final String keyspace) {
+        return submit(new PendingCall(keyspace) {
+            void invoke(Cassandra.AsyncClient client, Callback callback) throws TException {
+                Integer reprepared = repreparedIds.get(itemId);
+                client.execute_prepared_cql3_query(reprepared == null ? itemId : reprepared, values, consistencyLevel,
+                        callback);
+            }
+
+            CqlResult getResult(Object response) throws Exception {
+                return ((Cassandra.AsyncClient.execute_prepared_cql3_query_call) response).getResult();
+            }
+
+            String getPreparedQuery() {
+                return queryStr;
+            }
+
+            void reprepared(CqlPreparedResult result) {
+                repreparedIds.put(itemId, result.getItemId());
+                PreparedStatementCache.put(host, keyspace, queryStr, result);
+            }
+        });
+    }
+
+    /**
+     * Close every channel and fail the requests that have not been sent yet.
+     */
+    void close() {
+        closed = true;
+        Channel channel;
+        while ((channel = idleChannels.poll()) != null) {
+            channel.close();
+        }
+        PendingCall call;
+        while ((call = pendingCalls.poll()) != null) {
+            call.future.setException(new SQLNonTransientConnectionException(WAS_CLOSED_CON));
+        }
+    }
+
+    private ListenableFuture<CqlResult> submit(PendingCall call) {
+        if (closed) {
+            call.future.setException(new SQLNonTransientConnectionException(WAS_CLOSED_CON));
+            return call.future;
+        }
+        pendingCalls.offer(call);
+        drain();
+        return call.future;
+    }
+
+    /**
+     * Hand pending calls to idle channels, opening new channels up to the configured maximum.
+     */
+    private void drain() {
+        while (!pendingCalls.isEmpty()) {
+            Channel channel = idleChannels.poll();
+            if (channel == null) {
+                channel = openChannel();
+                if (channel == null) {
+                    // every channel is busy; the next one to finish will pick up the work
+                    return;
+                }
+            }
+            PendingCall call = pendingCalls.poll();
+            if (call == null) {
+                idleChannels.offer(channel);
+            } else {
+                channel.run(call);
+            }
+        }
+    }
+
+    private Channel openChannel() {
+        while (true) {
+            int open = openChannels.get();
+            if (closed || open >= maxChannels) {
+                return null;
+            }
+            if (openChannels.compareAndSet(open, open + 1)) {
+                break;
+            }
+        }
+        try {
+            return new Channel();
+        } catch (IOException e) {
+            logger.error("unable to open async channel to " + host + " : " + e.toString());
+            if (openChannels.decrementAndGet() == 0) {
+                // nobody is left to process the queue, so fail what is waiting
+                PendingCall call;
+                while ((call = pendingCalls.poll()) != null) {
+                    call.future.setException(new SQLNonTransientConnectionException(e));
+                }
+            }
+            return null;
+        }
+    }
+
+    private void release(Channel channel) {
+        if (closed) {
+            channel.close();
+            return;
+        }
+        idleChannels.offer(channel);
+        drain();
+    }
+
+    private void discard(Channel channel) {
+        channel.close();
+        openChannels.decrementAndGet();
+        drain();
+    }
+
+    abstract static class PendingCall {
+        final SettableFuture<CqlResult> future = SettableFuture.create();
+
+        final String keyspace;
+
+        /**
+         * whether the statement was already prepared again, which is only tried once
+         */
+        boolean reprepared;
+
+        PendingCall(String keyspace) {
+            this.keyspace = keyspace;
+        }
+
+        abstract void invoke(Cassandra.AsyncClient client, Callback callback) throws TException;
+
+        abstract CqlResult getResult(Object response) throws Exception;
+
+        /**
+         * @return the CQL to prepare again if the host no longer knows the prepared statement the call executes,
+         * or null if the call does not execute a prepared statement
+         */
+        String getPreparedQuery() {
+            return null;
+        }
+
+        /**
+         * Take over the statement prepared again, before the call is sent once more.
+         */
+        void reprepared(CqlPreparedResult result) {
+        }
+    }
+
+    abstract static class Callback implements AsyncMethodCallback<Object> {
+    }
+
+    /**
+     * One non-blocking Thrift connection. A channel is owned by exactly one call at a time.
+     */
+    private class Channel {
+        private final TNonblockingSocket socket;
+
+        private final Cassandra.AsyncClient client;
+
+        private boolean loggedIn;
+
+        private boolean versionSet;
+
+        private String keyspace;
+
+        Channel() throws IOException {
+            socket = new TNonblockingSocket(host, port);
+            client = new StreamingClient.Async(protocolFactory, getClientManager(), socket);
+            if (timeout > 0) {
+                // a hung host fails the call on the selector thread instead of leaving its future pending forever
+                client.setTimeout(timeout);
+            }
+            loggedIn = username == null;
+            versionSet = majorCqlVersion <= 2;
+        }
+
+        /**
+         * Bring the channel session up to date with what the call needs, then send the call itself.
+         */
+        void run(final PendingCall call) {
+            try {
+                if (!loggedIn) {
+                    Map<String, String> credentials = new HashMap<String, String>();
+                    credentials.put("username", username);
+                    if (password != null) {
+                        credentials.put("password", password);
+                    }
+                    client.login(new AuthenticationRequest(credentials), new SetupCallback(call) {
+                        void done(Object response) throws Exception {
+                            ((Cassandra.AsyncClient.login_call) response).getResult();
+                            loggedIn = true;
+                        }
+                    });
+                } else if (!versionSet) {
+                    client.set_cql_version(cqlVersion, new SetupCallback(call) {
+                        void done(Object response) throws Exception {
+                            ((Cassandra.AsyncClient.set_cql_version_call) response).getResult();
+                            versionSet = true;
+                        }
+                    });
+                } else if (call.keyspace != null && !call.keyspace.equals(keyspace)) {
+                    client.set_keyspace(call.keyspace, new SetupCallback(call) {
+                        void done(Object response) throws Exception {
+                            ((Cassandra.AsyncClient.set_keyspace_call) response).getResult();
+                            keyspace = call.keyspace;
+                        }
+                    });
+                } else {
+                    call.invoke(client, new Callback() {
+                        public void onComplete(Object response) {
+                            try {
+                                call.future.set(call.getResult(response));
+                            } catch (InvalidRequestException e) {
+                                if (!call.reprepared && call.getPreparedQuery() != null
+                                        && PreparedStatementCache.isUnknown(e)) {
+                                    reprepare(call);
+                                    return;
+                                }
+                                call.future.setException(e);
+                            } catch (Exception e) {
+                                call.future.setException(e);
+                            }
+                            release(Channel.this);
+                        }
+
+                        public void onError(Exception e) {
+                            fail(call, e);
+                        }
+                    });
+                }
+            } catch (Exception e) {
+                fail(call, e);
+            }
+        }
+
+        /**
+         * Prepare the statement of the call again on this channel, then send the call once more.
+         */
+        private void reprepare(final PendingCall call) {
+            call.reprepared = true;
+            try {
+                client.prepare_cql3_query(Utils.compressQuery(call.getPreparedQuery(), Compression.NONE),
+                        Compression.NONE, new SetupCallback(call) {
+                            void done(Object response) throws Exception {
+                                call.reprepared(((Cassandra.AsyncClient.prepare_cql3_query_call) response).getResult());
+                            }
+                        });
+            } catch (Exception e) {
+                fail(call, e);
+            }
+        }
+
+        private void fail(PendingCall call, Exception e) {
+            if (e instanceof TimeoutException) {
+                call.future.setException(new SQLTimeoutException(String.format(ASYNC_TIMED_OUT, host, timeout), e));
+            } else {
+                call.future.setException(e);
+            }
+            if (client.hasError() || !socket.isOpen()) {
+                discard(this);
+            } else {
+                release(this);
+            }
+        }
+
+        void close() {
+            socket.close();
+        }
+
+        private abstract class SetupCallback extends Callback {
+            private final PendingCall call;
+
+            SetupCallback(PendingCall call) {
+                this.call = call;
+            }
+
+            abstract void done(Object response) throws Exception;
+
+            public void onComplete(Object response) {
+                try {
+                    done(response);
+                } catch (Exception e) {
+                    fail(call, e);
+                    return;
+                }
+                run(call);
+            }
+
+            public void onError(Exception e) {
+                fail(call, e);
+            }
+        }
+    }
+}
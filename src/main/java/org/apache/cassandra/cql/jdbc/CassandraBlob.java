@@ -0,0 +1,131 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.sql.Blob;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLNonTransientException;
+import java.sql.SQLRecoverableException;
+
+import static org.apache.cassandra.cql.jdbc.Utils.BAD_BLOB_POSITION;
+import static org.apache.cassandra.cql.jdbc.Utils.NOT_SUPPORTED;
+import static org.apache.cassandra.cql.jdbc.Utils.WAS_FREED;
+
+/**
+ * A read-only Blob over the value of a column as received from the server, which is not copied until bytes are
+ * asked for as an array.
+ */
+class CassandraBlob implements Blob {
+    private ByteBuffer value;
+
+    CassandraBlob(ByteBuffer value) {
+        this.value = value.asReadOnlyBuffer();
+    }
+
+    private ByteBuffer getValue() throws SQLException {
+        if (value == null) {
+            throw new SQLRecoverableException(WAS_FREED);
+        }
+        return value;
+    }
+
+    public long length() throws SQLException {
+        return getValue().remaining();
+    }
+
+    public byte[] getBytes(long pos, int length) throws SQLException {
+        ByteBuffer slice = slice(pos, length);
+        byte[] bytes = new byte[slice.remaining()];
+        slice.get(bytes);
+        return bytes;
+    }
+
+    public InputStream getBinaryStream() throws SQLException {
+        return ByteBufferUtil.inputStream(getValue());
+    }
+
+    public InputStream getBinaryStream(long pos, long length) throws SQLException {
+        return ByteBufferUtil.inputStream(slice(pos, length));
+    }
+
+    /**
+     * @return a view of the bytes from the 1-based position on, at most length of them
+     */
+    private ByteBuffer slice(long pos, long length) throws SQLException {
+        ByteBuffer bytes = getValue();
+        if (pos < 1 || pos > bytes.remaining() + 1L || length < 0) {
+            throw new SQLNonTransientException(String.format(BAD_BLOB_POSITION, pos, length));
+        }
+        ByteBuffer slice = bytes.duplicate();
+        slice.position(bytes.position() + (int) (pos - 1));
+        slice.limit(slice.position() + (int) Math.min(length, slice.remaining()));
+        return slice;
+    }
+
+    public long position(byte[] pattern, long start) throws SQLException {
+        ByteBuffer bytes = getValue();
+        if (start < 1) {
+            throw new SQLNonTransientException(String.format(BAD_BLOB_POSITION, start, pattern.length));
+        }
+        int from = bytes.position();
+        int last = bytes.limit() - pattern.length;
+        search:
+        for (int i = from + (int) (start - 1); i <= last; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (bytes.get(i + j) != pattern[j]) {
+                    continue search;
+                }
+            }
+            return i - from + 1;
+        }
+        return -1;
+    }
+
+    public long position(Blob pattern, long start) throws SQLException {
+        return position(pattern.getBytes(1, (int) pattern.length()), start);
+    }
+
+    public int setBytes(long pos, byte[] bytes) throws SQLException {
+        throw new SQLFeatureNotSupportedException(NOT_SUPPORTED);
+    }
+
+    public int setBytes(long pos, byte[] bytes, int offset, int len) throws SQLException {
+        throw new SQLFeatureNotSupportedException(NOT_SUPPORTED);
+    }
+
+    public OutputStream setBinaryStream(long pos) throws SQLException {
+        throw new SQLFeatureNotSupportedException(NOT_SUPPORTED);
+    }
+
+    public void truncate(long len) throws SQLException {
+        throw new SQLFeatureNotSupportedException(NOT_SUPPORTED);
+    }
+
+    public void free() throws SQLException {
+        value = null;
+    }
+}
@@ -0,0 +1,376 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.CqlResult;
+import org.apache.thrift.TException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientException;
+import java.sql.SQLSyntaxErrorException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.apache.cassandra.cql.jdbc.Utils.*;
+
+/**
+ * Loads rows of bound values with one prepared INSERT (or UPDATE) statement, as fast as the cluster takes them.
+ * <p/>
+ * Rows are read in windows; the rows of a window are grouped by partition key and every group is sent as
+ * batches of the prepared statement, to a connection whose host is a replica of the partition if there
+ * is one. Batches are sent over the asynchronous channels of the connections, with a bounded number of them in
+ * flight across all connections.
+ * <p/>
+ * The batches are of the type the connection is configured with, except that LOGGED batches are sent UNLOGGED:
+ * whenever the statement binds the partition key the rows of a batch belong to one partition, whose updates are
+ * atomic without the batch log. COUNTER batches are kept, so counter tables can be loaded too.
+ * <p/>
+ * A loader for a single connection is obtained by unwrapping it:
+ * <pre>
+ *     CassandraBulkLoader loader = connection.unwrap(CassandraBulkLoader.class);
+ *     loader.load("INSERT INTO users (id, name) VALUES (?, ?)", rows);
+ * </pre>
+ * or it borrows several connections from a data source such as {@link PooledCassandraDataSource} and returns them
+ * when it is closed.
+ */
+public class CassandraBulkLoader {
+    private static final Logger logger = LoggerFactory.getLogger(CassandraBulkLoader.class);
+
+    private final List<CassandraConnection> connections = new ArrayList<CassandraConnection>();
+
+    /**
+     * the connections borrowed from a data source, to be closed with the loader
+     */
+    private final List<Connection> borrowed = new ArrayList<Connection>();
+
+    private int maxInFlight = 64;
+
+    private int windowSize = 1000;
+
+    private long maxErrors = 0;
+
+    private long reportInterval = 10000;
+
+    private ConsistencyLevel consistencyLevel;
+
+    private final AtomicLong rowsWritten = new AtomicLong();
+
+    private final AtomicLong rowsFailed = new AtomicLong();
+
+    private final AtomicLong batchesWritten = new AtomicLong();
+
+    private final AtomicLong batchesFailed = new AtomicLong();
+
+    private final AtomicReference<Throwable> firstError = new AtomicReference<Throwable>();
+
+    private volatile long startTime;
+
+    /**
+     * the connection to send a group of rows to when none of them is a replica of its partition
+     */
+    private int next;
+
+    CassandraBulkLoader(CassandraConnection connection) {
+        connections.add(connection);
+        consistencyLevel = connection.defaultConsistencyLevel;
+    }
+
+    /**
+     * Create a loader writing over several connections of a data source.
+     *
+     * @param dataSource  a data source handing out Cassandra connections, usually a pooled one
+     * @param connections the number of connections to borrow
+     */
+    public CassandraBulkLoader(DataSource dataSource, int connections) throws SQLException {
+        try {
+            for (int i = 0; i < connections; i++) {
+                Connection connection = dataSource.getConnection();
+                borrowed.add(connection);
+                if (!connection.isWrapperFor(CassandraConnection.class)) {
+                    throw new SQLNonTransientException(String.format(NO_BULK_LOAD, connection.getClass().getName()));
+                }
+                this.connections.add(connection.unwrap(CassandraConnection.class));
+            }
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+        consistencyLevel = this.connections.get(0).defaultConsistencyLevel;
+    }
+
+    /**
+     * @param maxInFlight the number of batches that may be waiting for the cluster at any time
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = Math.max(1, maxInFlight);
+    }
+
+    /**
+     * @param windowSize the number of rows read before they are grouped by partition key and sent
+     */
+    public void setWindowSize(int windowSize) {
+        this.windowSize = Math.max(1, windowSize);
+    }
+
+    /**
+     * @param maxErrors the number of rows that may fail before the load is aborted
+     */
+    public void setMaxErrors(long maxErrors) {
+        this.maxErrors = maxErrors;
+    }
+
+    /**
+     * @param reportInterval the milliseconds between progress reports in the log, 0 for no reports
+     */
+    public void setReportInterval(long reportInterval) {
+        this.reportInterval = reportInterval;
+    }
+
+    public void setConsistencyLevel(ConsistencyLevel consistencyLevel) {
+        this.consistencyLevel = consistencyLevel;
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten.get();
+    }
+
+    public long getRowsFailed() {
+        return rowsFailed.get();
+    }
+
+    public long getBatchesWritten() {
+        return batchesWritten.get();
+    }
+
+    public long getBatchesFailed() {
+        return batchesFailed.get();
+    }
+
+    /**
+     * @return the rows written per second since the last load started
+     */
+    public double getRowsPerSecond() {
+        long elapsed = System.currentTimeMillis() - startTime;
+        return elapsed <= 0 ? 0 : rowsWritten.get() * 1000.0 / elapsed;
+    }
+
+    /**
+     * Write all rows, returning when the cluster acknowledged or rejected every one of them.
+     *
+     * @param cql  the statement to prepare, with one bind marker per value of a row
+     * @param rows the values of the rows, bound in order as with {@link java.sql.PreparedStatement#setObject}
+     * @return the number of rows written by this load
+     * @throws SQLException when the statement can not be prepared, a row can not be bound or does not have one value
+     *                      per bind marker, or more than the accepted number of rows failed
+     */
+    public long load(String cql, Iterator<Object[]> rows) throws SQLException {
+        rowsWritten.set(0);
+        rowsFailed.set(0);
+        batchesWritten.set(0);
+        batchesFailed.set(0);
+        firstError.set(null);
+        startTime = System.currentTimeMillis();
+        List<CassandraPreparedStatement> statements = new ArrayList<CassandraPreparedStatement>(connections.size());
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        try {
+            for (CassandraConnection connection : connections) {
+                statements.add(connection.prepareStatement(cql));
+            }
+            CassandraPreparedStatement binder = statements.get(0);
+            int[] keyIndexes = binder.getPartitionKeyIndexes();
+            Map<ByteBuffer, List<List<ByteBuffer>>> groups = new LinkedHashMap<ByteBuffer, List<List<ByteBuffer>>>();
+            ByteBuffer noKey = ByteBuffer.allocate(0);
+            long lastReport = startTime;
+            int windowed = 0;
+            long read = 0;
+            while (rows.hasNext() && !aborted()) {
+                Object[] row = rows.next();
+                read++;
+                if (row.length != binder.getCount()) {
+                    throw new SQLSyntaxErrorException(String.format(BAD_ROW_LENGTH, read, row.length,
+                            binder.getCount()));
+                }
+                // no value of the previous row is left bound
+                binder.clearParameters();
+                for (int i = 0; i < row.length; i++) {
+                    binder.setObject(i + 1, row[i]);
+                }
+                List<ByteBuffer> values = binder.getBindValues();
+                ByteBuffer key = keyIndexes == null ? noKey : getPartitionKey(values, keyIndexes);
+                List<List<ByteBuffer>> group = groups.get(key);
+                if (group == null) {
+                    group = new ArrayList<List<ByteBuffer>>();
+                    groups.put(key, group);
+                }
+                group.add(values);
+                if (++windowed == windowSize) {
+                    send(groups, statements, inFlight);
+                    windowed = 0;
+                }
+                if (reportInterval > 0 && System.currentTimeMillis() - lastReport >= reportInterval) {
+                    report();
+                    lastReport = System.currentTimeMillis();
+                }
+            }
+            send(groups, statements, inFlight);
+            inFlight.acquire(maxInFlight);
+            inFlight.release(maxInFlight);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientException(e);
+        } finally {
+            for (CassandraPreparedStatement statement : statements) {
+                statement.close();
+            }
+        }
+        if (reportInterval > 0) {
+            report();
+        }
+        if (aborted()) {
+            Throwable error = firstError.get();
+            throw new SQLNonTransientException(String.format(LOAD_ABORTED, rowsFailed.get(), error), error);
+        }
+        return rowsWritten.get();
+    }
+
+    private boolean aborted() {
+        return rowsFailed.get() > maxErrors;
+    }
+
+    private void report() {
+        logger.info(String.format("bulk load: %d rows written, %d rows failed, %d batches written, %d batches failed, %.0f rows/s",
+                rowsWritten.get(), rowsFailed.get(), batchesWritten.get(), batchesFailed.get(), getRowsPerSecond()));
+    }
+
+    static ByteBuffer getPartitionKey(List<ByteBuffer> values, int[] keyIndexes) {
+        ByteBuffer[] components = new ByteBuffer[keyIndexes.length];
+        for (int i = 0; i < keyIndexes.length; i++) {
+            components[i] = values.get(keyIndexes[i] - 1);
+        }
+        return TokenRing.routingKey(components);
+    }
+
+    /**
+     * Send and clear the grouped rows of a window.
+     */
+    private void send(Map<ByteBuffer, List<List<ByteBuffer>>> groups, List<CassandraPreparedStatement> statements,
+                      Semaphore inFlight) throws SQLException, InterruptedException {
+        for (Map.Entry<ByteBuffer, List<List<ByteBuffer>>> entry : groups.entrySet()) {
+            int target = next++ % statements.size();
+            if (entry.getKey().hasRemaining()) {
+                for (int i = 0; i < statements.size(); i++) {
+                    int candidate = (target + i) % statements.size();
+                    if (connections.get(candidate).isReplica(entry.getKey())) {
+                        target = candidate;
+                        break;
+                    }
+                }
+            }
+            send(entry.getValue(), statements.get(target), connections.get(target), inFlight);
+        }
+        groups.clear();
+    }
+
+    private void send(List<List<ByteBuffer>> rows, CassandraPreparedStatement statement, CassandraConnection connection,
+                      Semaphore inFlight) throws SQLException, InterruptedException {
+        int count = statement.getCount();
+        int done = 0;
+        while (done < rows.size() && !aborted()) {
+            final int batched = statement.nextBatch(rows, done) - done;
+            int itemId;
+            String itemCql;
+            List<ByteBuffer> values;
+            if (batched == 1) {
+                itemId = statement.getItemId();
+                itemCql = statement.cql;
+                values = rows.get(done);
+            } else {
+                String batchType = "COUNTER".equals(connection.batchType) ? "COUNTER" : "UNLOGGED";
+                try {
+                    itemId = statement.getBatchItemId(batchType, batched);
+                    itemCql = statement.getBatchCql(batchType, batched);
+                } catch (TException e) {
+                    throw CassandraStatement.translateException(e, statement.cql);
+                }
+                values = new ArrayList<ByteBuffer>(count * batched);
+                for (int i = done; i < done + batched; i++) {
+                    values.addAll(rows.get(i));
+                }
+            }
+            inFlight.acquire();
+            final Semaphore permits = inFlight;
+            final DriverMetrics.QueryMetrics metrics = batched == 1
+                    ? statement.getMetrics() : statement.getBatchMetrics();
+            final long start = System.nanoTime();
+            Futures.addCallback(connection.executeAsync(itemCql, itemId, values, consistencyLevel), new FutureCallback<CqlResult>() {
+                public void onSuccess(CqlResult result) {
+                    metrics.record(start);
+                    rowsWritten.addAndGet(batched);
+                    batchesWritten.incrementAndGet();
+                    permits.release();
+                }
+
+                public void onFailure(Throwable t) {
+                    metrics.record(start);
+                    firstError.compareAndSet(null, t);
+                    rowsFailed.addAndGet(batched);
+                    batchesFailed.incrementAndGet();
+                    logger.debug("bulk load batch failed", t);
+                    permits.release();
+                }
+            });
+            done += batched;
+        }
+    }
+
+    /**
+     * Return the connections borrowed from a data source.
+     */
+    public void close() throws SQLException {
+        SQLException failure = null;
+        for (Connection connection : borrowed) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                failure = e;
+            }
+        }
+        borrowed.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -20,13 +20,18 @@
  */
 package org.apache.cassandra.cql.jdbc;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import org.apache.cassandra.thrift.*;
+import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.thrift.TException;
 import org.apache.thrift.protocol.TBinaryProtocol;
 import org.apache.thrift.protocol.TProtocol;
 import org.apache.thrift.transport.TFramedTransport;
 import org.apache.thrift.transport.TSocket;
 import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,7 +47,9 @@ import java.sql.SQLSyntaxErrorException;
 import java.sql.SQLTimeoutException;
 import java.sql.SQLWarning;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.List;
@@ -57,24 +64,44 @@ import static org.apache.cassandra.cql.jdbc.CassandraResultSet.DEFAULT_CONCURREN
 import static org.apache.cassandra.cql.jdbc.CassandraResultSet.DEFAULT_HOLDABILITY;
 import static org.apache.cassandra.cql.jdbc.CassandraResultSet.DEFAULT_TYPE;
 import static org.apache.cassandra.cql.jdbc.Utils.ALWAYS_AUTOCOMMIT;
+import static org.apache.cassandra.cql.jdbc.Utils.BAD_BATCH_TYPE;
 import static org.apache.cassandra.cql.jdbc.Utils.BAD_TIMEOUT;
+import static org.apache.cassandra.cql.jdbc.Utils.NO_ASYNC;
 import static org.apache.cassandra.cql.jdbc.Utils.NO_INTERFACE;
 import static org.apache.cassandra.cql.jdbc.Utils.NO_TRANSACTIONS;
 import static org.apache.cassandra.cql.jdbc.Utils.PROTOCOL;
 import static org.apache.cassandra.cql.jdbc.Utils.TAG_ACTIVE_CQL_VERSION;
+import static org.apache.cassandra.cql.jdbc.Utils.TAG_ASYNC_CHANNELS;
+import static org.apache.cassandra.cql.jdbc.Utils.TAG_ASYNC_TIMEOUT;
 import static org.apache.cassandra.cql.jdbc.Utils.TAG_BACKUP_DC;
+import static org.apache.cassandra.cql.jdbc.Utils.TAG_BATCH_SIZE;
+import static org.apache.cassandra.cql.jdbc.Utils.TAG_FETCH_SIZE;
+import static org.apache.cassandra.cql.jdbc.Utils.TAG_MEMORY_BUDGET;
+import static org.apache.cassandra.cql.jdbc.Utils.TAG_PAGE_BYTES;
+import static org.apache.cassandra.cql.jdbc.Utils.TAG_PARALLEL_DECODING;
+import static org.apache.cassandra.cql.jdbc.Utils.TAG_PREFETCH_PAGES;
+import static org.apache.cassandra.cql.jdbc.Utils.TAG_PREFETCH_THRESHOLD;
+import static org.apache.cassandra.cql.jdbc.Utils.TAG_BATCH_TYPE;
 import static org.apache.cassandra.cql.jdbc.Utils.TAG_CONNECTION_RETRIES;
 import static org.apache.cassandra.cql.jdbc.Utils.TAG_CONSISTENCY_LEVEL;
 import static org.apache.cassandra.cql.jdbc.Utils.TAG_CQL_VERSION;
 import static org.apache.cassandra.cql.jdbc.Utils.TAG_DATABASE_NAME;
+import static org.apache.cassandra.cql.jdbc.Utils.TAG_DEDUP_STRINGS;
+import static org.apache.cassandra.cql.jdbc.Utils.TAG_HOST_SELECTION;
 import static org.apache.cassandra.cql.jdbc.Utils.TAG_PASSWORD;
 import static org.apache.cassandra.cql.jdbc.Utils.TAG_PORT_NUMBER;
 import static org.apache.cassandra.cql.jdbc.Utils.TAG_PRIMARY_DC;
 import static org.apache.cassandra.cql.jdbc.Utils.TAG_SERVER_NAME;
+import static org.apache.cassandra.cql.jdbc.Utils.TAG_SNAPSHOT_REFRESH;
+import static org.apache.cassandra.cql.jdbc.Utils.TAG_STATEMENT_POOL_SIZE;
+import static org.apache.cassandra.cql.jdbc.Utils.TAG_TOKEN_AWARE;
 import static org.apache.cassandra.cql.jdbc.Utils.TAG_USER;
 import static org.apache.cassandra.cql.jdbc.Utils.WAS_CLOSED_CON;
+import static org.apache.cassandra.cql.jdbc.Utils.chooseCompression;
 import static org.apache.cassandra.cql.jdbc.Utils.createSubName;
+import static org.apache.cassandra.cql.jdbc.Utils.determineCurrentColumnFamily;
 import static org.apache.cassandra.cql.jdbc.Utils.determineCurrentKeyspace;
+import static org.apache.cassandra.cql.jdbc.Utils.isSchemaChange;
 
 
 /**
@@ -89,8 +116,12 @@ class CassandraConnection extends AbstractConnection implements Connection {
     static final String IS_VALID_CQLQUERY_2_0_0 = "SELECT COUNT(1) FROM system.Versions WHERE component = 'cql';";
     static final String IS_VALID_CQLQUERY_3_0_0 = "SELECT COUNT(1) FROM system.\"Versions\" WHERE component = 'cql';";
     private static final Logger logger = LoggerFactory.getLogger(CassandraConnection.class);
-    public static Integer roundRobinIndex;
+    private static final long REPLICA_RETRY_DELAY = 30000;
     public static Compression defaultCompression = Compression.GZIP;
+    /**
+     * queries shorter than this are sent uncompressed, whatever the compression asked for
+     */
+    public static int compressionThreshold = 512;
 
     private final int transactionIsolation = Connection.TRANSACTION_NONE;
     protected long timeOfLastFailure = 0;
@@ -121,12 +152,100 @@ class CassandraConnection extends AbstractConnection implements Connection {
     private TTransport transport;
     private TSocket socket;
     private String currentCqlVersion;
+    private String currentHost;
+    private int port;
+    private String password;
+    private int asyncChannels;
+    /**
+     * The time in milliseconds an asynchronous request may wait for its response, 0 to wait forever
+     */
+    private long asyncTimeout;
+    /**
+     * The key the cluster snapshot of this connection is shared under
+     */
+    private String snapshotKey;
+    /**
+     * Non-blocking channels to the current host, opened on the first asynchronous request
+     */
+    private CassandraAsyncExecutor asyncExecutor;
+    /**
+     * Chooses the host to connect to among the nodes of the preferred datacenter
+     */
+    private HostSelectionPolicy hostSelectionPolicy;
+    /**
+     * Request statistics of the current host
+     */
+    private HostStats hostStats;
+    /**
+     * LOGGED, UNLOGGED or COUNTER: the kind of CQL batch JDBC batches are sent as
+     */
+    String batchType;
+    /**
+     * the size in bytes above which a JDBC batch is split into several CQL batches
+     */
+    int batchSize;
+    /**
+     * the number of rows statements fetch per page by default, 0 for all rows at once
+     */
+    int defaultFetchSize;
+    /**
+     * the number of bytes a page of results should hold, which lowers the number of rows per page for wide rows
+     */
+    long pageBytes;
+    /**
+     * the number of pages a paged result set reads ahead at most, 0 for none
+     */
+    int prefetchPages;
+    /**
+     * the fraction of a page the cursor of a result set passes before the next page is read ahead
+     */
+    double prefetchThreshold;
+    /**
+     * the bytes the rows read at once into a result set may take on the heap before they spill to a temporary
+     * file by default, 0 for no limit
+     */
+    long memoryBudget;
+    /**
+     * whether the rows of large pages are decoded on all cores ahead of the cursor of forward only result sets
+     */
+    boolean parallelDecoding;
+    /**
+     * whether result sets share the String instances of the values of text columns that repeat
+     */
+    boolean dedupStrings;
+    /**
+     * the number of distinct CQL strings a pooled connection keeps idle prepared statements for
+     */
+    int statementPoolSize;
+    /**
+     * the class name of the partitioner of the cluster, or null if it could not be described
+     */
+    String partitioner;
+    /**
+     * Token ranges and their replicas for the keyspace the connection was opened with, null when prepared
+     * statements are not routed
+     */
+    private TokenRing tokenRing;
+    private String tokenRingKeyspace;
+    /**
+     * Connections to the other replicas that prepared statements are routed to, opened on demand
+     */
+    private final Map<String, ReplicaClient> replicaClients = new HashMap<String, ReplicaClient>();
+    /**
+     * Replicas that could not be reached, with the time at which they may be tried again
+     */
+    private final Map<String, Long> downReplicas = new HashMap<String, Long>();
+    /**
+     * Partition key column names by 'keyspace.table'
+     */
+    private final Map<String, List<String>> partitionKeys = new HashMap<String, List<String>>();
 
     /**
      * Instantiates a new CassandraConnection.
      */
     public CassandraConnection(Properties props) throws SQLException {
         Calendar now = new GregorianCalendar();
+        long start = System.nanoTime();
         hostListPrimary = new TreeSet<String>();
         hostListBackup = new TreeSet<String>();
         connectionProps = (Properties) props.clone();
@@ -135,64 +254,87 @@ class CassandraConnection extends AbstractConnection implements Connection {
         try {
             String[] hosts = {};
             String host = props.getProperty(TAG_SERVER_NAME);
-            int port = Integer.parseInt(props.getProperty(TAG_PORT_NUMBER));
+            port = Integer.parseInt(props.getProperty(TAG_PORT_NUMBER));
             int connectionRetries = Integer.parseInt(props.getProperty(TAG_CONNECTION_RETRIES, "10"));
+            asyncChannels = Integer.parseInt(props.getProperty(TAG_ASYNC_CHANNELS, "8"));
+            asyncTimeout = Long.parseLong(props.getProperty(TAG_ASYNC_TIMEOUT, "60000"));
+            boolean tokenAware = Boolean.parseBoolean(props.getProperty(TAG_TOKEN_AWARE, "true"));
+            batchType = props.getProperty(TAG_BATCH_TYPE, "LOGGED").toUpperCase();
+            if (!(batchType.equals("LOGGED") || batchType.equals("UNLOGGED") || batchType.equals("COUNTER"))) {
+                throw new SQLNonTransientConnectionException(String.format(BAD_BATCH_TYPE, batchType));
+            }
+            batchSize = Integer.parseInt(props.getProperty(TAG_BATCH_SIZE, "5120"));
+            defaultFetchSize = Integer.parseInt(props.getProperty(TAG_FETCH_SIZE, "0"));
+            pageBytes = Long.parseLong(props.getProperty(TAG_PAGE_BYTES, "4194304"));
+            prefetchPages = Integer.parseInt(props.getProperty(TAG_PREFETCH_PAGES, "0"));
+            prefetchThreshold = Double.parseDouble(props.getProperty(TAG_PREFETCH_THRESHOLD, "0.5"));
+            memoryBudget = Long.parseLong(props.getProperty(TAG_MEMORY_BUDGET, "67108864"));
+            parallelDecoding = Boolean.parseBoolean(props.getProperty(TAG_PARALLEL_DECODING, "false"));
+            dedupStrings = Boolean.parseBoolean(props.getProperty(TAG_DEDUP_STRINGS, "false"));
+            statementPoolSize = Integer.parseInt(props.getProperty(TAG_STATEMENT_POOL_SIZE, "256"));
+            hostSelectionPolicy = HostSelectionPolicies.forName(props.getProperty(TAG_HOST_SELECTION, HostSelectionPolicies.ROUND_ROBIN));
             currentKeyspace = props.getProperty(TAG_DATABASE_NAME);
             username = props.getProperty(TAG_USER);
-            String password = props.getProperty(TAG_PASSWORD);
+            password = props.getProperty(TAG_PASSWORD);
             String version = props.getProperty(TAG_CQL_VERSION, DEFAULT_CQL_VERSION);
             String primaryDc = props.getProperty(TAG_PRIMARY_DC, "");
             String backupDc = props.getProperty(TAG_BACKUP_DC, "");
             connectionProps.setProperty(TAG_ACTIVE_CQL_VERSION, version);
             majorCqlVersion = getMajor(version);
             defaultConsistencyLevel = ConsistencyLevel.valueOf(props.getProperty(TAG_CONSISTENCY_LEVEL, ConsistencyLevel.ONE.name()));
+            long snapshotRefresh = Long.parseLong(props.getProperty(TAG_SNAPSHOT_REFRESH, "60"));
             boolean connected = false;
             int retries = 0;
             // dealing with multiple hosts passed as seeds in the JDBC URL : jdbc:cassandra://lyn4e900.tlt--lyn4e901.tlt--lyn4e902.tlt:9160/fluks
-            // in this phase we get the list of all the nodes of the cluster
-            String currentHost = "";
-            while (!connected && retries < 10) {
-                try {
-                    if (host.contains("--")) {
-                        hosts = new String[host.split("--").length];
-                        int i = 0;
-                        for (String h : host.split("--")) {
-                            hosts[i] = h;
-                            i++;
-                        }
-                    } else {
-                        hosts = new String[1];
-                        hosts[0] = host;
+            if (host.contains("--")) {
+                hosts = host.split("--");
+            } else {
+                hosts = new String[]{host};
+            }
+            // connections opened with the same url and user share what is known about the cluster
+            snapshotKey = url + "#" + username;
+            ClusterSnapshot snapshot = snapshotRefresh > 0 ? ClusterSnapshot.get(snapshotKey) : null;
+            List<TokenRange> ring = null;
+            String partitioner = null;
+            if (snapshot == null) {
+                // in this phase we get the list of all the nodes of the cluster
+                String currentHost = "";
+                while (!connected && retries < 10) {
+                    try {
+                        Random rand = new Random();
+
+                        currentHost = hosts[rand.nextInt(hosts.length)];
+                        logger.debug("Chosen seed : " + currentHost);
+                        socket = new TSocket(currentHost, port);
+                        transport = new TFramedTransport(socket);
+                        TProtocol protocol = new TBinaryProtocol(transport);
+                        client = new StreamingClient(protocol);
+                        socket.open();
+                        connected = true;
+                        hostStats = HostStats.get(currentHost);
+                    } catch (Exception e) {
+                        logger.error("unable to connect to server " + currentHost + " : " + e.toString());
+                        retries++;
                     }
 
-                    Random rand = new Random();
+                }
 
-                    currentHost = hosts[rand.nextInt(hosts.length)];
-                    logger.debug("Chosen seed : " + currentHost);
-                    socket = new TSocket(currentHost, port);
-                    transport = new TFramedTransport(socket);
-                    TProtocol protocol = new TBinaryProtocol(transport);
-                    client = new Cassandra.Client(protocol);
-                    socket.open();
-                    connected = true;
+                cluster = client.describe_cluster_name();
+                try {
+                    ring = client.describe_ring(currentKeyspace);
+                    partitioner = client.describe_partitioner();
                 } catch (Exception e) {
-                    logger.error("unable to connect to server " + currentHost + " : " + e.toString());
-                    retries++;
+                    logger.warn("Couldn't get ring description for keyspace " + currentKeyspace + "... trying to connect to first host");
                 }
 
+                socket.close();
+                transport.close();
+            } else {
+                logger.debug("Using the cluster snapshot shared by " + url);
+                cluster = snapshot.clusterName;
+                ring = snapshot.ring;
             }
-
-            cluster = client.describe_cluster_name();
-            List<TokenRange> ring = null;
-            boolean gotRing = false;
-            try {
-                ring = client.describe_ring(currentKeyspace);
-                gotRing = true;
-            } catch (Exception e) {
-                logger.warn("Couldn't get ring description for keyspace " + currentKeyspace + "... trying to connect to first host");
-            }
-            if (gotRing) {
-                int i = 0;
+            if (ring != null) {
                 for (TokenRange range : ring) {
                     List<EndpointDetails> endpoints = range.getEndpoint_details();
                     for (EndpointDetails endpoint : endpoints) {
@@ -209,25 +351,37 @@ class CassandraConnection extends AbstractConnection implements Connection {
                     }
                 }
 
-                socket.close();
-                transport.close();
-
                 logger.debug("Primary : " + hostListPrimary);
                 logger.debug("Backup : " + hostListBackup);
-                connected = tryToConnect(hostListPrimary, port, version, password, connectionRetries);
+                connected = tryToConnect(hostListPrimary, version, connectionRetries);
                 if (!connected) {
-                    connected = tryToConnect(hostListBackup, port, version, password, connectionRetries);
+                    connected = tryToConnect(hostListBackup, version, connectionRetries);
                 }
                 if (!connected) {
                     throw new SQLNonTransientConnectionException("All connections attempt have failed. Please check your JDBC url and server status.");
                 }
             } else {
                 hostListPrimary.add(hosts[0]);
-                connected = tryToConnect(hostListPrimary, port, version, password, connectionRetries);
+                connected = tryToConnect(hostListPrimary, version, connectionRetries);
             }
 
-
-            decoder = new ColumnDecoder(client.describe_keyspaces());
+            if (snapshot == null) {
+                // the schema is not described up front but one keyspace at a time, when first needed
+                HostConnector connector = new HostConnector(port, username, password, version, majorCqlVersion);
+                List<String> schemaHosts = new ArrayList<String>(hostListPrimary);
+                schemaHosts.addAll(hostListBackup);
+                snapshot = new ClusterSnapshot(cluster, ring, partitioner, ClusterSnapshot.getSchemaVersions(client),
+                        ClusterSnapshot.newDecoder(connector, schemaHosts));
+                if (snapshotRefresh > 0) {
+                    ClusterSnapshot.share(snapshotKey, snapshot, connector, currentKeyspace, snapshotRefresh);
+                }
+            }
+            decoder = snapshot.decoder;
+            this.partitioner = snapshot.partitioner;
+            if (tokenAware) {
+                tokenRing = snapshot.tokenRing;
+                tokenRingKeyspace = currentKeyspace;
+            }
 
             if (currentKeyspace != null) {
                 client.set_keyspace(currentKeyspace);
@@ -237,9 +391,12 @@ class CassandraConnection extends AbstractConnection implements Connection {
             logger.debug("Connected to {}:{} in Cluster '{}' using Keyspace '{}', CQL version '{}' and Consistency level {}", args);
             Calendar then = new GregorianCalendar();
             logger.debug("Connection took " + (then.getTimeInMillis() - now.getTimeInMillis()) + "ms");
+            DriverMetrics.connects.record(start);
         } catch (InvalidRequestException e) {
+            DriverMetrics.error(e);
             throw new SQLSyntaxErrorException(e);
         } catch (TException e) {
+            DriverMetrics.error(e);
             throw new SQLNonTransientConnectionException(e);
         }
         /*catch (AuthenticationException e)
@@ -452,8 +609,8 @@ class CassandraConnection extends AbstractConnection implements Connection {
         return true;
     }
 
-    public boolean isWrapperFor(Class<?> arg0) throws SQLException {
-        return false;
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isAssignableFrom(getClass()) || iface == CassandraBulkLoader.class;
     }
 
     public String nativeSQL(String sql) throws SQLException {
@@ -493,6 +650,13 @@ class CassandraConnection extends AbstractConnection implements Connection {
     }
 
     public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isAssignableFrom(getClass())) {
+            return iface.cast(this);
+        }
+        if (iface == CassandraBulkLoader.class) {
+            checkNotClosed();
+            return iface.cast(new CassandraBulkLoader(this));
+        }
         throw new SQLFeatureNotSupportedException(String.format(NO_INTERFACE, iface.getSimpleName()));
     }
 
@@ -513,16 +677,29 @@ class CassandraConnection extends AbstractConnection implements Connection {
     protected CqlResult execute(String queryStr, Compression compression, ConsistencyLevel consistencyLevel) throws InvalidRequestException, UnavailableException, TimedOutException, SchemaDisagreementException, TException {
         currentKeyspace = determineCurrentKeyspace(queryStr, currentKeyspace);
 
+        compression = chooseCompression(queryStr, compression, compressionThreshold);
+        long start = hostStats.start();
+        boolean failed = false;
         try {
+            CqlResult result;
             if (majorCqlVersion == 3) {
-                return client.execute_cql3_query(Utils.compressQuery(queryStr, compression), compression, consistencyLevel);
+                result = client.execute_cql3_query(Utils.compressQuery(queryStr, compression), compression, consistencyLevel);
             } else {
-                return client.execute_cql_query(Utils.compressQuery(queryStr, compression), compression);
+                result = client.execute_cql_query(Utils.compressQuery(queryStr, compression), compression);
+            }
+            if (isSchemaChange(queryStr)) {
+                invalidateSchema();
             }
+            return result;
+        } catch (SchemaDisagreementException error) {
+            invalidateSchema();
+            throw error;
         } catch (TException error) {
-            numFailures++;
-            timeOfLastFailure = System.currentTimeMillis();
+            recordFailure(error);
+            failed = isHostFailure(error);
             throw error;
+        } finally {
+            hostStats.finish(start, failed);
         }
     }
 
@@ -546,29 +723,146 @@ class CassandraConnection extends AbstractConnection implements Connection {
 
     protected CqlResult execute(int itemId, List<ByteBuffer> values, ConsistencyLevel consistencyLevel)
             throws InvalidRequestException, UnavailableException, TimedOutException, SchemaDisagreementException, TException {
+        long start = hostStats.start();
+        boolean failed = false;
         try {
             if (majorCqlVersion == 3) {
                 return client.execute_prepared_cql3_query(itemId, values, consistencyLevel);
             } else {
                 return client.execute_prepared_cql_query(itemId, values);
             }
+        } catch (SchemaDisagreementException error) {
+            invalidateSchema();
+            throw error;
         } catch (TException error) {
-            numFailures++;
-            timeOfLastFailure = System.currentTimeMillis();
+            recordFailure(error);
+            failed = isHostFailure(error);
             throw error;
+        } finally {
+            hostStats.finish(start, failed);
+        }
+    }
+
+    /**
+     * Execute a CQL query without blocking the calling thread.
+     *
+     * @param queryStr         a CQL query string
+     * @param compression      query compression to use
+     * @param consistencyLevel the CQL query consistency level
+     * @return a future holding the query results encoded as a CqlResult structure, or failing with the Thrift
+     * exception raised by the server
+     * @throws SQLException when the connection is closed or does not speak CQL 3
+     */
+    protected ListenableFuture<CqlResult> executeAsync(String queryStr, Compression compression, ConsistencyLevel consistencyLevel)
+            throws SQLException {
+        currentKeyspace = determineCurrentKeyspace(queryStr, currentKeyspace);
+        compression = chooseCompression(queryStr, compression, compressionThreshold);
+        ListenableFuture<CqlResult> future = countFailures(getAsyncExecutor().execute(queryStr, compression, consistencyLevel, currentKeyspace));
+        if (isSchemaChange(queryStr)) {
+            Futures.addCallback(future, new FutureCallback<CqlResult>() {
+                public void onSuccess(CqlResult result) {
+                    invalidateSchema();
+                }
+
+                public void onFailure(Throwable t) {
+                }
+            });
+        }
+        return future;
+    }
+
+    /**
+     * Execute a prepared statement without blocking the calling thread. The statement is prepared again on the way
+     * if the host no longer knows it.
+     *
+     * @param queryStr the CQL the statement was prepared from
+     */
+    protected ListenableFuture<CqlResult> executeAsync(String queryStr, int itemId, List<ByteBuffer> values,
+                                                       ConsistencyLevel consistencyLevel) throws SQLException {
+        return countFailures(getAsyncExecutor().execute(queryStr, itemId, values, consistencyLevel, currentKeyspace));
+    }
+
+    private synchronized CassandraAsyncExecutor getAsyncExecutor() throws SQLException {
+        checkNotClosed();
+        if (majorCqlVersion < 3) {
+            throw new SQLFeatureNotSupportedException(NO_ASYNC);
+        }
+        if (asyncExecutor == null) {
+            asyncExecutor = new CassandraAsyncExecutor(currentHost, port, username, password,
+                    connectionProps.getProperty(TAG_ACTIVE_CQL_VERSION), majorCqlVersion, asyncChannels, asyncTimeout);
+        }
+        return asyncExecutor;
+    }
+
+    private ListenableFuture<CqlResult> countFailures(ListenableFuture<CqlResult> future) {
+        final HostStats stats = hostStats;
+        final long start = stats.start();
+        Futures.addCallback(future, new FutureCallback<CqlResult>() {
+            public void onSuccess(CqlResult result) {
+                stats.finish(start, false);
+            }
+
+            public void onFailure(Throwable t) {
+                boolean failed = false;
+                if (t instanceof SchemaDisagreementException) {
+                    invalidateSchema();
+                }
+                if (t instanceof TException) {
+                    recordFailure(t);
+                    failed = isHostFailure((TException) t);
+                }
+                stats.finish(start, failed);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Forget the schema metadata known to this connection and to the connections sharing it, after the schema
+     * changed or the nodes were found to disagree on it.
+     */
+    void invalidateSchema() {
+        decoder.invalidateAll();
+        synchronized (this) {
+            partitionKeys.clear();
         }
+        ClusterSnapshot.invalidate(snapshotKey);
+        // the variable and result types of the statements prepared before may have changed
+        PreparedStatementCache.invalidateKeyspace(currentKeyspace);
+    }
+
+    private void recordFailure(Throwable error) {
+        numFailures++;
+        timeOfLastFailure = System.currentTimeMillis();
+        DriverMetrics.error(error);
+    }
+
+    /**
+     * @return whether the error tells the host is unhealthy, rather than the request being wrong
+     */
+    private static boolean isHostFailure(TException error) {
+        return error instanceof TTransportException || error instanceof TimedOutException
+                || error instanceof UnavailableException;
     }
 
     protected CqlPreparedResult prepare(String queryStr, Compression compression) throws InvalidRequestException, TException {
+        if (majorCqlVersion == 3) {
+            CqlPreparedResult result = PreparedStatementCache.get(currentHost, currentKeyspace, queryStr);
+            if (result != null) {
+                return result;
+            }
+        }
+        compression = chooseCompression(queryStr, compression, compressionThreshold);
         try {
             if (majorCqlVersion == 3) {
-                return client.prepare_cql3_query(Utils.compressQuery(queryStr, compression), compression);
+                CqlPreparedResult result = client.prepare_cql3_query(Utils.compressQuery(queryStr, compression), compression);
+                PreparedStatementCache.put(currentHost, currentKeyspace, queryStr, result);
+                return result;
             } else {
                 return client.prepare_cql_query(Utils.compressQuery(queryStr, compression), compression);
             }
         } catch (TException error) {
-            numFailures++;
-            timeOfLastFailure = System.currentTimeMillis();
+            recordFailure(error);
             throw error;
         }
     }
@@ -583,6 +877,257 @@ class CassandraConnection extends AbstractConnection implements Connection {
         }
     }
 
+    /**
+     * Find the bind marker positions that make up the partition key of the table a prepared statement works on.
+     *
+     * @param cql           the CQL of the prepared statement
+     * @param variableNames the names of the bind markers, as returned by the server
+     * @return the 1-based bind marker indexes in partition key order, or null when the statement can not be routed
+     */
+    int[] getRoutingIndexes(String cql, List<String> variableNames) {
+        if (tokenRing == null || currentKeyspace == null || !currentKeyspace.equals(tokenRingKeyspace)) {
+            return null;
+        }
+        return getPartitionKeyIndexes(cql, variableNames);
+    }
+
+    /**
+     * Find the bind marker positions that make up the partition key of the table a prepared statement works on,
+     * whether statements are routed or not.
+     *
+     * @return the 1-based bind marker indexes in partition key order, or null if the partition key is not bound
+     */
+    int[] getPartitionKeyIndexes(String cql, List<String> variableNames) {
+        if (variableNames == null || currentKeyspace == null) {
+            return null;
+        }
+        String table = determineCurrentColumnFamily(cql);
+        if (table == null) {
+            return null;
+        }
+        List<String> partitionKey = getPartitionKey(currentKeyspace, table.toLowerCase());
+        if (partitionKey.isEmpty()) {
+            return null;
+        }
+        int[] indexes = new int[partitionKey.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            int index = variableNames.indexOf(partitionKey.get(i));
+            if (index < 0) {
+                // the partition key is not fully bound, e.g. a range query
+                return null;
+            }
+            indexes[i] = index + 1;
+        }
+        return indexes;
+    }
+
+    /**
+     * @return the names of the partition key columns of a table in order, or an empty list if they are not known
+     */
+    synchronized List<String> getPartitionKey(String keyspace, String table) {
+        String key = keyspace + "." + table;
+        List<String> columns = partitionKeys.get(key);
+        if (columns == null) {
+            columns = loadPartitionKey(keyspace, table);
+            partitionKeys.put(key, columns);
+        }
+        return columns;
+    }
+
+    private List<String> loadPartitionKey(String keyspace, String table) {
+        // the schema tables moved in Cassandra 3.0, so try the new layout first
+        String[] queries = {
+                String.format("SELECT column_name, kind, position FROM system_schema.columns WHERE keyspace_name = '%s' AND table_name = '%s'", keyspace, table),
+                String.format("SELECT column_name, type, component_index FROM system.schema_columns WHERE keyspace_name = '%s' AND columnfamily_name = '%s'", keyspace, table)
+        };
+        for (String query : queries) {
+            try {
+                CqlResult result = client.execute_cql3_query(ByteBufferUtil.bytes(query), Compression.NONE, ConsistencyLevel.ONE);
+                List<String> columns = new ArrayList<String>();
+                for (CqlRow row : result.getRows()) {
+                    List<Column> values = row.getColumns();
+                    if ("partition_key".equals(ByteBufferUtil.string(values.get(1).value))) {
+                        ByteBuffer position = values.get(2).value;
+                        int index = (position == null || !position.hasRemaining()) ? 0 : ByteBufferUtil.toInt(position);
+                        while (columns.size() <= index) {
+                            columns.add(null);
+                        }
+                        columns.set(index, ByteBufferUtil.string(values.get(0).value));
+                    }
+                }
+                if (!columns.isEmpty() && !columns.contains(null)) {
+                    return Collections.unmodifiableList(columns);
+                }
+            } catch (InvalidRequestException e) {
+                // this schema layout is not known by the server
+            } catch (Exception e) {
+                logger.debug("Couldn't get partition key of " + keyspace + "." + table + " : " + e.toString());
+                break;
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Choose the replica a request for the given partition key should be sent to.
+     *
+     * @return the host to send the request to, or null if it should go to the host of this connection
+     */
+    synchronized String chooseReplica(ByteBuffer routingKey) {
+        List<String> owners = tokenRing.getReplicas(routingKey);
+        if (owners.contains(currentHost)) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        for (String owner : owners) {
+            // stay within the hosts this connection may use, i.e. the primary datacenter
+            if (hostListPrimary.contains(owner)) {
+                Long retryAt = downReplicas.get(owner);
+                if (retryAt == null || retryAt < now) {
+                    return owner;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return whether the host of this connection is a replica of the given partition key
+     */
+    boolean isReplica(ByteBuffer routingKey) {
+        return tokenRing != null && currentKeyspace != null && currentKeyspace.equals(tokenRingKeyspace)
+                && tokenRing.getReplicas(routingKey).contains(currentHost);
+    }
+
+    /**
+     * Prepare a statement on another replica of the cluster.
+     */
+    protected CqlPreparedResult prepare(String host, String queryStr) throws InvalidRequestException, TException {
+        CqlPreparedResult result = PreparedStatementCache.get(host, currentKeyspace, queryStr);
+        if (result != null) {
+            return result;
+        }
+        ReplicaClient replica = getReplicaClient(host);
+        synchronized (replica) {
+            try {
+                if (currentKeyspace != null && !currentKeyspace.equals(replica.keyspace)) {
+                    replica.client.set_keyspace(currentKeyspace);
+                    replica.keyspace = currentKeyspace;
+                }
+                Compression compression = chooseCompression(queryStr, defaultCompression, compressionThreshold);
+                result = replica.client.prepare_cql3_query(Utils.compressQuery(queryStr, compression), compression);
+                PreparedStatementCache.put(host, currentKeyspace, queryStr, result);
+                return result;
+            } catch (TTransportException e) {
+                replicaFailed(host);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Prepare a statement again after its host reported it no longer knows the statement, e.g. after a restart.
+     *
+     * @param host       the host the statement was prepared on, or null for the host of this connection
+     * @param staleItemId the id the host no longer knows
+     */
+    protected CqlPreparedResult reprepare(String host, String queryStr, int staleItemId)
+            throws InvalidRequestException, TException {
+        if (host == null) {
+            PreparedStatementCache.invalidate(currentHost, currentKeyspace, queryStr, staleItemId);
+            return prepare(queryStr);
+        }
+        invalidatePrepared(host, queryStr, staleItemId);
+        return prepare(host, queryStr);
+    }
+
+    /**
+     * Forget a statement prepared on another replica of the cluster that the replica no longer knows.
+     */
+    void invalidatePrepared(String host, String queryStr, int staleItemId) {
+        PreparedStatementCache.invalidate(host, currentKeyspace, queryStr, staleItemId);
+    }
+
+    /**
+     * Execute a statement that was prepared on another replica of the cluster.
+     *
+     * @return the result, or null if the replica could not be connected to, in which case nothing was sent to it
+     */
+    protected CqlResult execute(String host, int itemId, List<ByteBuffer> values, ConsistencyLevel consistencyLevel)
+            throws InvalidRequestException, UnavailableException, TimedOutException, SchemaDisagreementException, TException {
+        ReplicaClient replica;
+        try {
+            replica = getReplicaClient(host);
+        } catch (TTransportException e) {
+            logger.debug("Couldn't connect to " + host + " : " + e.toString());
+            return null;
+        }
+        synchronized (replica) {
+            HostStats stats = HostStats.get(host);
+            long start = stats.start();
+            boolean failed = false;
+            try {
+                return replica.client.execute_prepared_cql3_query(itemId, values, consistencyLevel);
+            } catch (TTransportException e) {
+                // the caller marks the replica down
+                failed = true;
+                throw e;
+            } catch (TException e) {
+                failed = isHostFailure(e);
+                throw e;
+            } finally {
+                stats.finish(start, failed);
+            }
+        }
+    }
+
+    private ReplicaClient getReplicaClient(String host) throws TException {
+        synchronized (this) {
+            checkOpen(host);
+            ReplicaClient replica = replicaClients.get(host);
+            if (replica != null) {
+                return replica;
+            }
+        }
+        // connect outside the lock so a slow replica does not hold up the others
+        ReplicaClient replica;
+        try {
+            replica = connectTo(host, connectionProps.getProperty(TAG_ACTIVE_CQL_VERSION));
+        } catch (TTransportException e) {
+            replicaFailed(host);
+            throw e;
+        }
+        synchronized (this) {
+            ReplicaClient existing = replicaClients.get(host);
+            if (existing != null || !transport.isOpen()) {
+                replica.transport.close();
+                checkOpen(host);
+                return existing;
+            }
+            replicaClients.put(host, replica);
+            return replica;
+        }
+    }
+
+    private void checkOpen(String host) throws TTransportException {
+        if (!transport.isOpen()) {
+            throw new TTransportException(TTransportException.NOT_OPEN, "connection closed, not routing to " + host);
+        }
+    }
+
+    /**
+     * Mark a replica down for a while and close the client routed to it, leaving the connection itself open.
+     */
+    synchronized void replicaFailed(String host) {
+        numFailures++;
+        timeOfLastFailure = System.currentTimeMillis();
+        downReplicas.put(host, timeOfLastFailure + REPLICA_RETRY_DELAY);
+        ReplicaClient replica = replicaClients.remove(host);
+        if (replica != null) {
+            replica.transport.close();
+        }
+    }
+
     /**
      * Remove a Statement from the Open Statements List
      */
@@ -593,7 +1138,15 @@ class CassandraConnection extends AbstractConnection implements Connection {
     /**
      * Shutdown the remote connection
      */
-    protected void disconnect() {
+    protected synchronized void disconnect() {
+        if (asyncExecutor != null) {
+            asyncExecutor.close();
+            asyncExecutor = null;
+        }
+        for (ReplicaClient replica : replicaClients.values()) {
+            replica.transport.close();
+        }
+        replicaClients.clear();
         transport.close();
     }
 
@@ -612,66 +1165,103 @@ class CassandraConnection extends AbstractConnection implements Connection {
         return builder.toString();
     }
 
-    private boolean tryToConnect(TreeSet<String> hostList, int port, String version, String password, int nbRetries) {
-        // Attempt to connect to one of the hosts passed in the hostList argument
+    /**
+     * Open an authenticated Thrift connection to a host of the cluster.
+     */
+    private ReplicaClient connectTo(String host, String version) throws TException {
+        return open(host, port, username, password, version, majorCqlVersion);
+    }
+
+    static ReplicaClient open(String host, int port, String username, String password, String version,
+                              int majorCqlVersion) throws TException {
+        ReplicaClient connection = new ReplicaClient();
+        connection.socket = new TSocket(host, port);
+        connection.transport = new TFramedTransport(connection.socket);
+        TProtocol protocol = new TBinaryProtocol(connection.transport);
+        connection.client = new StreamingClient(protocol);
+        connection.socket.open();
         try {
-            if (hostList.size() == 0) {
-                return false;
+            if (username != null) {
+                Map<String, String> credentials = new HashMap<String, String>();
+                credentials.put("username", username);
+                if (password != null) {
+                    credentials.put("password", password);
+                }
+                AuthenticationRequest areq = new AuthenticationRequest(credentials);
+                connection.client.login(areq);
             }
-            String currentHost = "";
-            boolean connected = false;
-            int retries = 0;
-            while (!connected && retries < nbRetries) {
-                try {
-                    Random rand = new Random();
-
-                    if (CassandraConnection.roundRobinIndex == null) {
-                        CassandraConnection.roundRobinIndex = rand.nextInt(hostList.size());
-                    } else {
-                        CassandraConnection.roundRobinIndex++;
-                    }
-                    if (CassandraConnection.roundRobinIndex >= hostList.size()) {
-                        CassandraConnection.roundRobinIndex = 0;
-                    }
-                    logger.debug("C* RR index = " + CassandraConnection.roundRobinIndex);
-
-                    //currentHost = hostList.toArray(new String[hostList.size()])[rand.nextInt(hostList.size())];
-                    currentHost = hostList.toArray(new String[hostList.size()])[CassandraConnection.roundRobinIndex];
 
+            if (majorCqlVersion > 2) {
+                connection.client.set_cql_version(version);
+            }
+        } catch (TException e) {
+            connection.transport.close();
+            throw e;
+        }
+        return connection;
+    }
 
-                    logger.debug("Retries " + retries + ": " + currentHost);
-                    socket = new TSocket(currentHost, port);
-                    transport = new TFramedTransport(socket);
-                    TProtocol protocol = new TBinaryProtocol(transport);
-                    client = new Cassandra.Client(protocol);
-                    socket.open();
+    private boolean tryToConnect(TreeSet<String> hostList, String version, int nbRetries) {
+        // Attempt to connect to one of the hosts passed in the hostList argument
+        if (hostList.size() == 0) {
+            return false;
+        }
+        List<String> candidates = new ArrayList<String>(hostList);
+        for (int retries = 0; retries < nbRetries; retries++) {
+            String currentHost = hostSelectionPolicy.select(candidates);
+            try {
+                logger.debug("Retries " + retries + ": " + currentHost);
+                ReplicaClient connection = connectTo(currentHost, version);
+                socket = connection.socket;
+                transport = connection.transport;
+                client = connection.client;
+                this.currentHost = currentHost;
+                hostStats = HostStats.get(currentHost);
+                logger.debug("C* JDBC connected to : " + currentHost);
+                return true;
+            } catch (Exception e) {
+                logger.error("Impossible to connect to " + currentHost + " : " + e.toString());
+                HostStats.get(currentHost).failed();
+                if (candidates.size() > 1) {
+                    // try the other hosts before coming back to this one
+                    candidates.remove(currentHost);
+                }
+            }
+        }
+        return false;
+    }
 
-                    if (username != null) {
-                        Map<String, String> credentials = new HashMap<String, String>();
-                        credentials.put("username", username);
-                        if (password != null) {
-                            credentials.put("password", password);
-                        }
-                        AuthenticationRequest areq = new AuthenticationRequest(credentials);
-                        client.login(areq);
-                    }
+    /**
+     * A blocking Thrift connection to one host, with the keyspace last set on it.
+     */
+    static class ReplicaClient {
+        TSocket socket;
+        TTransport transport;
+        Cassandra.Client client;
+        String keyspace;
+    }
 
-                    if (majorCqlVersion > 2) {
-                        client.set_cql_version(version);
-                    }
-                    connected = true;
-                    logger.debug("C* JDBC connected to : " + currentHost);
-                } catch (Exception e) {
-                    logger.error("Impossible to connect to " + currentHost + " : " + e.toString());
-                    retries++;
-                }
+    /**
+     * Opens the connections that refresh a shared cluster snapshot and load its schema. It holds the connection
+     * settings only, so a snapshot does not keep the connection that created it from being garbage collected.
+     */
+    private static class HostConnector implements ClusterSnapshot.Connector {
+        private final int port;
+        private final String username;
+        private final String password;
+        private final String version;
+        private final int majorCqlVersion;
+
+        HostConnector(int port, String username, String password, String version, int majorCqlVersion) {
+            this.port = port;
+            this.username = username;
+            this.password = password;
+            this.version = version;
+            this.majorCqlVersion = majorCqlVersion;
+        }
 
-            }
-            return connected;
-        } catch (Exception e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-            return false;
+        public ReplicaClient open(String host) throws TException {
+            return CassandraConnection.open(host, port, username, password, version, majorCqlVersion);
         }
     }
 }
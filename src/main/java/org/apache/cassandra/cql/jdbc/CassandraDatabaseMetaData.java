@@ -527,7 +527,7 @@ class CassandraDatabaseMetaData implements DatabaseMetaData {
     }
 
     public boolean supportsBatchUpdates() throws SQLException {
-        return false;
+        return true;
     }
 
     public boolean supportsCatalogsInDataManipulation() throws SQLException {
@@ -20,6 +20,7 @@
 
 package org.apache.cassandra.cql.jdbc;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import org.apache.cassandra.thrift.CqlPreparedResult;
 import org.apache.cassandra.thrift.CqlResult;
 import org.apache.cassandra.thrift.InvalidRequestException;
@@ -28,6 +29,7 @@ import org.apache.cassandra.thrift.TimedOutException;
 import org.apache.cassandra.thrift.UnavailableException;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.thrift.TException;
+import org.apache.thrift.transport.TTransportException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -52,15 +54,21 @@ import java.sql.Time;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import static org.apache.cassandra.cql.jdbc.Utils.NO_BATCH;
 import static org.apache.cassandra.cql.jdbc.Utils.NO_RESULTSET;
 import static org.apache.cassandra.cql.jdbc.Utils.NO_SERVER;
 import static org.apache.cassandra.cql.jdbc.Utils.NO_UPDATE_COUNT;
 import static org.apache.cassandra.cql.jdbc.Utils.SCHEMA_MISMATCH;
+import static org.apache.cassandra.cql.jdbc.Utils.buildBatch;
+import static org.apache.cassandra.cql.jdbc.Utils.utf8Length;
 
 class CassandraPreparedStatement extends CassandraStatement implements PreparedStatement {
     private static final Logger LOG = LoggerFactory.getLogger(CassandraPreparedStatement.class);
@@ -80,6 +88,40 @@ class CassandraPreparedStatement extends CassandraStatement implements PreparedS
      */
     private Map<Integer, ByteBuffer> bindValues = new LinkedHashMap<Integer, ByteBuffer>();
 
+    /**
+     * the bind marker indexes making up the partition key, or null when executions are not routed to a replica
+     */
+    private int[] routingIndexes;
+
+    /**
+     * the names of the bind markers, as returned by the server
+     */
+    private List<String> variableNames;
+
+    /**
+     * the ids of this statement on the replicas it was routed to; prepared statement ids are local to each node
+     */
+    private Map<String, Integer> replicaItemIds = new HashMap<String, Integer>();
+
+    /**
+     * the sets of bound values added with addBatch()
+     */
+    private List<List<ByteBuffer>> batchValues = new ArrayList<List<ByteBuffer>>();
+
+    /**
+     * the ids of the CQL batches repeating this statement, by number of repetitions
+     */
+    private Map<String, Integer> batchItemIds = new HashMap<String, Integer>();
+
+    /**
+     * the metrics the executions of this statement are recorded in
+     */
+    private final DriverMetrics.QueryMetrics metrics;
+
+    /**
+     * the metrics the executions of the CQL batches repeating this statement are recorded in, created on first use
+     */
+    private DriverMetrics.QueryMetrics batchMetrics;
 
     CassandraPreparedStatement(CassandraConnection con, String cql) throws SQLException {
         this(con, cql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, ResultSet.HOLD_CURSORS_OVER_COMMIT);
@@ -96,11 +138,14 @@ class CassandraPreparedStatement extends CassandraStatement implements PreparedS
         if (LOG.isTraceEnabled()) {
             LOG.trace("CQL: " + this.cql);
         }
+        metrics = DriverMetrics.forQuery(cql);
         try {
             CqlPreparedResult result = con.prepare(cql);
 
             itemId = result.itemId;
             count = result.count;
+            variableNames = result.getVariable_names();
+            routingIndexes = con.getRoutingIndexes(cql, variableNames);
         } catch (InvalidRequestException e) {
             throw new SQLSyntaxErrorException(e);
         } catch (TException e) {
@@ -123,7 +168,7 @@ class CassandraPreparedStatement extends CassandraStatement implements PreparedS
         }
     }
 
-    private List<ByteBuffer> getBindValues() throws SQLException {
+    List<ByteBuffer> getBindValues() throws SQLException {
         List<ByteBuffer> values = new ArrayList<ByteBuffer>();
         if (bindValues.size() != count) {
             throw new SQLRecoverableException(
@@ -159,7 +204,17 @@ class CassandraPreparedStatement extends CassandraStatement implements PreparedS
         }
         try {
             resetResults();
-            CqlResult result = connection.execute(itemId, getBindValues(), consistencyLevel);
+            List<ByteBuffer> values = getBindValues();
+            long start = System.nanoTime();
+            CqlResult result;
+            try {
+                result = executeOnReplica(values);
+                if (result == null) {
+                    result = execute(values);
+                }
+            } finally {
+                metrics.record(start);
+            }
 
             switch (result.getType()) {
                 case ROWS:
@@ -195,8 +250,226 @@ class CassandraPreparedStatement extends CassandraStatement implements PreparedS
         }
     }
 
+    /**
+     * Execute the statement on the host of the connection, preparing it again if the host no longer knows it.
+     */
+    private CqlResult execute(List<ByteBuffer> values)
+            throws InvalidRequestException, UnavailableException, TimedOutException, SchemaDisagreementException, TException {
+        try {
+            return connection.execute(itemId, values, consistencyLevel);
+        } catch (InvalidRequestException e) {
+            if (!PreparedStatementCache.isUnknown(e)) {
+                throw e;
+            }
+            itemId = connection.reprepare(null, cql, itemId).itemId;
+            return connection.execute(itemId, values, consistencyLevel);
+        }
+    }
+
+    /**
+     * Send the statement straight to a replica owning the bound partition key, sparing the coordinator hop.
+     *
+     * @return the result, or null if the statement should be executed on the host of the connection
+     */
+    private CqlResult executeOnReplica(List<ByteBuffer> values) throws SQLException {
+        if (routingIndexes == null) {
+            return null;
+        }
+        ByteBuffer[] components = new ByteBuffer[routingIndexes.length];
+        for (int i = 0; i < components.length; i++) {
+            components[i] = values.get(routingIndexes[i] - 1);
+        }
+        String replica = connection.chooseReplica(TokenRing.routingKey(components));
+        if (replica == null) {
+            return null;
+        }
+        Integer replicaItemId = replicaItemIds.get(replica);
+        try {
+            if (replicaItemId == null) {
+                replicaItemId = connection.prepare(replica, cql).itemId;
+                replicaItemIds.put(replica, replicaItemId);
+            }
+        } catch (InvalidRequestException e) {
+            LOG.debug("Preparing on " + replica + " failed, falling back to the coordinator : " + e.getWhy());
+            return null;
+        } catch (TException e) {
+            LOG.debug("Preparing on " + replica + " failed, falling back to the coordinator : " + e.toString());
+            return null;
+        }
+        CqlResult result;
+        try {
+            // once the request may have been written the replica may have applied it, so a failure is not retried
+            // on the coordinator, which would apply counter updates, list appends or conditional updates twice
+            result = connection.execute(replica, replicaItemId, values, consistencyLevel);
+        } catch (InvalidRequestException e) {
+            // rejected without being applied, e.g. the replica was restarted and lost the statement, so prepare it
+            // again next time
+            replicaItemIds.remove(replica);
+            if (PreparedStatementCache.isUnknown(e)) {
+                connection.invalidatePrepared(replica, cql, replicaItemId);
+            }
+            LOG.debug("Routing to " + replica + " failed, falling back to the coordinator : " + e.getWhy());
+            return null;
+        } catch (TException e) {
+            // a failure of the replica, not of the connection: the coordinator transport and the channels stay open
+            if (!(e instanceof SchemaDisagreementException)) {
+                connection.replicaFailed(replica);
+            }
+            throw e instanceof TTransportException ? new SQLTransientConnectionException(e) : translateException(e, cql);
+        }
+        if (result == null) {
+            LOG.debug("Routing to " + replica + " failed before sending the statement, falling back to the coordinator");
+        }
+        return result;
+    }
+
     public void addBatch() throws SQLException {
-        throw new SQLFeatureNotSupportedException(NOT_SUPPORTED);
+        checkNotClosed();
+        batchValues.add(getBindValues());
+    }
+
+    public void addBatch(String query) throws SQLException {
+        checkNotClosed();
+        throw new SQLNonTransientException(NO_BATCH);
+    }
+
+    public void clearBatch() throws SQLException {
+        checkNotClosed();
+        batchValues.clear();
+    }
+
+    /**
+     * Send the sets of bound values of the batch as CQL batches repeating this statement, each of them at most the
+     * configured batch size. The repeating batches are prepared once per number of repetitions, so the bound
+     * values are all that is sent for every batch.
+     */
+    public int[] executeBatch() throws SQLException {
+        checkNotClosed();
+        resetResults();
+        List<List<ByteBuffer>> rows = batchValues;
+        batchValues = new ArrayList<List<ByteBuffer>>();
+        int[] updateCounts = new int[rows.size()];
+        int done = 0;
+        while (done < rows.size()) {
+            int end = nextBatch(rows, done);
+            long start = System.nanoTime();
+            try {
+                if (end - done == 1) {
+                    execute(rows.get(done));
+                    metrics.record(start);
+                } else {
+                    List<ByteBuffer> values = new ArrayList<ByteBuffer>(count * (end - done));
+                    for (int i = done; i < end; i++) {
+                        values.addAll(rows.get(i));
+                    }
+                    executeBatch(connection.batchType, end - done, values);
+                    getBatchMetrics().record(start);
+                }
+            } catch (TException e) {
+                throw batchFailed(e, cql, updateCounts, done);
+            }
+            Arrays.fill(updateCounts, done, end, SUCCESS_NO_INFO);
+            done = end;
+        }
+        return updateCounts;
+    }
+
+    /**
+     * Split the sets of bound values into batches: the next batch holds the rows from the given one on that fit the
+     * configured batch size and the limit on bind markers, rounded down to a power of two to keep the number of
+     * distinct batches to prepare small.
+     *
+     * @param rows the sets of bound values
+     * @param done the first row of the batch
+     * @return the row after the last of the batch
+     */
+    int nextBatch(List<List<ByteBuffer>> rows, int done) {
+        // the number of bind markers of a statement is limited to an unsigned short
+        int maxRows = count == 0 ? Integer.MAX_VALUE : 0xFFFF / count;
+        // the statement is repeated for every row of the batch
+        int cqlSize = utf8Length(cql);
+        int end = done + 1;
+        int size = cqlSize + getSize(rows.get(done));
+        while (end < rows.size() && end - done < maxRows) {
+            int rowSize = cqlSize + getSize(rows.get(end));
+            if (size + rowSize > connection.batchSize) {
+                break;
+            }
+            size += rowSize;
+            end++;
+        }
+        return done + Integer.highestOneBit(end - done);
+    }
+
+    private static int getSize(List<ByteBuffer> values) {
+        int size = 0;
+        for (ByteBuffer value : values) {
+            size += value.remaining();
+        }
+        return size;
+    }
+
+    /**
+     * Execute the prepared CQL batch repeating this statement, preparing it again if the host no longer knows it.
+     */
+    private void executeBatch(String batchType, int repetitions, List<ByteBuffer> values) throws TException {
+        int batchItemId = getBatchItemId(batchType, repetitions);
+        try {
+            connection.execute(batchItemId, values, consistencyLevel);
+        } catch (InvalidRequestException e) {
+            if (!PreparedStatementCache.isUnknown(e)) {
+                throw e;
+            }
+            batchItemId = connection.reprepare(null, getBatchCql(batchType, repetitions), batchItemId).itemId;
+            batchItemIds.put(batchType + repetitions, batchItemId);
+            connection.execute(batchItemId, values, consistencyLevel);
+        }
+    }
+
+    /**
+     * @return the id of the prepared CQL batch repeating this statement
+     */
+    int getBatchItemId(String batchType, int repetitions) throws TException {
+        String key = batchType + repetitions;
+        Integer batchItemId = batchItemIds.get(key);
+        if (batchItemId == null) {
+            batchItemId = connection.prepare(getBatchCql(batchType, repetitions)).itemId;
+            batchItemIds.put(key, batchItemId);
+        }
+        return batchItemId;
+    }
+
+    /**
+     * @return the CQL batch repeating this statement
+     */
+    String getBatchCql(String batchType, int repetitions) {
+        return buildBatch(batchType, Collections.nCopies(repetitions, cql), 0, repetitions);
+    }
+
+    DriverMetrics.QueryMetrics getMetrics() {
+        return metrics;
+    }
+
+    DriverMetrics.QueryMetrics getBatchMetrics() {
+        if (batchMetrics == null) {
+            batchMetrics = DriverMetrics.forBatch(cql);
+        }
+        return batchMetrics;
+    }
+
+    int getItemId() {
+        return itemId;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * @return the 1-based bind marker indexes making up the partition key, or null if it is not bound
+     */
+    int[] getPartitionKeyIndexes() {
+        return connection.getPartitionKeyIndexes(cql, variableNames);
     }
 
 
@@ -213,6 +486,24 @@ class CassandraPreparedStatement extends CassandraStatement implements PreparedS
     }
 
 
+    public ListenableFuture<ResultSet> executeAsync() throws SQLException {
+        checkNotClosed();
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("CQL: " + cql);
+        }
+        return toResultSet(connection.executeAsync(cql, itemId, getBindValues(), consistencyLevel), cql, false);
+    }
+
+
+    public ListenableFuture<ResultSet> executeQueryAsync() throws SQLException {
+        checkNotClosed();
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("CQL: " + cql);
+        }
+        return toResultSet(connection.executeAsync(cql, itemId, getBindValues(), consistencyLevel), cql, true);
+    }
+
+
     public ResultSet executeQuery() throws SQLException {
         checkNotClosed();
         doExecute();
@@ -26,14 +26,22 @@ import org.apache.cassandra.thrift.CqlMetadata;
 import org.apache.cassandra.thrift.CqlResult;
 import org.apache.cassandra.thrift.CqlRow;
 import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.thrift.TException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.net.URL;
 import java.nio.ByteBuffer;
 import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Blob;
 import java.sql.Date;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
@@ -48,6 +56,7 @@ import java.sql.Statement;
 import java.sql.Time;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -161,12 +170,54 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
      * The rows iterator.
      */
     private Iterator<CqlRow> rowsIterator;
+    /**
+     * The rows of the page the rows iterator walks through, decoded ahead when parallel decoding is on.
+     */
+    private List<CqlRow> pageRows;
+    /**
+     * The composed values of the rows of the page by index when they were decoded ahead, null otherwise.
+     */
+    private Object[][] decoded;
+    /**
+     * The index in the page of the row the rows iterator returned last.
+     */
+    private int pageIndex;
+    /**
+     * Whether large pages are decoded ahead, which is not done for the rows packed into a store.
+     */
+    private boolean parallelDecoding;
+    /**
+     * The page the rows iterator walks through.
+     */
+    private CqlResult page;
+    /**
+     * Reads the pages following the current one, null when the results came in one piece or all pages were read.
+     */
+    private TokenRangePager pager;
+    /**
+     * The rows of a scrollable result, or of a forward only result read at once that is over the memory budget of
+     * the statement, all read when the result set is created; null otherwise.
+     */
+    private PackedRowStore store;
+    /**
+     * The rows of the current page the cursor went through, and the row at which the next page is read ahead.
+     */
+    private int pageRow;
+    private int readAheadRow;
     // the current row key when iterating through results.
     private byte[] curRowKey = null;
     /**
-     * The values.
+     * The columns, resolved once for all rows.
+     */
+    private ColumnDescriptor[] columns = new ColumnDescriptor[0];
+    /**
+     * The raw columns of the current row.
      */
-    private List<TypedColumn> values = new ArrayList<TypedColumn>();
+    private List<Column> rowColumns = new ArrayList<Column>();
+    /**
+     * The columns of the current row a getter asked for, created on demand.
+     */
+    private TypedColumn[] values = new TypedColumn[0];
     /**
      * The index map.
      */
@@ -193,7 +244,16 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
      * Instantiates a new cassandra result set from a CqlResult.
      */
     CassandraResultSet(CassandraStatement statement, CqlResult resultSet) throws SQLException {
+        this(statement, resultSet, null);
+    }
+
+    /**
+     * Instantiates a new cassandra result set from the first page of results, reading the others as needed.
+     */
+    CassandraResultSet(CassandraStatement statement, CqlResult resultSet, TokenRangePager pager) throws SQLException {
         this.statement = statement;
+        this.pager = pager;
+        this.page = resultSet;
         this.resultSetType = statement.getResultSetType();
         this.fetchDirection = statement.getFetchDirection();
         this.fetchSize = statement.getFetchSize();
@@ -202,81 +262,250 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
         // Initialize meta-data from schema
         populateMetaData();
 
-        rowsIterator = resultSet.getRowsIterator();
+        boolean packed = resultSetType != TYPE_FORWARD_ONLY
+                || (pager == null && statement.memoryBudget > 0
+                && PackedRowStore.estimateLength(resultSet.getRows()) > statement.memoryBudget);
+        parallelDecoding = !packed && statement.connection.parallelDecoding;
+        startPage();
 
         // Initialize to column values from the first row
         // re-Initialize meta-data to column values from the first row (if data exists)
         // NOTE: that the first call to next() will HARMLESSLY re-write these values for the columns
         // NOTE: the row cursor is not advanced and sits before the first row
-        if (hasMoreRows()) {
+        if (packed) {
+            // the Thrift rows of a large result are released rather than held until the result set is closed
+            packRows();
+        } else if (hasMoreRows()) {
             populateColumns();
             // reset the iterator back to the beginning.
-            rowsIterator = resultSet.getRowsIterator();
+            rowsIterator = pageRows.iterator();
+            pageIndex = -1;
         }
 
         meta = new CResultSetMetaData();
     }
 
 
-    private final boolean hasMoreRows() {
-        return (rowsIterator != null && rowsIterator.hasNext());
+    private final boolean hasMoreRows() throws SQLException {
+        while (rowsIterator == null || !rowsIterator.hasNext()) {
+            if (pager == null) {
+                return false;
+            }
+            // only the current page is held, the rows of the previous one are dropped here
+            try {
+                page = pager.nextPage();
+            } catch (TException e) {
+                throw CassandraStatement.translateException(e, pager.cql);
+            }
+            if (page == null) {
+                pager = null;
+                return false;
+            }
+            startPage();
+        }
+        return true;
     }
 
-    private final void populateMetaData() {
-        values.clear();
-        indexMap.clear();
+    /**
+     * Read all rows into the packed store, dropping the Thrift rows page after page, and spilling them to a file
+     * once over the memory budget of the statement. The columns are set from the first row, as populateColumns does
+     * otherwise.
+     */
+    private void packRows() throws SQLException {
+        while (hasMoreRows()) {
+            if (pager != null && pageRow++ == readAheadRow) {
+                pager.readAhead();
+            }
+            CqlRow row = nextRow();
+            if (store == null) {
+                if (!isDescribed(row.getColumns())) {
+                    describeColumns(row.getColumns());
+                }
+                store = new PackedRowStore(columns, statement.memoryBudget);
+            }
+            store.add(row);
+        }
+        if (store == null) {
+            store = new PackedRowStore(columns);
+        } else {
+            CqlRow first = store.get(0);
+            curRowKey = first.getKey();
+            rowColumns = first.getColumns();
+        }
+        rowsIterator = null;
+        pageRows = null;
+        page = null;
+    }
 
+    /**
+     * Move the cursor of a scrollable result to the given row, before the first or after the last row if it is out
+     * of range.
+     *
+     * @return whether the cursor is on a row
+     */
+    private boolean moveTo(int row) throws SQLException {
+        if (row < 1) {
+            rowNumber = 0;
+            return false;
+        }
+        if (row > store.size()) {
+            rowNumber = Integer.MAX_VALUE;
+            return false;
+        }
+        CqlRow packed = store.get(row - 1);
+        curRowKey = packed.getKey();
+        List<Column> cols = packed.getColumns();
+        if (isDescribed(cols)) {
+            Arrays.fill(values, null);
+        } else {
+            describeColumns(cols);
+        }
+        rowColumns = cols;
+        rowNumber = row;
+        return true;
+    }
+
+    /**
+     * @return the row of the cursor of a scrollable result, the row after the last when it is after the last
+     */
+    private int position() {
+        return rowNumber == Integer.MAX_VALUE ? store.size() + 1 : rowNumber;
+    }
+
+    private void checkScrollable() throws SQLException {
+        checkNotClosed();
+        if (resultSetType == TYPE_FORWARD_ONLY) {
+            throw new SQLNonTransientException(FORWARD_ONLY);
+        }
+    }
+
+    /**
+     * @return the next row of the page
+     */
+    private CqlRow nextRow() {
+        pageIndex++;
+        return rowsIterator.next();
+    }
+
+    private void startPage() {
+        pageRow = 0;
+        pageIndex = -1;
+        pageRows = page.getRows();
+        decoded = null;
+        if (parallelDecoding && pageRows != null && pageRows.size() >= ParallelDecoder.MIN_ROWS) {
+            // the metadata lists the columns in no particular order, the rows in the order of the SELECT clause
+            List<Column> first = pageRows.get(0).getColumns();
+            if (!isDescribed(first)) {
+                describeColumns(first);
+            }
+            ParallelDecoder decoder = ParallelDecoder.decode(pageRows, columns);
+            pageRows = decoder.rows;
+            decoded = decoder.values;
+        }
+        rowsIterator = pageRows == null ? null : pageRows.iterator();
+        if (pager != null) {
+            readAheadRow = (int) (page.getRowsSize() * pager.prefetchThreshold);
+        }
+    }
+
+    private final void populateMetaData() {
         // Modified to order fields the way they are in the SELECT clause
+        List<Column> cols = new ArrayList<Column>();
         for (ByteBuffer name : this.schema.name_types.keySet()) {
-            TypedColumn c = createColumn(new Column(name));
-            String columnName = c.getNameString();
-            values.add(c);
-            indexMap.put(columnName, values.size()); // one greater than 0 based index of a list
+            cols.add(new Column(name));
         }
-
+        describeColumns(cols);
+        rowColumns = cols;
     }
 
-    private final void populateColumns() {
-        // clear column value tables
-        values.clear();
+    /**
+     * Resolve the names and types of the columns, which then hold for all rows with the same columns.
+     */
+    private void describeColumns(List<Column> cols) {
+        columns = new ColumnDescriptor[cols.size()];
+        values = new TypedColumn[cols.size()];
         indexMap.clear();
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = createDescriptor(cols.get(i).name, i);
+            indexMap.put(columns[i].nameString, i + 1); // one greater than 0 based index of a list
+        }
+    }
+
+    /**
+     * @return whether the columns are those described, which is the case for all rows of CQL 3 results
+     */
+    private boolean isDescribed(List<Column> cols) {
+        if (cols.size() != columns.length) {
+            return false;
+        }
+        for (int i = 0; i < columns.length; i++) {
+            if (!columns[i].name.equals(cols.get(i).name)) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-        CqlRow row = rowsIterator.next();
+    private final void populateColumns() {
+        CqlRow row = nextRow();
         curRowKey = row.getKey();
         List<Column> cols = row.getColumns();
+        if (isDescribed(cols)) {
+            Arrays.fill(values, null);
+        } else {
+            describeColumns(cols);
+        }
+        rowColumns = cols;
+    }
 
-        // loop through the columns
-        for (Column col : cols) {
-            TypedColumn c = createColumn(col);
-            String columnName = c.getNameString();
-            values.add(c);
-            indexMap.put(columnName, values.size()); // one greater than 0 based index of a list
+    /**
+     * Read the raw value of a column of the current row, for the getters of primitives that decode it in place.
+     *
+     * @return the value, or null if the column has no value
+     */
+    private ByteBuffer getRawValue(int index) throws SQLException {
+        checkNotClosed();
+        ByteBuffer value = rowColumns.get(index).value;
+        wasNull = value == null || !value.hasRemaining();
+        return wasNull ? null : value;
+    }
 
+    /**
+     * @return the column of the current row at the given 0-based index, its value composed when first asked for
+     */
+    private TypedColumn getTypedColumn(int index) {
+        TypedColumn column = values[index];
+        if (column == null) {
+            // the metadata may be read before the cursor moved to the first row
+            Object[] composed = decoded == null || pageIndex < 0 ? null : decoded[pageIndex];
+            column = composed == null ? new TypedColumn(rowColumns.get(index), columns[index])
+                    : new TypedColumn(rowColumns.get(index), columns[index], composed[index]);
+            values[index] = column;
         }
+        return column;
     }
 
-    public boolean absolute(int arg0) throws SQLException {
-        throw new SQLFeatureNotSupportedException(NOT_SUPPORTED);
+    public synchronized boolean absolute(int row) throws SQLException {
+        checkScrollable();
+        // negative rows count back from the last row
+        return moveTo(row >= 0 ? row : store.size() + 1 + row);
     }
 
-    public void afterLast() throws SQLException {
-        if (resultSetType == TYPE_FORWARD_ONLY) {
-            throw new SQLNonTransientException(FORWARD_ONLY);
-        }
-        throw new SQLFeatureNotSupportedException(NOT_SUPPORTED);
+    public synchronized void afterLast() throws SQLException {
+        checkScrollable();
+        rowNumber = Integer.MAX_VALUE;
     }
 
-    public void beforeFirst() throws SQLException {
-        if (resultSetType == TYPE_FORWARD_ONLY) {
-            throw new SQLNonTransientException(FORWARD_ONLY);
-        }
-        throw new SQLFeatureNotSupportedException(NOT_SUPPORTED);
+    public synchronized void beforeFirst() throws SQLException {
+        checkScrollable();
+        rowNumber = 0;
     }
 
     private final void checkIndex(int index) throws SQLException {
+        checkNotClosed();
         // 1 <= index <= size()
-        if (index < 1 || index > values.size()) {
-            throw new SQLSyntaxErrorException(String.format(MUST_BE_POSITIVE, String.valueOf(index)) + " " + values.size());
+        if (index < 1 || index > columns.length) {
+            throw new SQLSyntaxErrorException(String.format(MUST_BE_POSITIVE, String.valueOf(index)) + " " + columns.length);
         }
     }
 
@@ -299,8 +528,22 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
     }
 
     public void close() throws SQLException {
+        if (store != null) {
+            store.close();
+            store = null;
+        }
         indexMap = null;
+        columns = null;
         values = null;
+        rowColumns = null;
+        rowsIterator = null;
+        pageRows = null;
+        decoded = null;
+        page = null;
+        if (pager != null) {
+            pager.close();
+            pager = null;
+        }
     }
 
     public int findColumn(String name) throws SQLException {
@@ -310,13 +553,13 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
     }
 
     public boolean first() throws SQLException {
-        throw new SQLFeatureNotSupportedException(NOT_SUPPORTED);
+        return absolute(1);
     }
 
 
     public BigDecimal getBigDecimal(int index) throws SQLException {
         checkIndex(index);
-        return getBigDecimal(values.get(index - 1));
+        return getBigDecimal(getTypedColumn(index - 1));
     }
 
     /**
@@ -324,7 +567,7 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
      */
     public BigDecimal getBigDecimal(int index, int scale) throws SQLException {
         checkIndex(index);
-        return (getBigDecimal(values.get(index - 1))).setScale(scale);
+        return (getBigDecimal(getTypedColumn(index - 1))).setScale(scale);
     }
 
     public BigDecimal getBigDecimal(String name) throws SQLException {
@@ -378,7 +621,7 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
 
     public BigInteger getBigInteger(int index) throws SQLException {
         checkIndex(index);
-        return getBigInteger(values.get(index - 1));
+        return getBigInteger(getTypedColumn(index - 1));
     }
 
     public BigInteger getBigInteger(String name) throws SQLException {
@@ -420,7 +663,20 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
 
     public boolean getBoolean(int index) throws SQLException {
         checkIndex(index);
-        return getBoolean(values.get(index - 1));
+        ByteBuffer value;
+        switch (columns[index - 1].primitive) {
+            case BOOLEAN:
+                value = getRawValue(index - 1);
+                return value != null && value.get(value.position()) != 0;
+            case INT:
+                value = getRawValue(index - 1);
+                return value != null && value.getInt(value.position()) != 0;
+            case LONG:
+                value = getRawValue(index - 1);
+                return value != null && value.getLong(value.position()) != 0;
+            default:
+                return getBoolean(getTypedColumn(index - 1));
+        }
     }
 
     public boolean getBoolean(String name) throws SQLException {
@@ -470,7 +726,7 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
 
     public byte getByte(int index) throws SQLException {
         checkIndex(index);
-        return getByte(values.get(index - 1));
+        return getByte(getTypedColumn(index - 1));
     }
 
     public byte getByte(String name) throws SQLException {
@@ -511,7 +767,8 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
     }
 
     public byte[] getBytes(int index) throws SQLException {
-        return getBytes(values.get(index - 1));
+        checkIndex(index);
+        return getBytes(getTypedColumn(index - 1));
     }
 
     public byte[] getBytes(String name) throws SQLException {
@@ -520,21 +777,92 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
 
     private byte[] getBytes(TypedColumn column) throws SQLException {
         checkNotClosed();
-        ByteBuffer value = (ByteBuffer) column.getRawColumn().value;
+        ByteBuffer value = column.getRawColumn().value;
         wasNull = value == null;
-        return value == null ? null : ByteBufferUtil.clone(value).array();
+        if (wasNull) {
+            return null;
+        }
+        byte[] bytes = new byte[value.remaining()];
+        value.duplicate().get(bytes);
+        return bytes;
+    }
+
+    public ByteBuffer getByteBuffer(int index) throws SQLException {
+        checkIndex(index);
+        ByteBuffer value = rowColumns.get(index - 1).value;
+        wasNull = value == null;
+        return wasNull ? null : value.asReadOnlyBuffer();
+    }
+
+    public ByteBuffer getByteBuffer(String name) throws SQLException {
+        checkName(name);
+        return getByteBuffer(indexMap.get(name).intValue());
+    }
+
+    public InputStream getBinaryStream(int index) throws SQLException {
+        ByteBuffer value = getByteBuffer(index);
+        return value == null ? null : ByteBufferUtil.inputStream(value);
+    }
+
+    public InputStream getBinaryStream(String name) throws SQLException {
+        checkName(name);
+        return getBinaryStream(indexMap.get(name).intValue());
+    }
+
+    public Blob getBlob(int index) throws SQLException {
+        ByteBuffer value = getByteBuffer(index);
+        return value == null ? null : new CassandraBlob(value);
+    }
+
+    public Blob getBlob(String name) throws SQLException {
+        checkName(name);
+        return getBlob(indexMap.get(name).intValue());
+    }
+
+    public InputStream getAsciiStream(int index) throws SQLException {
+        checkIndex(index);
+        if (columns[index - 1].collectionType == CollectionType.NOT_COLLECTION
+                && columns[index - 1].valueType instanceof JdbcAscii) {
+            // ASCII is stored as is
+            return getBinaryStream(index);
+        }
+        String value = getString(index);
+        return value == null ? null : new ByteArrayInputStream(value.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    public InputStream getAsciiStream(String name) throws SQLException {
+        checkName(name);
+        return getAsciiStream(indexMap.get(name).intValue());
+    }
+
+    public Reader getCharacterStream(int index) throws SQLException {
+        checkIndex(index);
+        AbstractJdbcType<?> type = columns[index - 1].valueType;
+        if (columns[index - 1].collectionType == CollectionType.NOT_COLLECTION
+                && (type instanceof JdbcUTF8 || type instanceof JdbcAscii)) {
+            // decode the text as it is read, rather than all of it up front
+            InputStream value = getBinaryStream(index);
+            return value == null ? null : new InputStreamReader(value, StandardCharsets.UTF_8);
+        }
+        String value = getString(index);
+        return value == null ? null : new StringReader(value);
+    }
+
+    public Reader getCharacterStream(String name) throws SQLException {
+        checkName(name);
+        return getCharacterStream(indexMap.get(name).intValue());
     }
 
     public TypedColumn getColumn(int index) throws SQLException {
         checkIndex(index);
         checkNotClosed();
-        return values.get(index - 1);
+        return getTypedColumn(index - 1);
     }
 
     public TypedColumn getColumn(String name) throws SQLException {
         checkName(name);
         checkNotClosed();
-        return values.get(indexMap.get(name).intValue());
+        return getTypedColumn(indexMap.get(name).intValue() - 1);
     }
 
     public int getConcurrency() throws SQLException {
@@ -544,7 +872,7 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
 
     public Date getDate(int index) throws SQLException {
         checkIndex(index);
-        return getDate(values.get(index - 1));
+        return getDate(getTypedColumn(index - 1));
     }
 
     public Date getDate(int index, Calendar calendar) throws SQLException {
@@ -594,7 +922,23 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
 
     public double getDouble(int index) throws SQLException {
         checkIndex(index);
-        return getDouble(values.get(index - 1));
+        ByteBuffer value;
+        switch (columns[index - 1].primitive) {
+            case DOUBLE:
+                value = getRawValue(index - 1);
+                return value == null ? 0.0 : value.getDouble(value.position());
+            case FLOAT:
+                value = getRawValue(index - 1);
+                return value == null ? 0.0 : value.getFloat(value.position());
+            case INT:
+                value = getRawValue(index - 1);
+                return value == null ? 0.0 : value.getInt(value.position());
+            case LONG:
+                value = getRawValue(index - 1);
+                return value == null ? 0.0 : value.getLong(value.position());
+            default:
+                return getDouble(getTypedColumn(index - 1));
+        }
     }
 
     public double getDouble(String name) throws SQLException {
@@ -674,7 +1018,23 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
 
     public float getFloat(int index) throws SQLException {
         checkIndex(index);
-        return getFloat(values.get(index - 1));
+        ByteBuffer value;
+        switch (columns[index - 1].primitive) {
+            case FLOAT:
+                value = getRawValue(index - 1);
+                return value == null ? 0.0f : value.getFloat(value.position());
+            case DOUBLE:
+                value = getRawValue(index - 1);
+                return value == null ? 0.0f : (float) value.getDouble(value.position());
+            case INT:
+                value = getRawValue(index - 1);
+                return value == null ? 0.0f : value.getInt(value.position());
+            case LONG:
+                value = getRawValue(index - 1);
+                return value == null ? 0.0f : value.getLong(value.position());
+            default:
+                return getFloat(getTypedColumn(index - 1));
+        }
     }
 
     public float getFloat(String name) throws SQLException {
@@ -729,7 +1089,17 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
 
     public int getInt(int index) throws SQLException {
         checkIndex(index);
-        return getInt(values.get(index - 1));
+        ByteBuffer value;
+        switch (columns[index - 1].primitive) {
+            case INT:
+                value = getRawValue(index - 1);
+                return value == null ? 0 : value.getInt(value.position());
+            case LONG:
+                value = getRawValue(index - 1);
+                return value == null ? 0 : (int) value.getLong(value.position());
+            default:
+                return getInt(getTypedColumn(index - 1));
+        }
     }
 
     public int getInt(String name) throws SQLException {
@@ -775,7 +1145,7 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
 
     public List<?> getList(int index) throws SQLException {
         checkIndex(index);
-        return getList(values.get(index - 1));
+        return getList(getTypedColumn(index - 1));
     }
 
     public List<?> getList(String name) throws SQLException {
@@ -797,7 +1167,17 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
 
     public long getLong(int index) throws SQLException {
         checkIndex(index);
-        return getLong(values.get(index - 1));
+        ByteBuffer value;
+        switch (columns[index - 1].primitive) {
+            case LONG:
+                value = getRawValue(index - 1);
+                return value == null ? 0L : value.getLong(value.position());
+            case INT:
+                value = getRawValue(index - 1);
+                return value == null ? 0L : value.getInt(value.position());
+            default:
+                return getLong(getTypedColumn(index - 1));
+        }
     }
 
     public long getLong(String name) throws SQLException {
@@ -843,7 +1223,7 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
 
     public Map<?, ?> getMap(int index) throws SQLException {
         checkIndex(index);
-        return getMap(values.get(index - 1));
+        return getMap(getTypedColumn(index - 1));
     }
 
     public Map<?, ?> getMap(String name) throws SQLException {
@@ -870,7 +1250,7 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
 
     public Object getObject(int index) throws SQLException {
         checkIndex(index);
-        return getObject(values.get(index - 1));
+        return getObject(getTypedColumn(index - 1));
     }
 
     public Object getObject(String name) throws SQLException {
@@ -898,7 +1278,7 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
 
     public RowId getRowId(int index) throws SQLException {
         checkIndex(index);
-        return getRowId(values.get(index - 1));
+        return getRowId(getTypedColumn(index - 1));
     }
 
     public RowId getRowId(String name) throws SQLException {
@@ -915,12 +1295,12 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
 
     public short getShort(int index) throws SQLException {
         checkIndex(index);
-        return getShort(values.get(index - 1));
+        return getShort(getTypedColumn(index - 1));
     }
 
     public Set<?> getSet(int index) throws SQLException {
         checkIndex(index);
-        return getSet(values.get(index - 1));
+        return getSet(getTypedColumn(index - 1));
     }
 
     public Set<?> getSet(String name) throws SQLException {
@@ -984,7 +1364,7 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
 
     public String getString(int index) throws SQLException {
         checkIndex(index);
-        return getString(values.get(index - 1));
+        return getString(getTypedColumn(index - 1));
     }
 
     public String getString(String name) throws SQLException {
@@ -1001,7 +1381,7 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
 
     public Time getTime(int index) throws SQLException {
         checkIndex(index);
-        return getTime(values.get(index - 1));
+        return getTime(getTypedColumn(index - 1));
     }
 
     public Time getTime(int index, Calendar calendar) throws SQLException {
@@ -1051,7 +1431,7 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
 
     public Timestamp getTimestamp(int index) throws SQLException {
         checkIndex(index);
-        return getTimestamp(values.get(index - 1));
+        return getTimestamp(getTypedColumn(index - 1));
     }
 
     public Timestamp getTimestamp(int index, Calendar calendar) throws SQLException {
@@ -1133,7 +1513,7 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
     }
 
     public boolean isClosed() throws SQLException {
-        return values == null;
+        return columns == null;
     }
 
     public boolean isFirst() throws SQLException {
@@ -1146,7 +1526,10 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
 
     public boolean isLast() throws SQLException {
         checkNotClosed();
-        return !rowsIterator.hasNext();
+        if (store != null) {
+            return rowNumber != 0 && rowNumber == store.size();
+        }
+        return !hasMoreRows();
     }
 
     public boolean isWrapperFor(Class<?> iface) throws SQLException {
@@ -1154,19 +1537,25 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
     }
 
     public boolean last() throws SQLException {
-        throw new SQLFeatureNotSupportedException(NOT_SUPPORTED);
+        return absolute(-1);
     }
 
     public synchronized boolean next() throws SQLException {
+        if (store != null) {
+            return moveTo(position() + 1);
+        }
         if (hasMoreRows()) {
             // populateColumns is called upon init to set up the metadata fields; so skip first call
             if (rowNumber != 0) {
                 populateColumns();
             } else {
-                rowsIterator.next();
+                nextRow();
             }
 // populateColumns();
             rowNumber++;
+            if (pager != null && pageRow++ == readAheadRow) {
+                pager.readAhead();
+            }
             return true;
         } else {
             rowNumber = Integer.MAX_VALUE;
@@ -1174,6 +1563,45 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
         }
     }
 
+    public ColumnBatch nextBatch() throws SQLException {
+        return nextBatch(Integer.MAX_VALUE);
+    }
+
+    public synchronized ColumnBatch nextBatch(int maxRows) throws SQLException {
+        checkNotClosed();
+        List<CqlRow> rows = new ArrayList<CqlRow>();
+        if (store != null) {
+            int to = (int) Math.min((long) store.size(), (long) position() + maxRows);
+            for (int row = position(); row < to; row++) {
+                rows.add(store.get(row));
+            }
+            ColumnBatch batch = new ColumnBatch(columns, rows);
+            moveTo(rows.isEmpty() ? store.size() + 1 : to);
+            return batch;
+        }
+        if (pager != null) {
+            pager.readAhead();
+        }
+        while (rows.size() < maxRows && hasMoreRows()) {
+            rows.add(nextRow());
+        }
+        ColumnBatch batch = new ColumnBatch(columns, rows);
+        if (rows.isEmpty()) {
+            rowNumber = Integer.MAX_VALUE;
+        } else {
+            CqlRow last = rows.get(rows.size() - 1);
+            curRowKey = last.getKey();
+            if (isDescribed(last.getColumns())) {
+                Arrays.fill(values, null);
+            } else {
+                describeColumns(last.getColumns());
+            }
+            rowColumns = last.getColumns();
+            rowNumber += rows.size();
+        }
+        return batch;
+    }
+
     private String bbToString(ByteBuffer buffer) {
         try {
             return string(buffer);
@@ -1183,78 +1611,35 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
 
     }
 
-    private TypedColumn createColumn(Column column) {
-        assert column != null;
-        assert column.name != null;
+    private ColumnDescriptor createDescriptor(ByteBuffer name, int position) {
+        assert name != null;
 
-        AbstractJdbcType<?> keyType = null;
-        CollectionType type = CollectionType.NOT_COLLECTION;
-        String nameType = schema.name_types.get(column.name);
+        String nameType = schema.name_types.get(name);
         if (nameType == null) {
             nameType = "AsciiType";
         }
-        AbstractJdbcType<?> comparator = TypesMap.getTypeForComparator(nameType == null ? schema.default_name_type : nameType);
-        String valueType = schema.value_types.get(column.name);
-        AbstractJdbcType<?> validator = TypesMap.getTypeForComparator(valueType == null ? schema.default_value_type : valueType);
-        if (validator == null) {
-            if (valueType.equals("org.apache.cassandra.db.marshal.TimestampType")) {
-                validator = TypesMap.getTypeForComparator("org.apache.cassandra.db.marshal.DateType");
-            } else {
-                int index = valueType.indexOf("(");
-                String collectionClass = "";
-                if (index > 0) {
-                    collectionClass = valueType.substring(0, index);
-                } else {
-                    collectionClass = valueType;
-                }
-                if (collectionClass.endsWith("ListType")) {
-                    type = CollectionType.LIST;
-                } else if (collectionClass.endsWith("SetType")) {
-                    type = CollectionType.SET;
-                } else if (collectionClass.endsWith("MapType")) {
-                    type = CollectionType.MAP;
-                }
+        AbstractJdbcType<?> comparator = CodecPlan.forType(nameType).type;
+        String valueType = schema.value_types.get(name);
+        CodecPlan plan = CodecPlan.forType(valueType == null ? schema.default_value_type : valueType);
 
-                String[] split = valueType.substring(index + 1, valueType.length() - 1).split(",");
-                if (split.length > 1) {
-                    if (split[0].equals("org.apache.cassandra.db.marshal.TimestampType")) {
-                        keyType = TypesMap.getTypeForComparator("org.apache.cassandra.db.marshal.DateType");
-                    } else {
-                        keyType = TypesMap.getTypeForComparator(split[0]);
-                    }
-
-                    if (split[1].equals("org.apache.cassandra.db.marshal.TimestampType")) {
-                        validator = TypesMap.getTypeForComparator("org.apache.cassandra.db.marshal.DateType");
-                    } else {
-                        validator = TypesMap.getTypeForComparator(split[1]);
-                    }
-
-                } else {
-                    if (split[0].equals("org.apache.cassandra.db.marshal.TimestampType")) {
-                        validator = TypesMap.getTypeForComparator("org.apache.cassandra.db.marshal.DateType");
-                    } else {
-                        validator = TypesMap.getTypeForComparator(split[0]);
-                    }
-                }
-            }
-
-        }
-
-        TypedColumn tc = new TypedColumn(column, comparator, validator, keyType, type);
+        ColumnDescriptor descriptor = new ColumnDescriptor(name, position, comparator, plan.valueType, plan.keyType,
+                plan.collectionType, statement != null && statement.connection.dedupStrings);
 
         if (logger.isTraceEnabled()) {
-            logger.trace("tc = " + tc);
+            logger.trace("column " + position + " = " + descriptor.nameString + " " + plan.valueType);
         }
 
-        return tc;
+        return descriptor;
     }
 
     public boolean previous() throws SQLException {
-        throw new SQLFeatureNotSupportedException(NOT_SUPPORTED);
+        return relative(-1);
     }
 
-    public boolean relative(int arg0) throws SQLException {
-        throw new SQLFeatureNotSupportedException(NOT_SUPPORTED);
+    public synchronized boolean relative(int rows) throws SQLException {
+        checkScrollable();
+        long row = (long) position() + rows;
+        return moveTo((int) Math.max(0, Math.min(store.size() + 1L, row)));
     }
 
     public <T> T unwrap(Class<T> iface) throws SQLException {
@@ -1285,16 +1670,16 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
 
         public String getColumnClassName(int column) throws SQLException {
             checkIndex(column);
-            return values.get(column - 1).getValueType().getType().getName();
+            return getTypedColumn(column - 1).getValueType().getType().getName();
         }
 
         public int getColumnCount() throws SQLException {
-            return values.size();
+            return columns.length;
         }
 
         public int getColumnDisplaySize(int column) throws SQLException {
             checkIndex(column);
-            String stringValue = values.get(column - 1).getValueString();
+            String stringValue = getTypedColumn(column - 1).getValueString();
             return (stringValue == null ? -1 : stringValue.length());
         }
 
@@ -1305,12 +1690,12 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
 
         public String getColumnName(int column) throws SQLException {
             checkIndex(column);
-            return values.get(column - 1).getNameString();
+            return getTypedColumn(column - 1).getNameString();
         }
 
         public int getColumnType(int column) throws SQLException {
             checkIndex(column);
-            return values.get(column - 1).getValueType().getJdbcType();
+            return getTypedColumn(column - 1).getValueType().getJdbcType();
         }
 
         /**
@@ -1318,18 +1703,18 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
          */
         public String getColumnTypeName(int column) throws SQLException {
             checkIndex(column);
-            return values.get(column - 1).getValueType().getClass().getSimpleName();
+            return getTypedColumn(column - 1).getValueType().getClass().getSimpleName();
         }
 
         public int getPrecision(int column) throws SQLException {
             checkIndex(column);
-            TypedColumn col = values.get(column - 1);
+            TypedColumn col = getTypedColumn(column - 1);
             return col.getValueType().getPrecision(col.getValue());
         }
 
         public int getScale(int column) throws SQLException {
             checkIndex(column);
-            TypedColumn tc = values.get(column - 1);
+            TypedColumn tc = getTypedColumn(column - 1);
             return tc.getValueType().getScale(tc.getValue());
         }
 
@@ -1347,18 +1732,18 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
 
         public boolean isAutoIncrement(int column) throws SQLException {
             checkIndex(column);
-            return values.get(column - 1).getValueType() instanceof JdbcCounterColumn; // todo: check Value is correct.
+            return getTypedColumn(column - 1).getValueType() instanceof JdbcCounterColumn; // todo: check Value is correct.
         }
 
         public boolean isCaseSensitive(int column) throws SQLException {
             checkIndex(column);
-            TypedColumn tc = values.get(column - 1);
+            TypedColumn tc = getTypedColumn(column - 1);
             return tc.getValueType().isCaseSensitive();
         }
 
         public boolean isCurrency(int column) throws SQLException {
             checkIndex(column);
-            TypedColumn tc = values.get(column - 1);
+            TypedColumn tc = getTypedColumn(column - 1);
             return tc.getValueType().isCurrency();
         }
 
@@ -1387,7 +1772,7 @@ class CassandraResultSet extends AbstractResultSet implements CassandraResultSet
 
         public boolean isSigned(int column) throws SQLException {
             checkIndex(column);
-            TypedColumn tc = values.get(column - 1);
+            TypedColumn tc = getTypedColumn(column - 1);
             return tc.getValueType().isSigned();
         }
 
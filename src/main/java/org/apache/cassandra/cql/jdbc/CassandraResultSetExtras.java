@@ -21,6 +21,7 @@ package org.apache.cassandra.cql.jdbc;
  */
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.List;
@@ -57,6 +58,29 @@ public interface CassandraResultSetExtras extends ResultSet {
 
     public Map<?, ?> getMap(String name) throws SQLException;
 
+    /**
+     * @return a read-only view of the value of the given column offset as received, without copying it
+     */
+    public ByteBuffer getByteBuffer(int index) throws SQLException;
+
+    /**
+     * @return a read-only view of the value of the given column name as received, without copying it
+     */
+    public ByteBuffer getByteBuffer(String name) throws SQLException;
+
+    /**
+     * Read the next rows at once, laid out by column. The cursor is left on the last row read.
+     *
+     * @param maxRows the number of rows to read at most
+     * @return the rows read, none when there are no more rows
+     */
+    public ColumnBatch nextBatch(int maxRows) throws SQLException;
+
+    /**
+     * Read all remaining rows at once, laid out by column. The cursor is left on the last row read.
+     */
+    public ColumnBatch nextBatch() throws SQLException;
+
 
     /**
      * @return the raw column data for the given column offset
@@ -20,8 +20,14 @@
  */
 package org.apache.cassandra.cql.jdbc;
 
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureFallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.apache.cassandra.thrift.ConsistencyLevel;
 import org.apache.cassandra.thrift.CqlResult;
+import org.apache.cassandra.thrift.CqlResultType;
 import org.apache.cassandra.thrift.InvalidRequestException;
 import org.apache.cassandra.thrift.SchemaDisagreementException;
 import org.apache.cassandra.thrift.TimedOutException;
@@ -30,6 +36,7 @@ import org.apache.thrift.TException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -42,14 +49,22 @@ import java.sql.SQLSyntaxErrorException;
 import java.sql.SQLTransientConnectionException;
 import java.sql.SQLWarning;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import static org.apache.cassandra.cql.jdbc.Utils.BAD_AUTO_GEN;
 import static org.apache.cassandra.cql.jdbc.Utils.BAD_FETCH_DIR;
 import static org.apache.cassandra.cql.jdbc.Utils.BAD_FETCH_SIZE;
+import static org.apache.cassandra.cql.jdbc.Utils.BAD_MEMORY_BUDGET;
 import static org.apache.cassandra.cql.jdbc.Utils.BAD_HOLD_RSET;
 import static org.apache.cassandra.cql.jdbc.Utils.BAD_KEEP_RSET;
 import static org.apache.cassandra.cql.jdbc.Utils.BAD_TYPE_RSET;
-import static org.apache.cassandra.cql.jdbc.Utils.NO_BATCH;
+import static org.apache.cassandra.cql.jdbc.Utils.BATCH_FAILED;
 import static org.apache.cassandra.cql.jdbc.Utils.NO_GEN_KEYS;
 import static org.apache.cassandra.cql.jdbc.Utils.NO_INTERFACE;
 import static org.apache.cassandra.cql.jdbc.Utils.NO_MULTIPLE;
@@ -58,6 +73,8 @@ import static org.apache.cassandra.cql.jdbc.Utils.NO_SERVER;
 import static org.apache.cassandra.cql.jdbc.Utils.NO_UPDATE_COUNT;
 import static org.apache.cassandra.cql.jdbc.Utils.SCHEMA_MISMATCH;
 import static org.apache.cassandra.cql.jdbc.Utils.WAS_CLOSED_STMT;
+import static org.apache.cassandra.cql.jdbc.Utils.buildBatch;
+import static org.apache.cassandra.cql.jdbc.Utils.utf8Length;
 
 /**
  * Cassandra statement: implementation class for {@link PreparedStatement}.
@@ -65,6 +82,12 @@ import static org.apache.cassandra.cql.jdbc.Utils.WAS_CLOSED_STMT;
 
 class CassandraStatement extends AbstractStatement implements CassandraStatementExtras, Comparable<Object>, Statement {
     private static final Logger logger = LoggerFactory.getLogger(CassandraStatement.class);
+
+    /**
+     * Builds the result sets of asynchronous requests, created on first use and shared by every statement
+     */
+    private static ThreadPoolExecutor resultSetExecutor;
+
     /**
      * The connection.
      */
@@ -79,6 +102,8 @@ class CassandraStatement extends AbstractStatement implements CassandraStatement
 
     protected int fetchSize = 0;
 
+    protected long memoryBudget;
+
     protected int maxFieldSize = 0;
 
     protected int maxRows = 0;
@@ -97,6 +122,11 @@ class CassandraStatement extends AbstractStatement implements CassandraStatement
 
     protected ConsistencyLevel consistencyLevel;
 
+    /**
+     * The CQL statements added with {@link #addBatch(String)}
+     */
+    protected List<String> batch = new ArrayList<String>();
+
     CassandraStatement(CassandraConnection con) throws SQLException {
         this(con, null, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, ResultSet.HOLD_CURSORS_OVER_COMMIT);
     }
@@ -114,13 +144,17 @@ class CassandraStatement extends AbstractStatement implements CassandraStatement
         this.connection = con;
         this.cql = cql;
         this.consistencyLevel = con.defaultConsistencyLevel;
+        this.fetchSize = con.defaultFetchSize;
+        this.memoryBudget = con.memoryBudget;
 
         if (!(resultSetType == ResultSet.TYPE_FORWARD_ONLY
                 || resultSetType == ResultSet.TYPE_SCROLL_INSENSITIVE
                 || resultSetType == ResultSet.TYPE_SCROLL_SENSITIVE)) {
             throw new SQLSyntaxErrorException(BAD_TYPE_RSET);
         }
-        this.resultSetType = resultSetType;
+        // the rows of a scrollable result are read at once, so changes made after the query are never seen
+        this.resultSetType = resultSetType == ResultSet.TYPE_SCROLL_SENSITIVE
+                ? ResultSet.TYPE_SCROLL_INSENSITIVE : resultSetType;
 
         if (!(resultSetConcurrency == ResultSet.CONCUR_READ_ONLY
                 || resultSetConcurrency == ResultSet.CONCUR_UPDATABLE)) {
@@ -136,9 +170,9 @@ class CassandraStatement extends AbstractStatement implements CassandraStatement
         this.resultSetHoldability = resultSetHoldability;
     }
 
-    public void addBatch(String arg0) throws SQLException {
+    public void addBatch(String query) throws SQLException {
         checkNotClosed();
-        throw new SQLFeatureNotSupportedException(NO_BATCH);
+        batch.add(query);
     }
 
     protected final void checkNotClosed() throws SQLException {
@@ -149,7 +183,7 @@ class CassandraStatement extends AbstractStatement implements CassandraStatement
 
     public void clearBatch() throws SQLException {
         checkNotClosed();
-        throw new SQLFeatureNotSupportedException(NO_BATCH);
+        batch.clear();
     }
 
     public void clearWarnings() throws SQLException {
@@ -172,11 +206,18 @@ class CassandraStatement extends AbstractStatement implements CassandraStatement
             }
 
             resetResults();
-            CqlResult rSet = connection.execute(cql, consistencyLevel);
+            TokenRangePager pager = fetchSize > 0 ? TokenRangePager.forQuery(connection, cql, fetchSize, consistencyLevel) : null;
+            long start = System.nanoTime();
+            CqlResult rSet;
+            try {
+                rSet = pager != null ? pager.nextPage() : connection.execute(cql, consistencyLevel);
+            } finally {
+                DriverMetrics.forQuery(cql).record(start);
+            }
 
             switch (rSet.getType()) {
                 case ROWS:
-                    currentResultSet = new CassandraResultSet(this, rSet);
+                    currentResultSet = new CassandraResultSet(this, rSet, pager);
                     break;
                 case INT:
                     updateCount = rSet.getNum();
@@ -211,6 +252,102 @@ class CassandraStatement extends AbstractStatement implements CassandraStatement
         return !(currentResultSet == null);
     }
 
+    public ListenableFuture<ResultSet> executeAsync(String query) throws SQLException {
+        checkNotClosed();
+        if (logger.isTraceEnabled()) {
+            logger.trace("CQL: " + query);
+        }
+        return toResultSet(connection.executeAsync(query, CassandraConnection.defaultCompression, consistencyLevel), query, false);
+    }
+
+    public ListenableFuture<ResultSet> executeQueryAsync(String query) throws SQLException {
+        checkNotClosed();
+        if (logger.isTraceEnabled()) {
+            logger.trace("CQL: " + query);
+        }
+        return toResultSet(connection.executeAsync(query, CassandraConnection.defaultCompression, consistencyLevel), query, true);
+    }
+
+    public ListenableFuture<ResultSet> executeAsync() throws SQLException {
+        throw new SQLFeatureNotSupportedException(NOT_SUPPORTED);
+    }
+
+    public ListenableFuture<ResultSet> executeQueryAsync() throws SQLException {
+        throw new SQLFeatureNotSupportedException(NOT_SUPPORTED);
+    }
+
+    /**
+     * Turn the raw result of an asynchronous request into a result set. Results are independent of
+     * {@link #getResultSet()} so several requests of the same statement may be in flight at once.
+     * <p/>
+     * The result set is built on a thread of its own: decoding and packing the rows must not hold up the selector
+     * thread that every asynchronous request of the JVM goes through.
+     */
+    protected ListenableFuture<ResultSet> toResultSet(ListenableFuture<CqlResult> future, final String query,
+                                                      final boolean rowsRequired) {
+        final DriverMetrics.QueryMetrics metrics = DriverMetrics.forQuery(query);
+        final long start = System.nanoTime();
+        future.addListener(new Runnable() {
+            public void run() {
+                metrics.record(start);
+            }
+        }, MoreExecutors.directExecutor());
+        ListenableFuture<ResultSet> resultSet = Futures.transform(future, new AsyncFunction<CqlResult, ResultSet>() {
+            public ListenableFuture<ResultSet> apply(CqlResult result) throws SQLException {
+                if (result.getType() == CqlResultType.ROWS) {
+                    return Futures.<ResultSet>immediateFuture(new CassandraResultSet(CassandraStatement.this, result));
+                }
+                if (rowsRequired) {
+                    throw new SQLNonTransientException(NO_RESULTSET);
+                }
+                return Futures.immediateFuture(null);
+            }
+        }, getResultSetExecutor());
+        return Futures.withFallback(resultSet, new FutureFallback<ResultSet>() {
+            public ListenableFuture<ResultSet> create(Throwable t) {
+                return Futures.immediateFailedFuture(translateException(t, query));
+            }
+        });
+    }
+
+    private static synchronized ThreadPoolExecutor getResultSetExecutor() {
+        if (resultSetExecutor == null) {
+            int threads = Runtime.getRuntime().availableProcessors();
+            resultSetExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "cassandra-jdbc-result-sets");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            resultSetExecutor.allowCoreThreadTimeOut(true);
+        }
+        return resultSetExecutor;
+    }
+
+    /**
+     * Map a failure reported by the server or the transport to the matching SQLException.
+     */
+    static SQLException translateException(Throwable t, String cql) {
+        if (t instanceof SQLException) {
+            return (SQLException) t;
+        }
+        if (t instanceof InvalidRequestException) {
+            return new SQLSyntaxErrorException(((InvalidRequestException) t).getWhy() + "\n'" + cql + "'", t);
+        }
+        if (t instanceof UnavailableException) {
+            return new SQLNonTransientConnectionException(NO_SERVER, t);
+        }
+        if (t instanceof TimedOutException) {
+            return new SQLTransientConnectionException(t);
+        }
+        if (t instanceof SchemaDisagreementException) {
+            return new SQLRecoverableException(SCHEMA_MISMATCH);
+        }
+        return new SQLNonTransientConnectionException(t);
+    }
+
     public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
         checkNotClosed();
 
@@ -225,8 +362,62 @@ class CassandraStatement extends AbstractStatement implements CassandraStatement
         return execute(sql);
     }
 
+    /**
+     * Send the statements of the batch as CQL batches of the type set on the connection, each of them at most
+     * the configured batch size unless a single statement is larger. Cassandra does not count the rows a write
+     * touches, so every successful statement counts as {@link Statement#SUCCESS_NO_INFO}.
+     */
     public int[] executeBatch() throws SQLException {
-        throw new SQLFeatureNotSupportedException(NO_BATCH);
+        checkNotClosed();
+        resetResults();
+        List<String> statements = batch;
+        batch = new ArrayList<String>();
+        int[] updateCounts = new int[statements.size()];
+        int done = 0;
+        while (done < statements.size()) {
+            int end = done + 1;
+            int size = utf8Length(statements.get(done));
+            while (end < statements.size()) {
+                int length = utf8Length(statements.get(end));
+                if (size + length > connection.batchSize) {
+                    break;
+                }
+                size += length;
+                end++;
+            }
+            String query = end - done == 1 ? statements.get(done) : buildBatch(connection.batchType, statements, done, end);
+            if (logger.isTraceEnabled()) {
+                logger.trace("CQL: " + query);
+            }
+            long start = System.nanoTime();
+            try {
+                connection.execute(query, consistencyLevel);
+            } catch (TException e) {
+                throw batchFailed(e, query, updateCounts, done);
+            } finally {
+                DriverMetrics.forQuery(query).record(start);
+            }
+            Arrays.fill(updateCounts, done, end, SUCCESS_NO_INFO);
+            done = end;
+        }
+        return updateCounts;
+    }
+
+    /**
+     * Report a failed batch with the update counts of the statements applied before.
+     */
+    protected BatchUpdateException batchFailed(TException e, String query, int[] updateCounts, int done) {
+        SQLException cause = translateException(e, query);
+        if (cause instanceof SQLNonTransientConnectionException && !(e instanceof UnavailableException)) {
+            try {
+                // Try to close the connection in order to force client to reconnect
+                connection.close();
+            } catch (Exception e1) {
+
+            }
+        }
+        return new BatchUpdateException(String.format(BATCH_FAILED, done, updateCounts.length, cause.getMessage()),
+                cause.getSQLState(), cause.getErrorCode(), Arrays.copyOf(updateCounts, done), cause);
     }
 
     public ResultSet executeQuery(String query) throws SQLException {
@@ -293,6 +484,19 @@ class CassandraStatement extends AbstractStatement implements CassandraStatement
         fetchSize = size;
     }
 
+    public long getMemoryBudget() throws SQLException {
+        checkNotClosed();
+        return memoryBudget;
+    }
+
+    public void setMemoryBudget(long bytes) throws SQLException {
+        checkNotClosed();
+        if (bytes < 0) {
+            throw new SQLSyntaxErrorException(String.format(BAD_MEMORY_BUDGET, bytes));
+        }
+        memoryBudget = bytes;
+    }
+
     public int getMaxFieldSize() throws SQLException {
         checkNotClosed();
         return maxFieldSize;
@@ -367,7 +571,7 @@ class CassandraStatement extends AbstractStatement implements CassandraStatement
 
     public int getResultSetType() throws SQLException {
         checkNotClosed();
-        return ResultSet.TYPE_FORWARD_ONLY;
+        return resultSetType;
     }
 
     public int getUpdateCount() throws SQLException {
@@ -20,12 +20,52 @@
  */
 package org.apache.cassandra.cql.jdbc;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import org.apache.cassandra.thrift.ConsistencyLevel;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
 
 public interface CassandraStatementExtras extends Statement {
     public ConsistencyLevel getConsistencyLevel();
 
     public void setConsistencyLevel(ConsistencyLevel consistencyLevel);
+
+    /**
+     * @return the bytes the rows read at once into a result set may take on the heap before they spill to a
+     *         temporary file, 0 for no limit
+     */
+    public long getMemoryBudget() throws SQLException;
+
+    public void setMemoryBudget(long bytes) throws SQLException;
+
+    /**
+     * Send a CQL statement without waiting for the response.
+     *
+     * @return a future yielding the result set, or null when the statement does not return rows
+     */
+    public ListenableFuture<ResultSet> executeAsync(String cql) throws SQLException;
+
+    /**
+     * Send a CQL query without waiting for the response.
+     *
+     * @return a future yielding the result set; it fails when the statement does not return rows
+     */
+    public ListenableFuture<ResultSet> executeQueryAsync(String cql) throws SQLException;
+
+    /**
+     * Send a prepared statement with its current bound values without waiting for the response. The bound values
+     * may be changed as soon as this method returns.
+     *
+     * @return a future yielding the result set, or null when the statement does not return rows
+     */
+    public ListenableFuture<ResultSet> executeAsync() throws SQLException;
+
+    /**
+     * Send a prepared query with its current bound values without waiting for the response.
+     *
+     * @return a future yielding the result set; it fails when the statement does not return rows
+     */
+    public ListenableFuture<ResultSet> executeQueryAsync() throws SQLException;
 }
@@ -0,0 +1,302 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import org.apache.cassandra.thrift.Cassandra;
+import org.apache.cassandra.thrift.EndpointDetails;
+import org.apache.cassandra.thrift.KsDef;
+import org.apache.cassandra.thrift.TokenRange;
+import org.apache.thrift.TException;
+import org.apache.thrift.transport.TTransportException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What a connection learns about the cluster when it is opened: the cluster name, the ring of the keyspace and the
+ * schema. Snapshots are immutable and shared JVM-wide by the connections opened with the same URL and user, so
+ * only the first of them has to go through the seed and describe the cluster. A shared snapshot is refreshed in the
+ * background while connections keep being opened with it, and dropped once it is no longer used.
+ */
+class ClusterSnapshot {
+    private static final Logger logger = LoggerFactory.getLogger(ClusterSnapshot.class);
+
+    /**
+     * a snapshot nobody asked for during this many refresh periods is dropped
+     */
+    private static final int IDLE_PERIODS = 10;
+
+    private static final ConcurrentMap<String, Entry> snapshots = new ConcurrentHashMap<String, Entry>();
+
+    private static ScheduledThreadPoolExecutor scheduler;
+
+    final String clusterName;
+
+    /**
+     * the ring of the keyspace, or null if it could not be described
+     */
+    final List<TokenRange> ring;
+
+    /**
+     * the class name of the partitioner of the cluster, or null if it could not be described
+     */
+    final String partitioner;
+
+    /**
+     * the ring for client side token computation, or null if the partitioner is not supported
+     */
+    final TokenRing tokenRing;
+
+    /**
+     * the schema loaded lazily; the same decoder is kept when the snapshot is refreshed, and emptied if the
+     * schema changed meanwhile
+     */
+    final ColumnDecoder decoder;
+
+    /**
+     * the schema versions the nodes agreed on when the snapshot was taken, or null if unknown
+     */
+    final Set<String> schemaVersions;
+
+    ClusterSnapshot(String clusterName, List<TokenRange> ring, String partitioner, Set<String> schemaVersions,
+                    ColumnDecoder decoder) {
+        this.clusterName = clusterName;
+        this.ring = ring == null ? null : Collections.unmodifiableList(new ArrayList<TokenRange>(ring));
+        this.partitioner = partitioner;
+        this.tokenRing = ring == null ? null : TokenRing.build(partitioner, ring);
+        this.schemaVersions = schemaVersions;
+        this.decoder = decoder;
+    }
+
+    /**
+     * Describe the cluster through an authenticated client, taking over the schema already loaded by the previous
+     * snapshot unless it changed since.
+     */
+    static ClusterSnapshot describe(Cassandra.Client client, String keyspace, ClusterSnapshot previous) throws TException {
+        String clusterName = client.describe_cluster_name();
+        List<TokenRange> ring = null;
+        try {
+            ring = client.describe_ring(keyspace);
+        } catch (Exception e) {
+            logger.debug("Couldn't get ring description for keyspace " + keyspace + " : " + e.toString());
+        }
+        Set<String> schemaVersions = getSchemaVersions(client);
+        if (schemaVersions == null || !schemaVersions.equals(previous.schemaVersions)) {
+            previous.decoder.invalidateAll();
+        }
+        return new ClusterSnapshot(clusterName, ring, client.describe_partitioner(), schemaVersions, previous.decoder);
+    }
+
+    /**
+     * @return the schema versions in use in the cluster, or null if they could not be read
+     */
+    static Set<String> getSchemaVersions(Cassandra.Client client) {
+        try {
+            return new HashSet<String>(client.describe_schema_versions().keySet());
+        } catch (Exception e) {
+            logger.debug("Couldn't get the schema versions : " + e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * @param connector opens the connections the keyspace definitions are fetched through
+     * @param hosts     the hosts to fetch them from
+     * @return an empty decoder loading keyspaces on first use
+     */
+    static ColumnDecoder newDecoder(Connector connector, List<String> hosts) {
+        return new ColumnDecoder(new RemoteLoader(connector, hosts));
+    }
+
+    /**
+     * @return the hosts of the ring in the given datacenter, or of every datacenter if it is null
+     */
+    List<String> getHosts(String datacenter) {
+        List<String> hosts = new ArrayList<String>();
+        if (ring != null) {
+            for (TokenRange range : ring) {
+                for (EndpointDetails endpoint : range.getEndpoint_details()) {
+                    if ((datacenter == null || datacenter.equals(endpoint.getDatacenter()))
+                            && !hosts.contains(endpoint.getHost())) {
+                        hosts.add(endpoint.getHost());
+                    }
+                }
+            }
+        }
+        return hosts;
+    }
+
+    /**
+     * @return the shared snapshot for the given key, or null if the cluster has to be described
+     */
+    static ClusterSnapshot get(String key) {
+        Entry entry = snapshots.get(key);
+        if (entry == null) {
+            return null;
+        }
+        entry.lastUsed = System.nanoTime();
+        return entry.snapshot;
+    }
+
+    /**
+     * Share a snapshot with the connections opened later with the same key, and keep it up to date.
+     *
+     * @param connector opens a client to one of the hosts for the background refresh
+     * @param period    the refresh period in seconds
+     */
+    static void share(String key, ClusterSnapshot snapshot, Connector connector, String keyspace, long period) {
+        Entry entry = new Entry(key, snapshot, connector, keyspace, TimeUnit.SECONDS.toNanos(period));
+        Entry previous = snapshots.put(key, entry);
+        if (previous != null) {
+            previous.cancel();
+        }
+        entry.schedule(period);
+    }
+
+    /**
+     * Drop the snapshot shared under the given key, e.g. after a schema change, so the next connection describes
+     * the cluster again. The snapshots of the other clusters are left alone.
+     */
+    static void invalidate(String key) {
+        Entry entry = snapshots.remove(key);
+        if (entry != null) {
+            entry.cancel();
+            // connections opened earlier keep using the decoder
+            entry.snapshot.decoder.invalidateAll();
+        }
+    }
+
+    private static synchronized ScheduledThreadPoolExecutor getScheduler() {
+        if (scheduler == null) {
+            scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "cassandra-jdbc-snapshot-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            scheduler.setRemoveOnCancelPolicy(true);
+        }
+        return scheduler;
+    }
+
+    /**
+     * Opens the clients the background refresh and the schema loading go through.
+     */
+    interface Connector {
+        CassandraConnection.ReplicaClient open(String host) throws TException;
+    }
+
+    private static class Entry implements Runnable {
+        private final String key;
+        private final Connector connector;
+        private final String keyspace;
+        private final long period;
+        private volatile ClusterSnapshot snapshot;
+        private volatile long lastUsed = System.nanoTime();
+        private ScheduledFuture<?> task;
+
+        Entry(String key, ClusterSnapshot snapshot, Connector connector, String keyspace, long period) {
+            this.key = key;
+            this.snapshot = snapshot;
+            this.connector = connector;
+            this.keyspace = keyspace;
+            this.period = period;
+        }
+
+        public void run() {
+            if (System.nanoTime() - lastUsed > IDLE_PERIODS * period) {
+                if (snapshots.remove(key, this)) {
+                    cancel();
+                }
+                return;
+            }
+            List<String> hosts = snapshot.getHosts(null);
+            Collections.shuffle(hosts);
+            for (String host : hosts) {
+                try {
+                    CassandraConnection.ReplicaClient connection = connector.open(host);
+                    try {
+                        snapshot = describe(connection.client, keyspace, snapshot);
+                    } finally {
+                        connection.transport.close();
+                    }
+                    return;
+                } catch (Exception e) {
+                    logger.debug("Couldn't refresh cluster snapshot from " + host + " : " + e.toString());
+                }
+            }
+        }
+
+        synchronized void schedule(long period) {
+            task = getScheduler().scheduleWithFixedDelay(this, period, period, TimeUnit.SECONDS);
+        }
+
+        synchronized void cancel() {
+            if (task != null) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Fetches keyspace definitions through a short-lived connection to one of the hosts.
+     */
+    private static class RemoteLoader implements ColumnDecoder.Loader {
+        private final Connector connector;
+        private final List<String> hosts;
+
+        RemoteLoader(Connector connector, List<String> hosts) {
+            this.connector = connector;
+            this.hosts = hosts;
+        }
+
+        public KsDef describe(String keyspace) throws Exception {
+            List<String> candidates = new ArrayList<String>(hosts);
+            Collections.shuffle(candidates);
+            TException error = new TException("no host to describe keyspace " + keyspace);
+            for (String host : candidates) {
+                try {
+                    CassandraConnection.ReplicaClient connection = connector.open(host);
+                    try {
+                        return connection.client.describe_keyspace(keyspace);
+                    } finally {
+                        connection.transport.close();
+                    }
+                } catch (TTransportException e) {
+                    error = e;
+                }
+            }
+            throw error;
+        }
+    }
+}
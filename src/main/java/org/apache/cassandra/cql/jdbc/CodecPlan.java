@@ -0,0 +1,120 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import org.apache.cassandra.cql.jdbc.TypedColumn.CollectionType;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * How to compose the values of a column of a given type, as named in the metadata of a result, e.g.
+ * {@code org.apache.cassandra.db.marshal.MapType(org.apache.cassandra.db.marshal.UTF8Type,...)}.
+ * <p/>
+ * The plans are immutable and kept for the life of the JVM, shared by all result sets of all connections: there
+ * are only as many of them as there are distinct column types in the schemas queried.
+ */
+final class CodecPlan {
+    private static final String TIMESTAMP_TYPE = "org.apache.cassandra.db.marshal.TimestampType";
+
+    private static final ConcurrentMap<String, CodecPlan> plans = new ConcurrentHashMap<String, CodecPlan>();
+
+    /**
+     * the plan for a missing type, which composes nothing
+     */
+    private static final CodecPlan UNKNOWN = new CodecPlan(null, CollectionType.NOT_COLLECTION, null, null);
+
+    /**
+     * the type itself, null for parameterized types such as collections
+     */
+    final AbstractJdbcType<?> type;
+
+    final CollectionType collectionType;
+
+    /**
+     * the type of the keys of a map, null for other columns
+     */
+    final AbstractJdbcType<?> keyType;
+
+    /**
+     * the type of the values, or of the elements of a collection; null if the type is not supported
+     */
+    final AbstractJdbcType<?> valueType;
+
+    private CodecPlan(AbstractJdbcType<?> type, CollectionType collectionType, AbstractJdbcType<?> keyType,
+                      AbstractJdbcType<?> valueType) {
+        this.type = type;
+        this.collectionType = collectionType;
+        this.keyType = keyType;
+        this.valueType = valueType;
+    }
+
+    /**
+     * @return the plan for a type, parsed the first time the type is seen
+     */
+    static CodecPlan forType(String type) {
+        if (type == null) {
+            return UNKNOWN;
+        }
+        CodecPlan plan = plans.get(type);
+        if (plan == null) {
+            plan = parse(type);
+            CodecPlan previous = plans.putIfAbsent(type, plan);
+            if (previous != null) {
+                plan = previous;
+            }
+        }
+        return plan;
+    }
+
+    private static CodecPlan parse(String type) {
+        AbstractJdbcType<?> valueType = getType(type);
+        if (valueType != null) {
+            return new CodecPlan(valueType, CollectionType.NOT_COLLECTION, null, valueType);
+        }
+        int index = type.indexOf("(");
+        String collectionClass = index > 0 ? type.substring(0, index) : type;
+        CollectionType collectionType = CollectionType.NOT_COLLECTION;
+        if (collectionClass.endsWith("ListType")) {
+            collectionType = CollectionType.LIST;
+        } else if (collectionClass.endsWith("SetType")) {
+            collectionType = CollectionType.SET;
+        } else if (collectionClass.endsWith("MapType")) {
+            collectionType = CollectionType.MAP;
+        }
+        AbstractJdbcType<?> keyType = null;
+        String[] split = type.substring(index + 1, type.length() - 1).split(",");
+        if (split.length > 1) {
+            keyType = getType(split[0]);
+            valueType = getType(split[1]);
+        } else {
+            valueType = getType(split[0]);
+        }
+        return new CodecPlan(null, collectionType, keyType, valueType);
+    }
+
+    private static AbstractJdbcType<?> getType(String type) {
+        if (TIMESTAMP_TYPE.equals(type)) {
+            return JdbcDate.instance;
+        }
+        return TypesMap.getTypeForComparator(type);
+    }
+}
@@ -0,0 +1,335 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import org.apache.cassandra.cql.jdbc.ColumnDescriptor.Primitive;
+import org.apache.cassandra.cql.jdbc.TypedColumn.CollectionType;
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.CqlRow;
+
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import java.sql.SQLSyntaxErrorException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.apache.cassandra.cql.jdbc.Utils.MUST_BE_POSITIVE;
+import static org.apache.cassandra.cql.jdbc.Utils.NOT_TRANSLATABLE;
+import static org.apache.cassandra.cql.jdbc.Utils.VALID_LABELS;
+
+/**
+ * A batch of rows of a result set laid out by column, as returned by {@link CassandraResultSetExtras#nextBatch}.
+ * <p/>
+ * Every column is decoded in one pass over the rows into an array: int, bigint and counter, float and double,
+ * and boolean columns into arrays of primitives, text and ascii columns into dictionary codes, and all others
+ * into composed objects. The rows without a value are marked in a null bitmap per column, and hold 0, false
+ * or null in the arrays.
+ * <p/>
+ * Rows are numbered from 0 within the batch, columns from 1 as in JDBC.
+ */
+public final class ColumnBatch {
+    private final int rowCount;
+
+    private final ColumnDescriptor[] columns;
+
+    /**
+     * per column an int[], long[], double[], boolean[], int[] of dictionary codes or Object[]
+     */
+    private final Object[] data;
+
+    private final String[][] dictionaries;
+
+    private final BitSet[] nulls;
+
+    ColumnBatch(ColumnDescriptor[] columns, List<CqlRow> rows) {
+        this.rowCount = rows.size();
+        this.columns = columns;
+        this.data = new Object[columns.length];
+        this.dictionaries = new String[columns.length][];
+        this.nulls = new BitSet[columns.length];
+        for (int c = 0; c < columns.length; c++) {
+            nulls[c] = new BitSet(rowCount);
+            decode(c, rows);
+        }
+    }
+
+    private void decode(int c, List<CqlRow> rows) {
+        ColumnDescriptor column = columns[c];
+        BitSet missing = nulls[c];
+        switch (column.primitive) {
+            case INT: {
+                int[] values = new int[rowCount];
+                for (int i = 0; i < rowCount; i++) {
+                    ByteBuffer value = getValue(rows.get(i), column);
+                    if (value == null) {
+                        missing.set(i);
+                    } else {
+                        values[i] = value.getInt(value.position());
+                    }
+                }
+                data[c] = values;
+                return;
+            }
+            case LONG: {
+                long[] values = new long[rowCount];
+                for (int i = 0; i < rowCount; i++) {
+                    ByteBuffer value = getValue(rows.get(i), column);
+                    if (value == null) {
+                        missing.set(i);
+                    } else {
+                        values[i] = value.getLong(value.position());
+                    }
+                }
+                data[c] = values;
+                return;
+            }
+            case DOUBLE:
+            case FLOAT: {
+                boolean isFloat = column.primitive == Primitive.FLOAT;
+                double[] values = new double[rowCount];
+                for (int i = 0; i < rowCount; i++) {
+                    ByteBuffer value = getValue(rows.get(i), column);
+                    if (value == null) {
+                        missing.set(i);
+                    } else {
+                        values[i] = isFloat ? value.getFloat(value.position()) : value.getDouble(value.position());
+                    }
+                }
+                data[c] = values;
+                return;
+            }
+            case BOOLEAN: {
+                boolean[] values = new boolean[rowCount];
+                for (int i = 0; i < rowCount; i++) {
+                    ByteBuffer value = getValue(rows.get(i), column);
+                    if (value == null) {
+                        missing.set(i);
+                    } else {
+                        values[i] = value.get(value.position()) != 0;
+                    }
+                }
+                data[c] = values;
+                return;
+            }
+            default:
+                break;
+        }
+        if (isText(column)) {
+            // each distinct value is decoded once, found by its bytes
+            Map<ByteBuffer, Integer> codes = new HashMap<ByteBuffer, Integer>();
+            List<String> dictionary = new ArrayList<String>();
+            int[] values = new int[rowCount];
+            for (int i = 0; i < rowCount; i++) {
+                ByteBuffer value = getValue(rows.get(i), column);
+                if (value == null) {
+                    missing.set(i);
+                    values[i] = -1;
+                    continue;
+                }
+                Integer code = codes.get(value);
+                if (code == null) {
+                    code = dictionary.size();
+                    codes.put(value, code);
+                    dictionary.add(column.valueType.getString(value));
+                }
+                values[i] = code;
+            }
+            data[c] = values;
+            dictionaries[c] = dictionary.toArray(new String[dictionary.size()]);
+            return;
+        }
+        Object[] values = new Object[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            values[i] = column.compose(getValue(rows.get(i), column));
+            if (values[i] == null) {
+                missing.set(i);
+            }
+        }
+        data[c] = values;
+    }
+
+    private static boolean isText(ColumnDescriptor column) {
+        return column.collectionType == CollectionType.NOT_COLLECTION
+                && (column.valueType instanceof JdbcUTF8 || column.valueType instanceof JdbcAscii);
+    }
+
+    /**
+     * @return the value of the column in the row, or null if it has none
+     */
+    private static ByteBuffer getValue(CqlRow row, ColumnDescriptor column) {
+        List<Column> values = row.getColumns();
+        Column value = column.index < values.size() ? values.get(column.index) : null;
+        if (value == null || !column.name.equals(value.name)) {
+            // not laid out like the other rows, which only happens with CQL 2
+            value = null;
+            for (Column candidate : values) {
+                if (column.name.equals(candidate.name)) {
+                    value = candidate;
+                    break;
+                }
+            }
+        }
+        return value == null || value.value == null || !value.value.hasRemaining() ? null : value.value;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    public String getColumnName(int column) throws SQLException {
+        return getColumn(column).nameString;
+    }
+
+    public int findColumn(String name) throws SQLException {
+        for (ColumnDescriptor column : columns) {
+            if (column.nameString.equals(name)) {
+                return column.index + 1;
+            }
+        }
+        throw new SQLSyntaxErrorException(String.format(VALID_LABELS, name));
+    }
+
+    public boolean isNull(int row, int column) throws SQLException {
+        getColumn(column);
+        return nulls[column - 1].get(row);
+    }
+
+    /**
+     * @return the rows without a value in the column
+     */
+    public BitSet getNulls(int column) throws SQLException {
+        getColumn(column);
+        return (BitSet) nulls[column - 1].clone();
+    }
+
+    /**
+     * @return the values of an int column
+     */
+    public int[] getInts(int column) throws SQLException {
+        return getData(column, Primitive.INT, int[].class, "int[]");
+    }
+
+    /**
+     * @return the values of a bigint or counter column
+     */
+    public long[] getLongs(int column) throws SQLException {
+        return getData(column, Primitive.LONG, long[].class, "long[]");
+    }
+
+    /**
+     * @return the values of a double or float column
+     */
+    public double[] getDoubles(int column) throws SQLException {
+        ColumnDescriptor descriptor = getColumn(column);
+        return getData(column, descriptor.primitive == Primitive.FLOAT ? Primitive.FLOAT : Primitive.DOUBLE,
+                double[].class, "double[]");
+    }
+
+    public boolean[] getBooleans(int column) throws SQLException {
+        return getData(column, Primitive.BOOLEAN, boolean[].class, "boolean[]");
+    }
+
+    /**
+     * @return the codes of the values of a text or ascii column in its dictionary, -1 for rows without value
+     */
+    public int[] getCodes(int column) throws SQLException {
+        if (!isText(getColumn(column))) {
+            throw notTranslatable(column, "int[]");
+        }
+        return (int[]) data[column - 1];
+    }
+
+    /**
+     * @return the distinct values of a text or ascii column, by code
+     */
+    public String[] getDictionary(int column) throws SQLException {
+        if (!isText(getColumn(column))) {
+            throw notTranslatable(column, "String[]");
+        }
+        return dictionaries[column - 1];
+    }
+
+    /**
+     * @return the values of a column as objects, whatever its type
+     */
+    public Object[] getObjects(int column) throws SQLException {
+        ColumnDescriptor descriptor = getColumn(column);
+        Object values = data[column - 1];
+        if (values instanceof Object[]) {
+            return (Object[]) values;
+        }
+        Object[] objects = new Object[rowCount];
+        BitSet missing = nulls[column - 1];
+        String[] dictionary = dictionaries[column - 1];
+        for (int i = 0; i < rowCount; i++) {
+            if (missing.get(i)) {
+                continue;
+            }
+            switch (descriptor.primitive) {
+                case INT:
+                    objects[i] = ((int[]) values)[i];
+                    break;
+                case LONG:
+                    objects[i] = ((long[]) values)[i];
+                    break;
+                case FLOAT:
+                    objects[i] = (float) ((double[]) values)[i];
+                    break;
+                case DOUBLE:
+                    objects[i] = ((double[]) values)[i];
+                    break;
+                case BOOLEAN:
+                    objects[i] = ((boolean[]) values)[i];
+                    break;
+                default:
+                    objects[i] = dictionary[((int[]) values)[i]];
+            }
+        }
+        return objects;
+    }
+
+    private ColumnDescriptor getColumn(int column) throws SQLException {
+        if (column < 1 || column > columns.length) {
+            throw new SQLSyntaxErrorException(String.format(MUST_BE_POSITIVE, String.valueOf(column)) + " " + columns.length);
+        }
+        return columns[column - 1];
+    }
+
+    private <T> T getData(int column, Primitive primitive, Class<T> type, String typeName) throws SQLException {
+        if (getColumn(column).primitive != primitive) {
+            throw notTranslatable(column, typeName);
+        }
+        return type.cast(data[column - 1]);
+    }
+
+    private SQLException notTranslatable(int column, String typeName) {
+        return new SQLSyntaxErrorException(String.format(NOT_TRANSLATABLE,
+                columns[column - 1].valueType == null ? "unknown" : columns[column - 1].valueType.getClass().getSimpleName(),
+                typeName));
+    }
+}
@@ -22,72 +22,160 @@ package org.apache.cassandra.cql.jdbc;
 
 import org.apache.cassandra.thrift.*;
 import org.apache.cassandra.utils.ByteBufferUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.CharacterCodingException;
 import java.sql.SQLNonTransientException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-
-//import org.slf4j.Logger;
-//import org.slf4j.LoggerFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Decodes columns from bytes into instances of their respective expected types.
+ * <p/>
+ * The column family metadata is fetched one keyspace at a time, the first time a keyspace is looked up, and kept
+ * until the schema is known to have changed. An instance is shared by every connection to the same cluster.
  */
 class ColumnDecoder {
     public final static ByteBuffer DEFAULT_KEY_NAME = ByteBufferUtil.bytes("KEY");
-    //private static final Logger logger = LoggerFactory.getLogger(ColumnDecoder.class);
-    private final Map<String, CFamMeta> metadata = new HashMap<String, CFamMeta>();
+    private static final Logger logger = LoggerFactory.getLogger(ColumnDecoder.class);
+    /**
+     * column family metadata by keyspace name, then column family name
+     */
+    private final ConcurrentMap<String, Map<String, CFamMeta>> metadata = new ConcurrentHashMap<String, Map<String, CFamMeta>>();
+    /**
+     * the time (in nanoseconds) until which a keyspace whose definition could not be fetched is not asked for again
+     */
+    private final ConcurrentMap<String, Long> retryAfter = new ConcurrentHashMap<String, Long>();
+    private final Loader loader;
+    private final long retryDelay;
 
     /**
      * is specific per set of keyspace definitions.
      */
     public ColumnDecoder(List<KsDef> defs) {
+        this.loader = null;
+        this.retryDelay = 0;
         for (KsDef ks : defs) {
-            for (CfDef cf : ks.getCf_defs()) {
-                metadata.put(String.format("%s.%s", ks.getName(), cf.getName()), new CFamMeta(cf));
+            metadata.put(ks.getName(), toMeta(ks));
+        }
+    }
+
+    /**
+     * @param loader fetches the definition of a keyspace when it is first looked up
+     */
+    ColumnDecoder(Loader loader) {
+        this(loader, TimeUnit.SECONDS.toMillis(10));
+    }
+
+    /**
+     * @param loader     fetches the definition of a keyspace when it is first looked up
+     * @param retryDelay the milliseconds during which a keyspace whose definition could not be fetched is not
+     *                   asked for again
+     */
+    ColumnDecoder(Loader loader, long retryDelay) {
+        this.loader = loader;
+        this.retryDelay = TimeUnit.MILLISECONDS.toNanos(retryDelay);
+    }
+
+    private static Map<String, CFamMeta> toMeta(KsDef ks) {
+        Map<String, CFamMeta> cfs = new HashMap<String, CFamMeta>();
+        for (CfDef cf : ks.getCf_defs()) {
+            cfs.put(cf.getName(), new CFamMeta(cf));
+        }
+        return cfs;
+    }
+
+    private CFamMeta getMeta(String keyspace, String columnFamily) {
+        Map<String, CFamMeta> cfs = metadata.get(keyspace);
+        if (cfs == null) {
+            cfs = load(keyspace);
+        }
+        return cfs.get(columnFamily);
+    }
+
+    private Map<String, CFamMeta> load(String keyspace) {
+        if (loader == null || keyspace == null) {
+            return Collections.emptyMap();
+        }
+        Long after = retryAfter.get(keyspace);
+        if (after != null) {
+            if (System.nanoTime() - after < 0) {
+                // a down node or a failed login would otherwise cost a connection attempt per lookup
+                return Collections.emptyMap();
             }
+            retryAfter.remove(keyspace, after);
+        }
+        Map<String, CFamMeta> cfs;
+        try {
+            cfs = toMeta(loader.describe(keyspace));
+        } catch (NotFoundException e) {
+            // remember the keyspace does not exist until the schema changes
+            cfs = Collections.emptyMap();
+        } catch (Exception e) {
+            logger.warn("Couldn't load the definition of keyspace " + keyspace + " : " + e.toString());
+            retryAfter.put(keyspace, System.nanoTime() + retryDelay);
+            return Collections.emptyMap();
+        }
+        Map<String, CFamMeta> existing = metadata.putIfAbsent(keyspace, cfs);
+        return existing == null ? cfs : existing;
+    }
+
+    /**
+     * Forget the metadata of one keyspace, it is fetched again on next use.
+     */
+    void invalidate(String keyspace) {
+        metadata.remove(keyspace);
+        retryAfter.remove(keyspace);
+    }
+
+    /**
+     * Forget the metadata of every keyspace, e.g. after a schema change.
+     */
+    void invalidateAll() {
+        if (loader != null) {
+            metadata.clear();
+            retryAfter.clear();
         }
     }
 
     protected AbstractJdbcType<?> getComparator(String keyspace, String columnFamily) {
-        CFamMeta cf = metadata.get(String.format("%s.%s", keyspace, columnFamily));
+        CFamMeta cf = getMeta(keyspace, columnFamily);
         AbstractJdbcType<?> type = (cf != null) ? TypesMap.getTypeForComparator(cf.comparator) : null;
         return (type == null) ? null : type;
     }
 
     protected AbstractJdbcType<?> getDefaultValidator(String keyspace, String columnFamily) {
-        CFamMeta cf = metadata.get(String.format("%s.%s", keyspace, columnFamily));
+        CFamMeta cf = getMeta(keyspace, columnFamily);
         AbstractJdbcType<?> type = (cf != null) ? TypesMap.getTypeForComparator(cf.defaultValidator) : null;
         return (type == null) ? null : type;
     }
 
     private AbstractJdbcType<?> getNameType(String keyspace, String columnFamily, ByteBuffer name) {
-        CFamMeta cf = metadata.get(String.format("%s.%s", keyspace, columnFamily));
-        try {
-            if (ByteBufferUtil.string(name).equalsIgnoreCase(ByteBufferUtil.string(cf.keyAlias))) {
-                return JdbcAscii.instance;
-            }
-        } catch (CharacterCodingException e) {
-            // not be the key name
+        CFamMeta cf = getMeta(keyspace, columnFamily);
+        if (cf == null) {
+            return null;
+        }
+        if (cf.isKeyAlias(name)) {
+            return JdbcAscii.instance;
         }
         return TypesMap.getTypeForComparator(cf.comparator);
     }
 
     private AbstractJdbcType<?> getValueType(String keyspace, String columnFamily, ByteBuffer name) {
-        CFamMeta cf = metadata.get(String.format("%s.%s", keyspace, columnFamily));
+        CFamMeta cf = getMeta(keyspace, columnFamily);
         if (cf == null) {
             return null;
         }
 
-        try {
-            if (ByteBufferUtil.string(name).equalsIgnoreCase(ByteBufferUtil.string(cf.keyAlias))) {
-                return TypesMap.getTypeForComparator(cf.keyValidator);
-            }
-        } catch (CharacterCodingException e) {
-            // not be the key name
+        if (cf.isKeyAlias(name)) {
+            return TypesMap.getTypeForComparator(cf.keyValidator);
         }
 
         AbstractJdbcType<?> type = TypesMap.getTypeForComparator(cf.columnMeta.get(name));
@@ -95,7 +183,7 @@ class ColumnDecoder {
     }
 
     public AbstractJdbcType<?> getKeyValidator(String keyspace, String columnFamily) {
-        CFamMeta cf = metadata.get(String.format("%s.%s", keyspace, columnFamily));
+        CFamMeta cf = getMeta(keyspace, columnFamily);
         AbstractJdbcType<?> type = (AbstractJdbcType<?>) ((cf != null) ? TypesMap.getTypeForComparator(cf.keyValidator) : null);
         return (type == null) ? null : type;
     }
@@ -108,10 +196,18 @@ class ColumnDecoder {
         return comparator.getString(name);
     }
 
-    private class CFamMeta {
+    /**
+     * Fetches the definition of a keyspace from the cluster.
+     */
+    interface Loader {
+        KsDef describe(String keyspace) throws Exception;
+    }
+
+    private static class CFamMeta {
         String comparator;
         String defaultValidator;
         ByteBuffer keyAlias;
+        String keyAliasString;
         String keyValidator;
         Map<ByteBuffer, String> columnMeta = new HashMap<ByteBuffer, String>();
 
@@ -121,8 +217,30 @@ class ColumnDecoder {
             keyAlias = cf.key_alias;
             keyValidator = cf.getKey_validation_class();
 
-            for (ColumnDef colDef : cf.getColumn_metadata()) {
-                columnMeta.put(colDef.name, colDef.getValidation_class());
+            if (keyAlias != null) {
+                try {
+                    keyAliasString = ByteBufferUtil.string(keyAlias);
+                } catch (CharacterCodingException e) {
+                    // no column name can match it
+                }
+            }
+
+            if (cf.getColumn_metadata() != null) {
+                for (ColumnDef colDef : cf.getColumn_metadata()) {
+                    columnMeta.put(colDef.name, colDef.getValidation_class());
+                }
+            }
+        }
+
+        boolean isKeyAlias(ByteBuffer name) {
+            if (keyAliasString == null || name.remaining() != keyAlias.remaining()) {
+                return false;
+            }
+            try {
+                return ByteBufferUtil.string(name).equalsIgnoreCase(keyAliasString);
+            } catch (CharacterCodingException e) {
+                // not be the key name
+                return false;
             }
         }
 
@@ -0,0 +1,143 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import org.apache.cassandra.cql.jdbc.TypedColumn.CollectionType;
+
+import java.nio.ByteBuffer;
+
+/**
+ * What a result set knows about one of its columns, resolved once from the result metadata and shared by the
+ * values of the column in all rows.
+ */
+final class ColumnDescriptor {
+    final ByteBuffer name;
+
+    final String nameString;
+
+    /**
+     * the 0-based position of the column in the rows
+     */
+    final int index;
+
+    final AbstractJdbcType<?> nameType;
+
+    final AbstractJdbcType<?> valueType;
+
+    /**
+     * the type of the keys of a map, null for other columns
+     */
+    final AbstractJdbcType<?> keyType;
+
+    final CollectionType collectionType;
+
+    /**
+     * the primitive the values are encoded as, which getters of primitives read without composing the value
+     */
+    final Primitive primitive;
+
+    /**
+     * the maker composing the values of a collection column, looked up once as the lookup is synchronized
+     */
+    private final ListMaker<?> listMaker;
+
+    private final SetMaker<?> setMaker;
+
+    private final MapMaker<?, ?> mapMaker;
+
+    /**
+     * the dictionary sharing the repeated values of a text column, null if the values are not shared
+     */
+    private final StringDictionary dictionary;
+
+    ColumnDescriptor(ByteBuffer name, int index, AbstractJdbcType<?> nameType, AbstractJdbcType<?> valueType,
+                     AbstractJdbcType<?> keyType, CollectionType collectionType) {
+        this(name, index, nameType, valueType, keyType, collectionType, false);
+    }
+
+    /**
+     * @param dedupStrings whether the repeated values of a text column are shared through a dictionary
+     */
+    ColumnDescriptor(ByteBuffer name, int index, AbstractJdbcType<?> nameType, AbstractJdbcType<?> valueType,
+                     AbstractJdbcType<?> keyType, CollectionType collectionType, boolean dedupStrings) {
+        this.name = name;
+        this.nameString = nameType.getString(name);
+        this.index = index;
+        this.nameType = nameType;
+        this.valueType = valueType;
+        this.keyType = keyType;
+        this.collectionType = collectionType;
+        this.primitive = collectionType == CollectionType.NOT_COLLECTION ? Primitive.of(valueType) : Primitive.NONE;
+        this.listMaker = collectionType == CollectionType.LIST ? ListMaker.getInstance(valueType) : null;
+        this.setMaker = collectionType == CollectionType.SET ? SetMaker.getInstance(valueType) : null;
+        this.mapMaker = collectionType == CollectionType.MAP ? MapMaker.getInstance(keyType, valueType) : null;
+        boolean text = valueType instanceof JdbcUTF8 || valueType instanceof JdbcAscii;
+        this.dictionary = dedupStrings && text && collectionType == CollectionType.NOT_COLLECTION
+                ? new StringDictionary(valueType) : null;
+    }
+
+    /**
+     * Compose a value of the column into its Java object.
+     *
+     * @return the value, or null if the column has no value
+     */
+    Object compose(ByteBuffer value) {
+        if (value == null || !value.hasRemaining()) {
+            return null;
+        }
+        switch (collectionType) {
+            case NOT_COLLECTION:
+                return dictionary == null ? valueType.compose(value) : dictionary.get(value);
+            case LIST:
+                return listMaker.compose(value);
+            case SET:
+                return setMaker.compose(value);
+            case MAP:
+                return mapMaker.compose(value);
+            default:
+                return null;
+        }
+    }
+
+    enum Primitive {
+        NONE, BOOLEAN, INT, LONG, FLOAT, DOUBLE;
+
+        static Primitive of(AbstractJdbcType<?> type) {
+            if (type instanceof JdbcInt32) {
+                return INT;
+            }
+            if (type instanceof JdbcLong) {
+                // counters too
+                return LONG;
+            }
+            if (type instanceof JdbcDouble) {
+                return DOUBLE;
+            }
+            if (type instanceof JdbcFloat) {
+                return FLOAT;
+            }
+            if (type instanceof JdbcBoolean) {
+                return BOOLEAN;
+            }
+            return NONE;
+        }
+    }
+}
@@ -0,0 +1,576 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.apache.cassandra.cql.jdbc.Utils.POOL_CLOSED;
+import static org.apache.cassandra.cql.jdbc.Utils.POOL_EXHAUSTED;
+import static org.apache.cassandra.cql.jdbc.Utils.POOL_TOO_MANY_WAITING;
+
+/**
+ * The physical connections of a {@link PooledCassandraDataSource}.
+ * <p/>
+ * Connections are borrowed and returned by switching their state with a compare-and-set, so threads only contend
+ * for the connection they go for and never for the pool as a whole. A borrowing thread first tries the connection it
+ * returned last, then any idle connection, then opens a new one if the pool is not full, and otherwise waits for the
+ * next thread returning a connection to hand it over. Connections are opened without holding any lock.
+ * <p/>
+ * A background task keeps a minimum number of connections idle, opening them ahead of demand, and closes the
+ * connections that stayed idle for too long or reached their maximum lifetime. With auto-sizing, it also keeps as
+ * many connections open as were in use at once in the last minute, so that load bursts find them ready.
+ */
+class ConnectionPool implements ConnectionPoolMXBean {
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionPool.class);
+
+    private static final int IDLE = 0;
+    private static final int IN_USE = 1;
+    private static final int REMOVED = 2;
+
+    /**
+     * how long a waiting thread sleeps at most before it looks for an idle connection again, in case one was
+     * returned while nobody was waiting for it yet
+     */
+    private static final long RESCAN_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * the period of the background task, in milliseconds
+     */
+    private static final long MAINTENANCE_PERIOD = 5000;
+
+    /**
+     * the number of maintenance periods auto-sizing remembers the peak number of connections in use for
+     */
+    private static final int PEAK_PERIODS = 12;
+
+    private static ScheduledThreadPoolExecutor scheduler;
+
+    private final Connector connector;
+
+    private final ConcurrentMap<PooledCassandraConnection, Entry> entries = new ConcurrentHashMap<PooledCassandraConnection, Entry>();
+
+    /**
+     * the number of connections open or being opened
+     */
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final AtomicInteger idle = new AtomicInteger();
+
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    /**
+     * the time it takes to borrow a connection, including opening it or waiting for it
+     */
+    final LatencyHistogram borrowWait = new LatencyHistogram();
+
+    private final SynchronousQueue<Entry> handoff = new SynchronousQueue<Entry>(true);
+
+    private final ThreadLocal<Entry> lastReturned = new ThreadLocal<Entry>();
+
+    /**
+     * the most connections in use at once during the current maintenance period
+     */
+    private final AtomicInteger peak = new AtomicInteger();
+
+    /**
+     * the most connections in use at once during each of the last maintenance periods
+     */
+    private final int[] peaks = new int[PEAK_PERIODS];
+
+    private int peakPeriod;
+
+    private final ScheduledFuture<?> maintenance;
+
+    /**
+     * the number of connections auto-sizing keeps open
+     */
+    private volatile int target;
+
+    private volatile int maxSize = 64;
+
+    /**
+     * the number of idle connections the background task opens connections up to
+     */
+    private volatile int minIdle = 0;
+
+    /**
+     * the number of idle connections above which returned connections are closed
+     */
+    private volatile int maxIdle = 64;
+
+    private volatile int maxWaiting = 1024;
+
+    private volatile long waitTimeout = 30000;
+
+    /**
+     * the milliseconds after which connections idle above the minimum are closed, 0 for never
+     */
+    private volatile long idleTimeout = 600000;
+
+    /**
+     * the milliseconds after which connections are closed once they are no longer in use, 0 for never
+     */
+    private volatile long maxLifetime = 1800000;
+
+    private volatile boolean autoSizing;
+
+    private volatile boolean closed;
+
+    ConnectionPool(Connector connector) {
+        this.connector = connector;
+        maintenance = getScheduler().scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                maintain();
+            }
+        }, MAINTENANCE_PERIOD, MAINTENANCE_PERIOD, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return a connection for the exclusive use of the calling thread until it is released
+     * @throws SQLTransientConnectionException if the pool is full and no connection was returned in time, or too
+     *                                         many threads are waiting already
+     */
+    PooledCassandraConnection borrow() throws SQLException {
+        long start = System.nanoTime();
+        PooledCassandraConnection connection;
+        try {
+            connection = acquire();
+        } catch (SQLException e) {
+            DriverMetrics.error(e);
+            throw e;
+        }
+        borrowWait.record(start);
+        if (autoSizing) {
+            int inUse = size.get() - idle.get();
+            int max;
+            while (inUse > (max = peak.get()) && !peak.compareAndSet(max, inUse)) {
+                // retry
+            }
+        }
+        return connection;
+    }
+
+    private PooledCassandraConnection acquire() throws SQLException {
+        checkOpen();
+        long start = System.nanoTime();
+        Entry entry = lastReturned.get();
+        if (entry != null && entry.acquire()) {
+            return entry.connection;
+        }
+        PooledCassandraConnection connection = acquireOrOpen();
+        if (connection != null) {
+            return connection;
+        }
+        if (waiting.incrementAndGet() > maxWaiting) {
+            waiting.decrementAndGet();
+            throw new SQLTransientConnectionException(String.format(POOL_TOO_MANY_WAITING, maxWaiting));
+        }
+        try {
+            long deadline = start + TimeUnit.MILLISECONDS.toNanos(waitTimeout);
+            while (true) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new SQLTransientConnectionException(String.format(POOL_EXHAUSTED, maxSize, waitTimeout));
+                }
+                entry = handoff.poll(Math.min(remaining, RESCAN_NANOS), TimeUnit.NANOSECONDS);
+                if (entry != null && entry.acquire()) {
+                    return entry.connection;
+                }
+                checkOpen();
+                connection = acquireOrOpen();
+                if (connection != null) {
+                    return connection;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException(e);
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    /**
+     * Take back a connection, handing it over to a waiting thread if there is one.
+     */
+    void release(PooledCassandraConnection connection) {
+        Entry entry = entries.get(connection);
+        if (entry == null || entry.state.get() != IN_USE) {
+            // discarded meanwhile
+            return;
+        }
+        if (closed || entry.isExpired(System.nanoTime()) || (waiting.get() == 0 && idle.get() >= maxIdle)) {
+            remove(entry);
+            return;
+        }
+        lastReturned.set(entry);
+        entry.lastReturned = System.nanoTime();
+        idle.incrementAndGet();
+        if (!entry.state.compareAndSet(IN_USE, IDLE)) {
+            // the pool was closed meanwhile
+            idle.decrementAndGet();
+            return;
+        }
+        handOver(entry);
+    }
+
+    /**
+     * Offer an idle connection to a thread parked waiting for one. The returning thread never waits for a taker: a
+     * waiter that is busy opening a connection, or about to park, finds the idle connection when it rescans.
+     */
+    private void handOver(Entry entry) {
+        if (waiting.get() > 0 && entry.state.get() == IDLE) {
+            handoff.offer(entry);
+        }
+    }
+
+    /**
+     * Close a connection that is no longer usable and make room for a new one.
+     */
+    void discard(PooledCassandraConnection connection) {
+        Entry entry = entries.get(connection);
+        if (entry != null) {
+            remove(entry);
+        }
+    }
+
+    /**
+     * Close every connection, in use or not.
+     */
+    void close() {
+        closed = true;
+        maintenance.cancel(false);
+        for (Entry entry : entries.values()) {
+            remove(entry);
+        }
+    }
+
+    public int getSize() {
+        return size.get();
+    }
+
+    public int getActive() {
+        return Math.max(0, size.get() - idle.get());
+    }
+
+    public int getIdle() {
+        return idle.get();
+    }
+
+    public int getWaiting() {
+        return waiting.get();
+    }
+
+    /**
+     * Close the connections that stayed idle for too long or reached their maximum lifetime, then open connections
+     * up to the minimum number of idle ones, and with auto-sizing up to the recent peak number of connections in use.
+     */
+    void maintain() {
+        if (closed) {
+            return;
+        }
+        target = nextTarget();
+        long now = System.nanoTime();
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+        for (Entry entry : entries.values()) {
+            if (entry.state.get() != IDLE) {
+                continue;
+            }
+            boolean timedOut = idleTimeout > 0 && now - entry.lastReturned > idleNanos
+                    && idle.get() > minIdle && size.get() > target;
+            if ((timedOut || entry.isExpired(now)) && entry.state.compareAndSet(IDLE, REMOVED)) {
+                idle.decrementAndGet();
+                close(entry);
+            }
+        }
+        replenish();
+    }
+
+    /**
+     * Open connections up to the minimum number of idle ones and the number auto-sizing keeps open.
+     */
+    void replenish() {
+        // more idle connections than the maximum would be closed as soon as they are returned
+        int wanted = Math.min(minIdle, maxIdle);
+        while (!closed && (idle.get() < wanted || size.get() < target)) {
+            if (!fill()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Start a new maintenance period.
+     *
+     * @return the number of connections auto-sizing keeps open, 0 without auto-sizing
+     */
+    private synchronized int nextTarget() {
+        int current = peak.getAndSet(size.get() - idle.get());
+        if (!autoSizing) {
+            return 0;
+        }
+        peaks[peakPeriod] = current;
+        peakPeriod = (peakPeriod + 1) % PEAK_PERIODS;
+        int target = 0;
+        for (int value : peaks) {
+            target = Math.max(target, value);
+        }
+        return Math.min(target, maxSize);
+    }
+
+    /**
+     * Open an idle connection if the pool is not full.
+     *
+     * @return whether a connection was opened
+     */
+    private boolean fill() {
+        if (!reserve()) {
+            return false;
+        }
+        PooledCassandraConnection connection;
+        try {
+            connection = connector.open();
+        } catch (Exception e) {
+            size.decrementAndGet();
+            logger.warn("unable to open a pooled connection : " + e.toString());
+            return false;
+        }
+        Entry entry = new Entry(connection);
+        entries.put(connection, entry);
+        entry.lastReturned = System.nanoTime();
+        idle.incrementAndGet();
+        entry.state.set(IDLE);
+        if (closed) {
+            remove(entry);
+            return false;
+        }
+        handOver(entry);
+        return true;
+    }
+
+    /**
+     * Replenish the pool in the background, e.g. after its settings changed.
+     */
+    private void replenishLater() {
+        getScheduler().execute(new Runnable() {
+            public void run() {
+                replenish();
+            }
+        });
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    void setMaxSize(int maxSize) {
+        this.maxSize = Math.max(1, maxSize);
+    }
+
+    int getMinIdle() {
+        return minIdle;
+    }
+
+    void setMinIdle(int minIdle) {
+        this.minIdle = Math.max(0, minIdle);
+        replenishLater();
+    }
+
+    int getMaxIdle() {
+        return maxIdle;
+    }
+
+    void setMaxIdle(int maxIdle) {
+        this.maxIdle = Math.max(0, maxIdle);
+    }
+
+    int getMaxWaiting() {
+        return maxWaiting;
+    }
+
+    void setMaxWaiting(int maxWaiting) {
+        this.maxWaiting = Math.max(0, maxWaiting);
+    }
+
+    long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = Math.max(0, idleTimeout);
+    }
+
+    long getMaxLifetime() {
+        return maxLifetime;
+    }
+
+    void setMaxLifetime(long maxLifetime) {
+        this.maxLifetime = Math.max(0, maxLifetime);
+    }
+
+    boolean isAutoSizing() {
+        return autoSizing;
+    }
+
+    void setAutoSizing(boolean autoSizing) {
+        this.autoSizing = autoSizing;
+    }
+
+    long getWaitTimeout() {
+        return waitTimeout;
+    }
+
+    void setWaitTimeout(long waitTimeout) {
+        this.waitTimeout = Math.max(0, waitTimeout);
+    }
+
+    /**
+     * @return an idle connection, a new one if the pool is not full, or null
+     */
+    private PooledCassandraConnection acquireOrOpen() throws SQLException {
+        for (Entry entry : entries.values()) {
+            if (entry.acquire()) {
+                return entry.connection;
+            }
+        }
+        if (!reserve()) {
+            return null;
+        }
+        PooledCassandraConnection connection;
+        try {
+            connection = connector.open();
+        } catch (SQLException e) {
+            size.decrementAndGet();
+            throw e;
+        } catch (RuntimeException e) {
+            size.decrementAndGet();
+            throw e;
+        }
+        entries.put(connection, new Entry(connection));
+        if (closed) {
+            discard(connection);
+            throw new SQLNonTransientConnectionException(POOL_CLOSED);
+        }
+        return connection;
+    }
+
+    /**
+     * Count a connection about to be opened, if the pool is not full.
+     */
+    private boolean reserve() {
+        while (true) {
+            int opened = size.get();
+            if (opened >= maxSize) {
+                return false;
+            }
+            if (size.compareAndSet(opened, opened + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void remove(Entry entry) {
+        int state = entry.state.getAndSet(REMOVED);
+        if (state == REMOVED) {
+            return;
+        }
+        if (state == IDLE) {
+            idle.decrementAndGet();
+        }
+        close(entry);
+    }
+
+    private void close(Entry entry) {
+        entries.remove(entry.connection, entry);
+        size.decrementAndGet();
+        try {
+            entry.connection.close();
+        } catch (SQLException e) {
+            logger.error(e.getMessage());
+        }
+    }
+
+    private void checkOpen() throws SQLException {
+        if (closed) {
+            throw new SQLNonTransientConnectionException(POOL_CLOSED);
+        }
+    }
+
+    private static synchronized ScheduledThreadPoolExecutor getScheduler() {
+        if (scheduler == null) {
+            scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "cassandra-jdbc-pool-maintenance");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            scheduler.setRemoveOnCancelPolicy(true);
+        }
+        return scheduler;
+    }
+
+    /**
+     * Opens the physical connections of the pool.
+     */
+    interface Connector {
+        PooledCassandraConnection open() throws SQLException;
+    }
+
+    private class Entry {
+        final PooledCassandraConnection connection;
+
+        final AtomicInteger state = new AtomicInteger(IN_USE);
+
+        final long created = System.nanoTime();
+
+        volatile long lastReturned;
+
+        Entry(PooledCassandraConnection connection) {
+            this.connection = connection;
+        }
+
+        boolean isExpired(long now) {
+            return maxLifetime > 0 && now - created > TimeUnit.MILLISECONDS.toNanos(maxLifetime);
+        }
+
+        boolean acquire() {
+            if (state.compareAndSet(IDLE, IN_USE)) {
+                idle.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+}
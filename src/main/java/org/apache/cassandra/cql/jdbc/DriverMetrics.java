@@ -0,0 +1,253 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The metrics of the driver, shared by every connection of the JVM and registered in the platform MBean server
+ * under the {@value #DOMAIN} domain:
+ * <ul>
+ * <li>type=Statements,name=SELECT (INSERT, UPDATE, DELETE, BATCH, OTHER): the queries of each type</li>
+ * <li>type=Tables,name=table: the queries on each table, as found by {@link Utils#determineCurrentColumnFamily}</li>
+ * <li>type=Connections,name=Connect: the time it takes to open a connection</li>
+ * <li>type=Errors: the errors by exception class</li>
+ * <li>type=ConnectionPool,name=pool-n: the connections of each {@link PooledCassandraDataSource}, and with
+ * metric=BorrowWait the time it takes to get one</li>
+ * </ul>
+ * Recording only updates striped counters, so the metrics are always on.
+ */
+final class DriverMetrics {
+    private static final Logger logger = LoggerFactory.getLogger(DriverMetrics.class);
+
+    static final String DOMAIN = "org.apache.cassandra.cql.jdbc";
+
+    static final String BATCH = "BATCH";
+
+    /**
+     * queries on more tables than this are only counted by statement type
+     */
+    private static final int MAX_TABLES = 1024;
+
+    private static final ConcurrentMap<String, LatencyHistogram> statementTypes = new ConcurrentHashMap<String, LatencyHistogram>();
+
+    private static final ConcurrentMap<String, LatencyHistogram> tables = new ConcurrentHashMap<String, LatencyHistogram>();
+
+    private static final ConcurrentMap<String, StripedCounter> errors = new ConcurrentHashMap<String, StripedCounter>();
+
+    /**
+     * the metrics of the CQL strings executed recently, so that they are only parsed once
+     */
+    private static final Cache<String, QueryMetrics> queries = CacheBuilder.newBuilder().maximumSize(1024).build();
+
+    private static final AtomicInteger poolIds = new AtomicInteger();
+
+    static final LatencyHistogram connects = new LatencyHistogram();
+
+    static {
+        register("type=Connections,name=Connect", new StandardMBean(connects, LatencyMXBean.class, true));
+        register("type=Errors", new StandardMBean(new Errors(), DriverMetricsMXBean.class, true));
+    }
+
+    private DriverMetrics() {
+    }
+
+    /**
+     * @return the metrics the executions of the CQL are recorded in
+     */
+    static QueryMetrics forQuery(String cql) {
+        String type = statementType(cql);
+        if (type.equals(BATCH)) {
+            // batches are rarely executed twice and would only be parsed for nothing
+            return new QueryMetrics(histogram(statementTypes, "Statements", type), null);
+        }
+        QueryMetrics metrics = queries.getIfPresent(cql);
+        if (metrics == null) {
+            metrics = new QueryMetrics(histogram(statementTypes, "Statements", type), tableHistogram(cql));
+            queries.put(cql, metrics);
+        }
+        return metrics;
+    }
+
+    /**
+     * @return the metrics the executions of CQL batches repeating a statement are recorded in
+     */
+    static QueryMetrics forBatch(String cql) {
+        return new QueryMetrics(histogram(statementTypes, "Statements", BATCH), tableHistogram(cql));
+    }
+
+    /**
+     * Count an error by the class of its exception.
+     */
+    static void error(Throwable error) {
+        String name = error.getClass().getSimpleName();
+        StripedCounter counter = errors.get(name);
+        if (counter == null) {
+            StripedCounter existing = errors.putIfAbsent(name, counter = new StripedCounter());
+            if (existing != null) {
+                counter = existing;
+            }
+        }
+        counter.increment();
+    }
+
+    /**
+     * @return SELECT, INSERT, UPDATE, DELETE, BATCH or OTHER after the first keyword of the CQL
+     */
+    static String statementType(String cql) {
+        int start = 0;
+        while (start < cql.length() && Character.isWhitespace(cql.charAt(start))) {
+            start++;
+        }
+        int end = start;
+        while (end < cql.length() && Character.isLetter(cql.charAt(end))) {
+            end++;
+        }
+        String keyword = cql.substring(start, end).toUpperCase();
+        if (keyword.equals("SELECT") || keyword.equals("INSERT") || keyword.equals("UPDATE")
+                || keyword.equals("DELETE")) {
+            return keyword;
+        }
+        return keyword.equals("BEGIN") || keyword.equals("APPLY") ? BATCH : "OTHER";
+    }
+
+    /**
+     * Register the MBeans of a connection pool.
+     *
+     * @return the names to unregister them with when the pool is closed
+     */
+    static ObjectName[] registerPool(ConnectionPoolMXBean pool, LatencyHistogram borrowWait) {
+        String name = "type=ConnectionPool,name=pool-" + poolIds.incrementAndGet();
+        return new ObjectName[]{
+                register(name, new StandardMBean(pool, ConnectionPoolMXBean.class, true)),
+                register(name + ",metric=BorrowWait", new StandardMBean(borrowWait, LatencyMXBean.class, true))
+        };
+    }
+
+    static void unregister(ObjectName[] names) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : names) {
+            if (name == null) {
+                continue;
+            }
+            try {
+                server.unregisterMBean(name);
+            } catch (Exception e) {
+                logger.debug("Couldn't unregister MBean " + name + " : " + e.toString());
+            }
+        }
+    }
+
+    private static LatencyHistogram tableHistogram(String cql) {
+        String table = Utils.determineCurrentColumnFamily(cql);
+        if (table == null || (tables.size() >= MAX_TABLES && !tables.containsKey(table))) {
+            return null;
+        }
+        return histogram(tables, "Tables", table);
+    }
+
+    private static LatencyHistogram histogram(ConcurrentMap<String, LatencyHistogram> histograms, String type,
+                                              String name) {
+        LatencyHistogram histogram = histograms.get(name);
+        if (histogram == null) {
+            LatencyHistogram existing = histograms.putIfAbsent(name, histogram = new LatencyHistogram());
+            if (existing != null) {
+                return existing;
+            }
+            // table names may hold quotes and dots
+            register("type=" + type + ",name=" + (name.matches("\\w+") ? name : ObjectName.quote(name)),
+                    new StandardMBean(histogram, LatencyMXBean.class, true));
+        }
+        return histogram;
+    }
+
+    /**
+     * @return the name the MBean was registered with, or null if it could not be registered
+     */
+    private static ObjectName register(String name, StandardMBean mbean) {
+        try {
+            ObjectName objectName = new ObjectName(DOMAIN + ":" + name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, objectName);
+            return objectName;
+        } catch (Exception e) {
+            logger.debug("Couldn't register MBean " + name + " : " + e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * The latencies of one CQL string by statement type and by table.
+     */
+    static final class QueryMetrics {
+        private final LatencyHistogram type;
+
+        /**
+         * null if the table is unknown
+         */
+        private final LatencyHistogram table;
+
+        QueryMetrics(LatencyHistogram type, LatencyHistogram table) {
+            this.type = type;
+            this.table = table;
+        }
+
+        /**
+         * Record an execution started at the given {@link System#nanoTime()}.
+         */
+        void record(long start) {
+            type.record(start);
+            if (table != null) {
+                table.record(start);
+            }
+        }
+    }
+
+    private static final class Errors implements DriverMetricsMXBean {
+        public Map<String, Long> getErrorCounts() {
+            Map<String, Long> counts = new TreeMap<String, Long>();
+            for (Map.Entry<String, StripedCounter> entry : errors.entrySet()) {
+                counts.put(entry.getKey(), entry.getValue().sum());
+            }
+            return counts;
+        }
+
+        public long getErrorCount() {
+            long count = 0;
+            for (StripedCounter counter : errors.values()) {
+                count += counter.sum();
+            }
+            return count;
+        }
+    }
+}
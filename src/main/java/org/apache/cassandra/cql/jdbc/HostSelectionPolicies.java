@@ -0,0 +1,128 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.apache.cassandra.cql.jdbc.Utils.BAD_HOST_SELECTION;
+
+/**
+ * The built-in {@link HostSelectionPolicy} implementations.
+ */
+class HostSelectionPolicies {
+    static final String ROUND_ROBIN = "roundrobin";
+    static final String LEAST_OUTSTANDING = "leastoutstanding";
+    static final String LATENCY_AWARE = "latencyaware";
+
+    /**
+     * JVM-wide position of the round-robin, starting at a random host so that several client processes do not
+     * all begin with the same node
+     */
+    private static final AtomicInteger position = new AtomicInteger(new Random().nextInt(Integer.MAX_VALUE));
+
+    private HostSelectionPolicies() {
+    }
+
+    /**
+     * @param name one of the built-in policy names, or the name of a class implementing {@link HostSelectionPolicy}
+     */
+    static HostSelectionPolicy forName(String name) throws SQLException {
+        if (ROUND_ROBIN.equalsIgnoreCase(name)) {
+            return new RoundRobin();
+        }
+        if (LEAST_OUTSTANDING.equalsIgnoreCase(name)) {
+            return new LeastOutstanding();
+        }
+        if (LATENCY_AWARE.equalsIgnoreCase(name)) {
+            return new LatencyAware();
+        }
+        try {
+            return Class.forName(name).asSubclass(HostSelectionPolicy.class).newInstance();
+        } catch (Exception e) {
+            throw new SQLNonTransientConnectionException(String.format(BAD_HOST_SELECTION, name), e);
+        }
+    }
+
+    /**
+     * @return the index to start scanning the hosts at, so hosts that score the same take turns
+     */
+    private static int next(int size) {
+        return (position.getAndIncrement() & Integer.MAX_VALUE) % size;
+    }
+
+    /**
+     * Picks each host in turn.
+     */
+    static class RoundRobin implements HostSelectionPolicy {
+        public String select(List<String> hosts) {
+            return hosts.get(next(hosts.size()));
+        }
+    }
+
+    /**
+     * Picks the host with the fewest requests in flight.
+     */
+    static class LeastOutstanding implements HostSelectionPolicy {
+        public String select(List<String> hosts) {
+            int size = hosts.size();
+            int start = next(size);
+            String best = null;
+            int bestOutstanding = Integer.MAX_VALUE;
+            for (int i = 0; i < size; i++) {
+                String host = hosts.get((start + i) % size);
+                int outstanding = HostStats.get(host).getOutstanding();
+                if (outstanding < bestOutstanding) {
+                    best = host;
+                    bestOutstanding = outstanding;
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * Picks the host with the lowest expected wait: the average response time weighted by the requests in flight.
+     * Hosts that have not been measured recently score best, so they get probed again.
+     */
+    static class LatencyAware implements HostSelectionPolicy {
+        public String select(List<String> hosts) {
+            int size = hosts.size();
+            int start = next(size);
+            String best = null;
+            double bestScore = Double.MAX_VALUE;
+            for (int i = 0; i < size; i++) {
+                String host = hosts.get((start + i) % size);
+                HostStats stats = HostStats.get(host);
+                double latency = stats.getAverageLatency();
+                double score = latency < 0 ? 0 : latency * (stats.getOutstanding() + 1);
+                if (score < bestScore) {
+                    best = host;
+                    bestScore = score;
+                }
+            }
+            return best;
+        }
+    }
+}
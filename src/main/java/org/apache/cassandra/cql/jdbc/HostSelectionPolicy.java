@@ -0,0 +1,40 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import java.util.List;
+
+/**
+ * Chooses the node of the cluster a new connection is opened against.
+ * <p/>
+ * A policy is given the candidate hosts of one datacenter tier: the hosts of the primary datacenter are tried
+ * before those of the backup datacenter, whatever the policy. Implementations must be thread-safe and have a public
+ * no-argument constructor so they can be named with the {@code hostSelection} connection property. The request
+ * statistics of each host are kept JVM-wide in {@link HostStats}.
+ */
+public interface HostSelectionPolicy {
+
+    /**
+     * @param hosts the candidate hosts, never empty
+     * @return the host to connect to, one of {@code hosts}
+     */
+    String select(List<String> hosts);
+}
@@ -0,0 +1,125 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Request statistics of one node, shared by every connection of the JVM: the requests in flight and an
+ * exponentially weighted moving average of the response time.
+ */
+public class HostStats {
+    /**
+     * weight of the newest sample in the moving average
+     */
+    private static final double ALPHA = 0.25;
+
+    /**
+     * the response time a failed request counts as, in milliseconds
+     */
+    private static final double FAILURE_PENALTY = 1000;
+
+    /**
+     * how long the average is trusted without new samples; after that the host is measured again
+     */
+    private static final long STALE_AFTER = TimeUnit.SECONDS.toNanos(30);
+
+    private static final ConcurrentMap<String, HostStats> allStats = new ConcurrentHashMap<String, HostStats>();
+
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    private double averageLatency = -1;
+
+    private long lastSample;
+
+    private HostStats() {
+    }
+
+    public static HostStats get(String host) {
+        HostStats stats = allStats.get(host);
+        if (stats == null) {
+            HostStats existing = allStats.putIfAbsent(host, stats = new HostStats());
+            if (existing != null) {
+                stats = existing;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Record the start of a request.
+     *
+     * @return the start time to pass to {@link #finish}
+     */
+    long start() {
+        outstanding.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * Record the end of a request started with {@link #start}.
+     *
+     * @param failed whether the host failed to answer, in which case the request counts as a slow one
+     */
+    void finish(long start, boolean failed) {
+        outstanding.decrementAndGet();
+        long now = System.nanoTime();
+        sample(failed ? FAILURE_PENALTY : (now - start) / 1000000.0, now);
+    }
+
+    /**
+     * Record a failure outside of a request, e.g. a refused connection.
+     */
+    void failed() {
+        sample(FAILURE_PENALTY, System.nanoTime());
+    }
+
+    private synchronized void sample(double latency, long now) {
+        if (averageLatency < 0 || isStale(now)) {
+            averageLatency = latency;
+        } else {
+            averageLatency += ALPHA * (latency - averageLatency);
+        }
+        lastSample = now;
+    }
+
+    private boolean isStale(long now) {
+        return now - lastSample > STALE_AFTER;
+    }
+
+    /**
+     * @return the requests currently in flight to the host
+     */
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * @return the moving average of the response time in milliseconds, or -1 when the host has not been measured
+     * recently
+     */
+    public synchronized double getAverageLatency() {
+        return averageLatency < 0 || isStale(System.nanoTime()) ? -1 : averageLatency;
+    }
+}
@@ -68,6 +68,11 @@ public class JdbcAscii extends AbstractJdbcType<String>
 
     public String getString(ByteBuffer bytes)
     {
+        String ascii = StringDictionary.ascii(bytes);
+        if (ascii != null)
+        {
+            return ascii;
+        }
         try
         {
             return ByteBufferUtil.string(bytes, US_ASCII);
@@ -0,0 +1,199 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts the latencies of an operation in buckets of exponentially growing width: four buckets per power of two of
+ * microseconds. Each thread records into one of several stripes of buckets so that recording does not contend, and
+ * the stripes are summed when the distribution is read.
+ */
+class LatencyHistogram implements LatencyMXBean {
+    /**
+     * the bits of a latency below its highest one bit that select the bucket within its power of two
+     */
+    private static final int SUB_BITS = 2;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /**
+     * latencies of 2^MAX_EXPONENT microseconds (about 12 days) and more fall in the last bucket
+     */
+    private static final int MAX_EXPONENT = 40;
+
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private static final int STRIPES = Math.min(16, StripedCounter.STRIPES);
+
+    private static final long TICK = TimeUnit.SECONDS.toNanos(5);
+
+    /**
+     * weight of the newest tick in the one minute moving average of the rate
+     */
+    private static final double ALPHA = 1 - Math.exp(-5 / 60.0);
+
+    private final AtomicLongArray buckets = new AtomicLongArray(STRIPES * BUCKETS);
+
+    private final StripedCounter total = new StripedCounter();
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * the operations recorded since the last tick of the moving average
+     */
+    private final StripedCounter uncounted = new StripedCounter();
+
+    private final AtomicLong lastTick;
+
+    private final long created;
+
+    private double rate = -1;
+
+    LatencyHistogram() {
+        created = System.nanoTime();
+        lastTick = new AtomicLong(created);
+    }
+
+    /**
+     * Record an operation started at the given {@link System#nanoTime()}.
+     */
+    void record(long start) {
+        long now = System.nanoTime();
+        long micros = Math.max(0, (now - start) / 1000);
+        buckets.incrementAndGet(StripedCounter.stripe() % STRIPES * BUCKETS + bucket(micros));
+        total.add(micros);
+        uncounted.increment();
+        long current;
+        while (micros > (current = max.get()) && !max.compareAndSet(current, micros)) {
+            // retry
+        }
+        tickIfNecessary(now);
+    }
+
+    static int bucket(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (micros >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return ((exponent - SUB_BITS + 1) << SUB_BITS) + sub;
+    }
+
+    /**
+     * @return the highest latency falling in the bucket
+     */
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket >> SUB_BITS) - 1;
+        long next = (long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1)) + 1) << shift;
+        return next - 1;
+    }
+
+    private void tickIfNecessary(long now) {
+        long last = lastTick.get();
+        long age = now - last;
+        if (age > TICK && lastTick.compareAndSet(last, now - age % TICK)) {
+            tick(age / TICK);
+        }
+    }
+
+    private synchronized void tick(long ticks) {
+        for (long i = 0; i < ticks; i++) {
+            double instant = uncounted.sumThenReset() / (TICK / 1e9);
+            rate = rate < 0 ? instant : rate + ALPHA * (instant - rate);
+        }
+    }
+
+    private long[] counts() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < STRIPES * BUCKETS; i++) {
+            counts[i % BUCKETS] += buckets.get(i);
+        }
+        return counts;
+    }
+
+    private long percentile(double quantile) {
+        long[] counts = counts();
+        long count = 0;
+        for (long bucketCount : counts) {
+            count += bucketCount;
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < STRIPES * BUCKETS; i++) {
+            count += buckets.get(i);
+        }
+        return count;
+    }
+
+    public double getMeanRate() {
+        double seconds = (System.nanoTime() - created) / 1e9;
+        return seconds <= 0 ? 0 : getCount() / seconds;
+    }
+
+    public synchronized double getOneMinuteRate() {
+        tickIfNecessary(System.nanoTime());
+        return Math.max(0, rate);
+    }
+
+    public double getMeanMicros() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) total.sum() / count;
+    }
+
+    public long get50thPercentileMicros() {
+        return percentile(0.5);
+    }
+
+    public long get95thPercentileMicros() {
+        return percentile(0.95);
+    }
+
+    public long get99thPercentileMicros() {
+        return percentile(0.99);
+    }
+
+    public long getMaxMicros() {
+        return max.get();
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+/**
+ * The rate and the latency distribution of an operation of the driver, e.g. the queries of one type or on one
+ * table. Latencies are in microseconds, and percentiles are accurate to a quarter of their power of two.
+ */
+public interface LatencyMXBean {
+    long getCount();
+
+    /**
+     * @return the operations per second since the metric was created
+     */
+    double getMeanRate();
+
+    /**
+     * @return the operations per second, as a moving average over the last minute
+     */
+    double getOneMinuteRate();
+
+    double getMeanMicros();
+
+    long get50thPercentileMicros();
+
+    long get95thPercentileMicros();
+
+    long get99thPercentileMicros();
+
+    long getMaxMicros();
+}
@@ -74,12 +74,16 @@ class ManagedConnection extends AbstractConnection implements Connection {
 
     @Override
     public <T> T unwrap(Class<T> iface) throws SQLException {
+        checkNotClosed();
+        if (physicalConnection.isWrapperFor(iface)) {
+            return physicalConnection.unwrap(iface);
+        }
         throw new SQLFeatureNotSupportedException(String.format(NO_INTERFACE, iface.getSimpleName()));
     }
 
     @Override
     public boolean isWrapperFor(Class<?> iface) throws SQLException {
-        return false;
+        return !isClosed() && physicalConnection.isWrapperFor(iface);
     }
 
     @Override
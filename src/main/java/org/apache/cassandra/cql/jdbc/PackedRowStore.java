@@ -0,0 +1,356 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.CqlRow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.apache.cassandra.cql.jdbc.Utils.SPILL_FAILED;
+
+/**
+ * The rows of a result packed one after the other into a single byte array, with the offsets of the rows as
+ * index, for random access at a fraction of the heap the Thrift rows take.
+ * <p/>
+ * A row is a flag byte, the length and bytes of the key, then the length and bytes of each value (-1 for no
+ * value) when the row has the columns of the result in order; otherwise the flag is set and the number of
+ * columns is followed by the name and value of each. The rows handed out are views over the array.
+ * <p/>
+ * Once the rows take more than the memory budget, they are moved to a temporary file that is memory-mapped for
+ * reading, and the rows added afterwards are appended to it. The file is deleted when the store is closed.
+ */
+class PackedRowStore {
+    private static final Logger logger = LoggerFactory.getLogger(PackedRowStore.class);
+
+    private static final byte DESCRIBED = 0;
+
+    private static final byte NAMED = 1;
+
+    /**
+     * the file is mapped in segments of 1 GB, and a row never spans two of them
+     */
+    private static final int SEGMENT_BITS = 30;
+
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+
+    private final ColumnDescriptor[] columns;
+
+    /**
+     * the bytes the rows may take on the heap before they spill to a file, 0 for no limit
+     */
+    private final long memoryBudget;
+
+    /**
+     * the rows, or only the row being added once they spilled
+     */
+    private byte[] data = new byte[4096];
+
+    private int length;
+
+    /**
+     * the offsets of the rows in the array, or in the file once they spilled
+     */
+    private long[] offsets = new long[64];
+
+    private int rowCount;
+
+    private File file;
+
+    private FileChannel channel;
+
+    private long fileLength;
+
+    private MappedByteBuffer[] segments;
+
+    PackedRowStore(ColumnDescriptor[] columns) {
+        this(columns, 0);
+    }
+
+    PackedRowStore(ColumnDescriptor[] columns, long memoryBudget) {
+        this.columns = columns;
+        this.memoryBudget = memoryBudget;
+    }
+
+    int size() {
+        return rowCount;
+    }
+
+    /**
+     * @return the bytes taken by the rows
+     */
+    long getLength() {
+        return file == null ? length : fileLength;
+    }
+
+    /**
+     * @return about the bytes the given rows take once packed
+     */
+    static long estimateLength(List<CqlRow> rows) {
+        long bytes = 0;
+        if (rows == null) {
+            return bytes;
+        }
+        if (rows instanceof StreamingClient.FrameRows) {
+            return ((StreamingClient.FrameRows) rows).getLength();
+        }
+        for (CqlRow row : rows) {
+            bytes += 5 + (row.key == null ? 0 : row.key.remaining());
+            for (Column column : row.getColumns()) {
+                bytes += 4 + (column.value == null ? 0 : column.value.remaining());
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @return whether the rows were moved to a temporary file
+     */
+    boolean isSpilled() {
+        return file != null;
+    }
+
+    void add(CqlRow row) throws SQLException {
+        if (rowCount == offsets.length) {
+            offsets = Arrays.copyOf(offsets, rowCount * 2);
+        }
+        if (file != null) {
+            length = 0;
+        }
+        offsets[rowCount++] = length;
+        List<Column> values = row.getColumns();
+        boolean described = isDescribed(values);
+        writeByte(described ? DESCRIBED : NAMED);
+        write(row.bufferForKey());
+        if (!described) {
+            writeInt(values.size());
+        }
+        for (Column column : values) {
+            if (!described) {
+                write(column.name);
+            }
+            write(column.value);
+        }
+        try {
+            if (file != null) {
+                offsets[rowCount - 1] = append(0, length);
+            } else if (memoryBudget > 0 && length > memoryBudget) {
+                spill();
+            }
+        } catch (IOException e) {
+            close();
+            throw new SQLNonTransientException(SPILL_FAILED, e);
+        }
+    }
+
+    private boolean isDescribed(List<Column> values) {
+        if (values.size() != columns.length) {
+            return false;
+        }
+        for (int i = 0; i < columns.length; i++) {
+            if (!columns[i].name.equals(values.get(i).name)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Move the rows packed so far to a new temporary file, keeping only room for one row on the heap.
+     */
+    private void spill() throws IOException {
+        File spillFile = File.createTempFile("cassandra-jdbc-", ".rows");
+        try {
+            channel = new RandomAccessFile(spillFile, "rw").getChannel();
+        } catch (IOException e) {
+            spillFile.delete();
+            throw e;
+        }
+        file = spillFile;
+        segments = new MappedByteBuffer[0];
+        logger.debug("result of " + rowCount + " rows over " + memoryBudget + " bytes spills to " + file);
+        for (int i = 0; i < rowCount; i++) {
+            int start = (int) offsets[i];
+            int end = i + 1 < rowCount ? (int) offsets[i + 1] : length;
+            offsets[i] = append(start, end - start);
+        }
+        data = new byte[4096];
+        length = 0;
+    }
+
+    /**
+     * Write bytes of the array at the end of the file, or at the next segment if they would span two.
+     *
+     * @return the offset of the bytes in the file
+     */
+    private long append(int start, int size) throws IOException {
+        long offset = fileLength;
+        if (offset >>> SEGMENT_BITS != (offset + size - 1) >>> SEGMENT_BITS) {
+            offset = ((offset >>> SEGMENT_BITS) + 1) << SEGMENT_BITS;
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(data, start, size);
+        while (bytes.hasRemaining()) {
+            channel.write(bytes, offset + bytes.position() - start);
+        }
+        fileLength = offset + size;
+        return offset;
+    }
+
+    /**
+     * @return the mapped segment of the file, mapped again if rows were appended to it since
+     */
+    private ByteBuffer segment(int index) throws IOException {
+        if (index >= segments.length) {
+            segments = Arrays.copyOf(segments, index + 1);
+        }
+        long start = (long) index << SEGMENT_BITS;
+        long size = Math.min(SEGMENT_SIZE, fileLength - start);
+        if (segments[index] == null || segments[index].capacity() < size) {
+            segments[index] = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        }
+        return segments[index];
+    }
+
+    /**
+     * @return the row at the given 0-based index, its key and values viewing the packed bytes
+     */
+    CqlRow get(int index) throws SQLException {
+        ByteBuffer buffer;
+        int position;
+        if (file == null) {
+            buffer = ByteBuffer.wrap(data);
+            position = (int) offsets[index];
+        } else {
+            try {
+                buffer = segment((int) (offsets[index] >>> SEGMENT_BITS));
+            } catch (IOException e) {
+                throw new SQLNonTransientException(SPILL_FAILED, e);
+            }
+            position = (int) (offsets[index] & (SEGMENT_SIZE - 1));
+        }
+        boolean described = buffer.get(position++) == DESCRIBED;
+        ByteBuffer key = read(buffer, position);
+        position += 4 + (key == null ? 0 : key.remaining());
+        int count = columns.length;
+        if (!described) {
+            count = buffer.getInt(position);
+            position += 4;
+        }
+        List<Column> values = new ArrayList<Column>(count);
+        for (int i = 0; i < count; i++) {
+            ByteBuffer name;
+            if (described) {
+                name = columns[i].name.duplicate();
+            } else {
+                name = read(buffer, position);
+                position += 4 + (name == null ? 0 : name.remaining());
+            }
+            Column column = new Column(name);
+            ByteBuffer value = read(buffer, position);
+            position += 4 + (value == null ? 0 : value.remaining());
+            column.setValue(value);
+            values.add(column);
+        }
+        CqlRow row = new CqlRow();
+        row.setKey(key);
+        row.setColumns(values);
+        return row;
+    }
+
+    /**
+     * Release the rows and delete the file they spilled to, if any.
+     */
+    void close() {
+        data = null;
+        offsets = null;
+        segments = null;
+        if (file != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.debug("Couldn't close " + file + " : " + e.toString());
+            }
+            // the mapped segments stay readable until they are garbage collected, except on Windows
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+            file = null;
+        }
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (length + bytes > data.length) {
+            long capacity = Math.max((long) data.length * 2, (long) length + bytes);
+            data = Arrays.copyOf(data, (int) Math.min(capacity, Integer.MAX_VALUE - 8));
+        }
+    }
+
+    private void writeByte(byte b) {
+        ensureCapacity(1);
+        data[length++] = b;
+    }
+
+    private void writeInt(int value) {
+        ensureCapacity(4);
+        data[length++] = (byte) (value >>> 24);
+        data[length++] = (byte) (value >>> 16);
+        data[length++] = (byte) (value >>> 8);
+        data[length++] = (byte) value;
+    }
+
+    private void write(ByteBuffer bytes) {
+        if (bytes == null) {
+            writeInt(-1);
+            return;
+        }
+        int size = bytes.remaining();
+        writeInt(size);
+        ensureCapacity(size);
+        bytes.duplicate().get(data, length, size);
+        length += size;
+    }
+
+    /**
+     * @return a view of the length-prefixed bytes at the position, or null for no value
+     */
+    private static ByteBuffer read(ByteBuffer buffer, int position) {
+        int size = buffer.getInt(position);
+        if (size < 0) {
+            return null;
+        }
+        ByteBuffer bytes = buffer.duplicate();
+        bytes.limit(position + 4 + size);
+        bytes.position(position + 4);
+        return bytes.slice();
+    }
+}
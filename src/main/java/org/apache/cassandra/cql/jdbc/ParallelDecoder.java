@@ -0,0 +1,136 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.CqlRow;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Decodes the rows of a large page on all cores ahead of the cursor. The rows are split into chunks, and the
+ * threads of a fork/join pool shared JVM-wide read each row from the frame and compose its values, so the cursor
+ * then walks rows that are ready.
+ */
+final class ParallelDecoder {
+    /**
+     * the rows a thread decodes at least
+     */
+    static final int CHUNK_ROWS = 512;
+
+    /**
+     * pages with fewer rows are decoded by the cursor as it goes
+     */
+    static final int MIN_ROWS = 4 * CHUNK_ROWS;
+
+    private static ForkJoinPool pool;
+
+    private final List<CqlRow> source;
+
+    private final ColumnDescriptor[] columns;
+
+    /**
+     * the rows, decoded from the frame
+     */
+    final List<CqlRow> rows;
+
+    /**
+     * the composed values of each row, null for the rows whose columns are not those described or that could not
+     * be composed, which are then composed as the cursor goes
+     */
+    final Object[][] values;
+
+    private ParallelDecoder(List<CqlRow> source, ColumnDescriptor[] columns) {
+        this.source = source;
+        this.columns = columns;
+        this.values = new Object[source.size()][];
+        CqlRow[] decoded = new CqlRow[source.size()];
+        this.rows = Arrays.asList(decoded);
+        getPool().invoke(new Chunk(decoded, 0, decoded.length));
+    }
+
+    /**
+     * Decode the rows of a page, waiting until all are.
+     */
+    static ParallelDecoder decode(List<CqlRow> rows, ColumnDescriptor[] columns) {
+        return new ParallelDecoder(rows, columns);
+    }
+
+    private static synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            // as many threads as cores; they are daemon threads that end when idle
+            pool = new ForkJoinPool();
+        }
+        return pool;
+    }
+
+    private void decode(CqlRow[] decoded, int index) {
+        CqlRow row = source.get(index);
+        decoded[index] = row;
+        List<Column> cols = row.getColumns();
+        if (cols.size() != columns.length) {
+            return;
+        }
+        Object[] composed = new Object[columns.length];
+        try {
+            for (int i = 0; i < columns.length; i++) {
+                Column column = cols.get(i);
+                if (!columns[i].name.equals(column.name)) {
+                    return;
+                }
+                composed[i] = columns[i].compose(column.value);
+            }
+        } catch (RuntimeException e) {
+            // left to the cursor, which fails on the value when it is asked for
+            return;
+        }
+        values[index] = composed;
+    }
+
+    private class Chunk extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final CqlRow[] decoded;
+        private final int from;
+        private final int to;
+
+        Chunk(CqlRow[] decoded, int from, int to) {
+            this.decoded = decoded;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK_ROWS) {
+                for (int i = from; i < to; i++) {
+                    decode(decoded, i);
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Chunk(decoded, from, middle), new Chunk(decoded, middle, to));
+            }
+        }
+    }
+}
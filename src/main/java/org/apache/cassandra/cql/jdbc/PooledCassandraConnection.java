@@ -30,9 +30,7 @@ import javax.sql.StatementEvent;
 import javax.sql.StatementEventListener;
 import java.sql.SQLException;
 import java.sql.SQLRecoverableException;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
 
 class PooledCassandraConnection implements PooledConnection {
@@ -40,12 +38,14 @@ class PooledCassandraConnection implements PooledConnection {
     volatile Set<ConnectionEventListener> connectionEventListeners = new HashSet<ConnectionEventListener>();
     volatile Set<StatementEventListener> statementEventListeners = new HashSet<StatementEventListener>();
     private CassandraConnection physicalConnection;
-    private Map<String, Set<CassandraPreparedStatement>> freePreparedStatements = new HashMap<String, Set<CassandraPreparedStatement>>();
-
-    private Map<String, Set<CassandraPreparedStatement>> usedPreparedStatements = new HashMap<String, Set<CassandraPreparedStatement>>();
+    /**
+     * the prepared statements that are not in use, kept to be handed out again
+     */
+    private final PreparedStatementPool statementPool;
 
     public PooledCassandraConnection(CassandraConnection physicalConnection) {
         this.physicalConnection = physicalConnection;
+        this.statementPool = new PreparedStatementPool(physicalConnection.statementPoolSize);
     }
 
     @Override
@@ -55,6 +55,7 @@ class PooledCassandraConnection implements PooledConnection {
 
     @Override
     public void close() throws SQLException {
+        statementPool.close();
         physicalConnection.close();
     }
 
@@ -98,20 +99,16 @@ class PooledCassandraConnection implements PooledConnection {
             listener.statementClosed(event);
         }
 
-        String cql = preparedStatement.getCql();
-        Set<CassandraPreparedStatement> freeStatements = freePreparedStatements.get(cql);
-        Set<CassandraPreparedStatement> usedStatements = usedPreparedStatements.get(cql);
-
-        usedStatements.remove(preparedStatement);
-
+        if (preparedStatement.isClosed()) {
+            return;
+        }
         preparedStatement.resetResults();
         try {
             preparedStatement.clearParameters();
-            freeStatements.add(preparedStatement);
+            statementPool.offer(preparedStatement);
         } catch (SQLException e) {
             logger.error(e.getMessage());
         }
-
     }
 
     void statementErrorOccurred(CassandraPreparedStatement preparedStatement, SQLException sqlException) {
@@ -120,34 +117,31 @@ class PooledCassandraConnection implements PooledConnection {
             listener.statementErrorOccurred(event);
         }
 
-        String cql = preparedStatement.getCql();
-        Set<CassandraPreparedStatement> usedStatements = usedPreparedStatements.get(cql);
-
         if (!(event.getSQLException() instanceof SQLRecoverableException)) {
             preparedStatement.close();
-            usedStatements.remove(preparedStatement);
         }
     }
 
-    public synchronized ManagedPreparedStatement prepareStatement(ManagedConnection managedConnection, String cql) throws SQLException {
-        if (!freePreparedStatements.containsKey(cql)) {
-            freePreparedStatements.put(cql, new HashSet<CassandraPreparedStatement>());
-            usedPreparedStatements.put(cql, new HashSet<CassandraPreparedStatement>());
-        }
-
-        Set<CassandraPreparedStatement> freeStatements = freePreparedStatements.get(cql);
-        Set<CassandraPreparedStatement> usedStatements = usedPreparedStatements.get(cql);
-
-        CassandraPreparedStatement managedPreparedStatement;
-        if (freeStatements.isEmpty()) {
+    public ManagedPreparedStatement prepareStatement(ManagedConnection managedConnection, String cql) throws SQLException {
+        CassandraPreparedStatement managedPreparedStatement = statementPool.take(cql);
+        if (managedPreparedStatement == null) {
             managedPreparedStatement = physicalConnection.prepareStatement(cql);
-        } else {
-            managedPreparedStatement = freeStatements.iterator().next();
-            freeStatements.remove(managedPreparedStatement);
         }
-        usedStatements.add(managedPreparedStatement);
-
         return new ManagedPreparedStatement(this, managedConnection, managedPreparedStatement);
     }
 
+    /**
+     * @return the number of prepared statements that were handed out again
+     */
+    long getStatementPoolHits() {
+        return statementPool.getHits();
+    }
+
+    /**
+     * @return the number of prepared statements that had to be prepared because none was idle
+     */
+    long getStatementPoolMisses() {
+        return statementPool.getMisses();
+    }
+
 }
@@ -25,43 +25,42 @@ import org.slf4j.LoggerFactory;
 
 import javax.sql.ConnectionEvent;
 import javax.sql.ConnectionEventListener;
+import javax.management.ObjectName;
 import javax.sql.DataSource;
-import javax.sql.PooledConnection;
 import java.io.PrintWriter;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
-import java.util.HashSet;
-import java.util.Set;
 
 public class PooledCassandraDataSource implements DataSource, ConnectionEventListener {
     protected static final String NOT_SUPPORTED = "the Cassandra implementation does not support this method";
     private static final int CONNECTION_IS_VALID_TIMEOUT = 5;
-    private static final int MIN_POOL_SIZE = 4;
     private static final Logger logger = LoggerFactory.getLogger(PooledCassandraDataSource.class);
 
     private CassandraDataSource connectionPoolDataSource;
 
-    private volatile Set<PooledCassandraConnection> freeConnections = new HashSet<PooledCassandraConnection>();
+    private final ConnectionPool pool;
 
-    private volatile Set<PooledCassandraConnection> usedConnections = new HashSet<PooledCassandraConnection>();
+    /**
+     * the names the MBeans of the pool are registered with
+     */
+    private final ObjectName[] mbeanNames;
 
-    public PooledCassandraDataSource(CassandraDataSource connectionPoolDataSource) throws SQLException {
+    public PooledCassandraDataSource(final CassandraDataSource connectionPoolDataSource) throws SQLException {
         this.connectionPoolDataSource = connectionPoolDataSource;
+        this.pool = new ConnectionPool(new ConnectionPool.Connector() {
+            public PooledCassandraConnection open() throws SQLException {
+                PooledCassandraConnection pooledConnection = connectionPoolDataSource.getPooledConnection();
+                pooledConnection.addConnectionEventListener(PooledCassandraDataSource.this);
+                return pooledConnection;
+            }
+        });
+        this.mbeanNames = DriverMetrics.registerPool(pool, pool.borrowWait);
     }
 
     @Override
-    public synchronized Connection getConnection() throws SQLException {
-        PooledCassandraConnection pooledConnection;
-        if (freeConnections.isEmpty()) {
-            pooledConnection = connectionPoolDataSource.getPooledConnection();
-            pooledConnection.addConnectionEventListener(this);
-        } else {
-            pooledConnection = freeConnections.iterator().next();
-            freeConnections.remove(pooledConnection);
-        }
-        usedConnections.add(pooledConnection);
-        return new ManagedConnection(pooledConnection);
+    public Connection getConnection() throws SQLException {
+        return new ManagedConnection(pool.borrow());
     }
 
     @Override
@@ -70,47 +69,139 @@ public class PooledCassandraDataSource implements DataSource, ConnectionEventLis
     }
 
     @Override
-    public synchronized void connectionClosed(ConnectionEvent event) {
-        PooledCassandraConnection connection = (PooledCassandraConnection) event.getSource();
-        usedConnections.remove(connection);
-        int freeConnectionsCount = freeConnections.size();
-        if (freeConnectionsCount < MIN_POOL_SIZE) {
-            freeConnections.add(connection);
-        } else {
-            try {
-                connection.close();
-            } catch (SQLException e) {
-                logger.error(e.getMessage());
-            }
-        }
+    public void connectionClosed(ConnectionEvent event) {
+        pool.release((PooledCassandraConnection) event.getSource());
     }
 
     @Override
-    public synchronized void connectionErrorOccurred(ConnectionEvent event) {
+    public void connectionErrorOccurred(ConnectionEvent event) {
         PooledCassandraConnection connection = (PooledCassandraConnection) event.getSource();
         try {
-            if (!connection.getConnection().isValid(CONNECTION_IS_VALID_TIMEOUT)) {
-                connection.getConnection().close();
+            if (connection.getConnection().isValid(CONNECTION_IS_VALID_TIMEOUT)) {
+                return;
             }
         } catch (SQLException e) {
             logger.error(e.getMessage());
         }
-        usedConnections.remove(connection);
+        pool.discard(connection);
     }
 
-    public synchronized void close() {
-        closePooledConnections(usedConnections);
-        closePooledConnections(freeConnections);
+    public void close() {
+        pool.close();
+        DriverMetrics.unregister(mbeanNames);
     }
 
-    private void closePooledConnections(Set<PooledCassandraConnection> usedConnections2) {
-        for (PooledConnection connection : usedConnections2) {
-            try {
-                connection.close();
-            } catch (SQLException e) {
-                logger.error(e.getMessage());
-            }
-        }
+    /**
+     * @return the number of physical connections the pool opens at most
+     */
+    public int getMaxPoolSize() {
+        return pool.getMaxSize();
+    }
+
+    public void setMaxPoolSize(int maxPoolSize) {
+        pool.setMaxSize(maxPoolSize);
+    }
+
+    /**
+     * @return the number of idle connections kept open ahead of demand
+     */
+    public int getMinIdle() {
+        return pool.getMinIdle();
+    }
+
+    /**
+     * Keep connections idle ahead of demand; they are opened in the background right away.
+     */
+    public void setMinIdle(int minIdle) {
+        pool.setMinIdle(minIdle);
+    }
+
+    /**
+     * @return the number of idle connections above which connections are closed when they are returned
+     */
+    public int getMaxIdle() {
+        return pool.getMaxIdle();
+    }
+
+    public void setMaxIdle(int maxIdle) {
+        pool.setMaxIdle(maxIdle);
+    }
+
+    /**
+     * @return the milliseconds after which connections idle above the minimum are closed, 0 for never
+     */
+    public long getIdleTimeout() {
+        return pool.getIdleTimeout();
+    }
+
+    public void setIdleTimeout(long idleTimeout) {
+        pool.setIdleTimeout(idleTimeout);
+    }
+
+    /**
+     * @return the milliseconds after which connections are closed once they are no longer in use, 0 for never
+     */
+    public long getMaxLifetime() {
+        return pool.getMaxLifetime();
+    }
+
+    public void setMaxLifetime(long maxLifetime) {
+        pool.setMaxLifetime(maxLifetime);
+    }
+
+    /**
+     * @return whether the pool keeps as many connections open as were in use at once in the last minute
+     */
+    public boolean isAutoSizing() {
+        return pool.isAutoSizing();
+    }
+
+    public void setAutoSizing(boolean autoSizing) {
+        pool.setAutoSizing(autoSizing);
+    }
+
+    /**
+     * @return the number of threads that may wait for a connection when the pool is full, beyond which
+     * {@link #getConnection()} fails right away
+     */
+    public int getMaxWaitingThreads() {
+        return pool.getMaxWaiting();
+    }
+
+    public void setMaxWaitingThreads(int maxWaitingThreads) {
+        pool.setMaxWaiting(maxWaitingThreads);
+    }
+
+    /**
+     * @return the milliseconds {@link #getConnection()} waits for a connection when the pool is full
+     */
+    public long getWaitTimeout() {
+        return pool.getWaitTimeout();
+    }
+
+    public void setWaitTimeout(long waitTimeout) {
+        pool.setWaitTimeout(waitTimeout);
+    }
+
+    /**
+     * @return the number of physical connections open
+     */
+    public int getPoolSize() {
+        return pool.getSize();
+    }
+
+    /**
+     * @return the number of physical connections open and not in use
+     */
+    public int getIdleConnections() {
+        return pool.getIdle();
+    }
+
+    /**
+     * @return the number of threads waiting for a connection
+     */
+    public int getWaitingThreads() {
+        return pool.getWaiting();
     }
 
     @Override
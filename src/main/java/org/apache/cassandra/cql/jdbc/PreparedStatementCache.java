@@ -0,0 +1,122 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.cassandra.thrift.CqlPreparedResult;
+import org.apache.cassandra.thrift.InvalidRequestException;
+
+/**
+ * The statements prepared on each host, shared JVM-wide by the connections to the host, so that preparing a
+ * statement any connection already prepared costs no round trip. A prepared statement id is only valid on the host
+ * it was prepared on, and unqualified table names depend on the keyspace, hence the key. The cache is bounded and
+ * evicts the statements least recently used.
+ * <p/>
+ * A host forgets its prepared statements when it restarts or when too many were prepared on it; executing a
+ * forgotten statement fails with an error recognized by {@link #isUnknown}, upon which the statement is prepared
+ * again.
+ */
+final class PreparedStatementCache {
+    private static final int MAX_STATEMENTS = 4096;
+
+    private static final Cache<Key, CqlPreparedResult> statements = CacheBuilder.newBuilder()
+            .maximumSize(MAX_STATEMENTS)
+            .build();
+
+    private PreparedStatementCache() {
+    }
+
+    /**
+     * @return the statement prepared on the host, or null if it has to be prepared
+     */
+    static CqlPreparedResult get(String host, String keyspace, String cql) {
+        return statements.getIfPresent(new Key(host, keyspace, cql));
+    }
+
+    static void put(String host, String keyspace, String cql, CqlPreparedResult result) {
+        statements.put(new Key(host, keyspace, cql), result);
+    }
+
+    /**
+     * Forget a statement the host no longer knows, unless it was prepared again with another id meanwhile.
+     */
+    static void invalidate(String host, String keyspace, String cql, int itemId) {
+        Key key = new Key(host, keyspace, cql);
+        CqlPreparedResult result = statements.getIfPresent(key);
+        if (result != null && result.getItemId() == itemId) {
+            statements.asMap().remove(key, result);
+        }
+    }
+
+    /**
+     * Forget the statements prepared in a keyspace on any host, after its schema changed. The statements of the other
+     * keyspaces are kept.
+     */
+    static void invalidateKeyspace(String keyspace) {
+        String name = keyspace == null ? "" : keyspace;
+        for (Key key : statements.asMap().keySet()) {
+            if (key.keyspace.equals(name)) {
+                statements.invalidate(key);
+            }
+        }
+    }
+
+    /**
+     * @return whether the error tells the host does not know the id of the prepared statement that was executed
+     */
+    static boolean isUnknown(InvalidRequestException e) {
+        String why = e.getWhy();
+        return why != null && why.regionMatches(true, 0, "Prepared query with ID", 0, 22) && why.contains("not found");
+    }
+
+    private static final class Key {
+        private final String host;
+        private final String keyspace;
+        private final String cql;
+        private final int hash;
+
+        Key(String host, String keyspace, String cql) {
+            this.host = host;
+            this.keyspace = keyspace == null ? "" : keyspace;
+            this.cql = cql;
+            this.hash = 31 * (31 * host.hashCode() + this.keyspace.hashCode()) + cql.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && cql.equals(other.cql) && host.equals(other.host)
+                    && keyspace.equals(other.keyspace);
+        }
+    }
+}
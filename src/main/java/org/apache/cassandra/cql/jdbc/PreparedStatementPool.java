@@ -0,0 +1,124 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The prepared statements of a pooled connection that are not in use, by CQL. The pool holds the statements of a
+ * bounded number of distinct CQL strings; the statements of the CQL least recently used are closed to make room for
+ * new ones. Taking and returning statements does not lock the pool.
+ */
+class PreparedStatementPool {
+    private final LoadingCache<String, Queue<CassandraPreparedStatement>> idle;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param maxSize the number of distinct CQL strings to keep statements for, 0 to close every statement returned
+     */
+    PreparedStatementPool(int maxSize) {
+        idle = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .removalListener(new RemovalListener<String, Queue<CassandraPreparedStatement>>() {
+                    public void onRemoval(RemovalNotification<String, Queue<CassandraPreparedStatement>> notification) {
+                        closeAll(notification.getValue());
+                    }
+                })
+                .build(new CacheLoader<String, Queue<CassandraPreparedStatement>>() {
+                    public Queue<CassandraPreparedStatement> load(String cql) {
+                        return new ConcurrentLinkedQueue<CassandraPreparedStatement>();
+                    }
+                });
+    }
+
+    /**
+     * @return an idle statement prepared from the CQL, or null if one has to be prepared
+     */
+    CassandraPreparedStatement take(String cql) {
+        Queue<CassandraPreparedStatement> statements = idle.getIfPresent(cql);
+        CassandraPreparedStatement statement = statements == null ? null : statements.poll();
+        if (statement == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return statement;
+    }
+
+    /**
+     * Keep a statement that is no longer in use for the next time its CQL is prepared.
+     */
+    void offer(CassandraPreparedStatement statement) {
+        String cql = statement.getCql();
+        Queue<CassandraPreparedStatement> statements = idle.getUnchecked(cql);
+        statements.offer(statement);
+        // the CQL may have been evicted meanwhile, and nobody would close the statement then
+        if (idle.asMap().get(cql) != statements && statements.remove(statement)) {
+            statement.close();
+        }
+    }
+
+    /**
+     * Close every idle statement.
+     */
+    void close() {
+        idle.invalidateAll();
+    }
+
+    /**
+     * @return the number of distinct CQL strings idle statements are kept for
+     */
+    long size() {
+        return idle.size();
+    }
+
+    /**
+     * @return the number of statements that were taken from the pool
+     */
+    long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of statements that had to be prepared because the pool held none for their CQL
+     */
+    long getMisses() {
+        return misses.get();
+    }
+
+    private static void closeAll(Queue<CassandraPreparedStatement> statements) {
+        CassandraPreparedStatement statement;
+        while ((statement = statements.poll()) != null) {
+            statement.close();
+        }
+    }
+}
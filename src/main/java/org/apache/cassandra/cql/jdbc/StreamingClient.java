@@ -0,0 +1,343 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import org.apache.cassandra.thrift.Cassandra;
+import org.apache.cassandra.thrift.Compression;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.CqlMetadata;
+import org.apache.cassandra.thrift.CqlResult;
+import org.apache.cassandra.thrift.CqlResultType;
+import org.apache.cassandra.thrift.CqlRow;
+import org.apache.cassandra.thrift.InvalidRequestException;
+import org.apache.cassandra.thrift.SchemaDisagreementException;
+import org.apache.cassandra.thrift.TimedOutException;
+import org.apache.cassandra.thrift.UnavailableException;
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.TBase;
+import org.apache.thrift.TException;
+import org.apache.thrift.TFieldIdEnum;
+import org.apache.thrift.async.AsyncMethodCallback;
+import org.apache.thrift.async.TAsyncClientManager;
+import org.apache.thrift.async.TAsyncMethodCall;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TField;
+import org.apache.thrift.protocol.TList;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolException;
+import org.apache.thrift.protocol.TProtocolFactory;
+import org.apache.thrift.protocol.TProtocolUtil;
+import org.apache.thrift.protocol.TType;
+import org.apache.thrift.transport.TMemoryInputTransport;
+import org.apache.thrift.transport.TNonblockingTransport;
+import org.apache.thrift.transport.TTransport;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A client that leaves the rows of the results of CQL 3 queries in the frame they were received in, and decodes a
+ * row only when it is asked for. Both the framed and the async transports read each frame into an array of its
+ * own, so a result holds that array and the offsets of its rows rather than the graph of rows, columns and buffers
+ * Thrift would build for all rows up front.
+ */
+class StreamingClient extends Cassandra.Client {
+
+    StreamingClient(TProtocol protocol) {
+        super(protocol);
+    }
+
+    @Override
+    public CqlResult recv_execute_cql3_query() throws InvalidRequestException, UnavailableException,
+            TimedOutException, SchemaDisagreementException, TException {
+        Cassandra.execute_cql3_query_result result = new Cassandra.execute_cql3_query_result() {
+            @Override
+            public void read(TProtocol iprot) throws TException {
+                readResult(iprot, this);
+            }
+        };
+        receiveBase(result, "execute_cql3_query");
+        if (result.isSetSuccess()) {
+            return result.success;
+        }
+        if (result.ire != null) {
+            throw result.ire;
+        }
+        if (result.ue != null) {
+            throw result.ue;
+        }
+        if (result.te != null) {
+            throw result.te;
+        }
+        if (result.sde != null) {
+            throw result.sde;
+        }
+        throw new TApplicationException(TApplicationException.MISSING_RESULT,
+                "execute_cql3_query failed: unknown result");
+    }
+
+    @Override
+    public CqlResult recv_execute_prepared_cql3_query() throws InvalidRequestException, UnavailableException,
+            TimedOutException, SchemaDisagreementException, TException {
+        Cassandra.execute_prepared_cql3_query_result result = new Cassandra.execute_prepared_cql3_query_result() {
+            @Override
+            public void read(TProtocol iprot) throws TException {
+                readResult(iprot, this);
+            }
+        };
+        receiveBase(result, "execute_prepared_cql3_query");
+        if (result.isSetSuccess()) {
+            return result.success;
+        }
+        if (result.ire != null) {
+            throw result.ire;
+        }
+        if (result.ue != null) {
+            throw result.ue;
+        }
+        if (result.te != null) {
+            throw result.te;
+        }
+        if (result.sde != null) {
+            throw result.sde;
+        }
+        throw new TApplicationException(TApplicationException.MISSING_RESULT,
+                "execute_prepared_cql3_query failed: unknown result");
+    }
+
+    /**
+     * Read the result struct of an execute call, whose fields are the same for all of them.
+     */
+    static <F extends TFieldIdEnum> void readResult(TProtocol iprot, TBase<?, F> result) throws TException {
+        iprot.readStructBegin();
+        for (TField field = iprot.readFieldBegin(); field.type != TType.STOP; field = iprot.readFieldBegin()) {
+            TBase<?, ?> value = null;
+            if (field.type == TType.STRUCT) {
+                switch (field.id) {
+                    case 0:
+                        value = readCqlResult(iprot);
+                        break;
+                    case 1:
+                        value = new InvalidRequestException();
+                        value.read(iprot);
+                        break;
+                    case 2:
+                        value = new UnavailableException();
+                        value.read(iprot);
+                        break;
+                    case 3:
+                        value = new TimedOutException();
+                        value.read(iprot);
+                        break;
+                    case 4:
+                        value = new SchemaDisagreementException();
+                        value.read(iprot);
+                        break;
+                }
+            }
+            if (value == null) {
+                TProtocolUtil.skip(iprot, field.type);
+            } else {
+                result.setFieldValue(result.fieldForId(field.id), value);
+            }
+            iprot.readFieldEnd();
+        }
+        iprot.readStructEnd();
+    }
+
+    /**
+     * Read a CqlResult, leaving its rows in the frame when the protocol reads them from an array.
+     */
+    static CqlResult readCqlResult(TProtocol iprot) throws TException {
+        CqlResult result = new CqlResult();
+        TTransport transport = iprot.getTransport();
+        if (!(iprot instanceof TBinaryProtocol) || transport.getBuffer() == null) {
+            result.read(iprot);
+            return result;
+        }
+        iprot.readStructBegin();
+        for (TField field = iprot.readFieldBegin(); field.type != TType.STOP; field = iprot.readFieldBegin()) {
+            if (field.id == 1 && field.type == TType.I32) {
+                result.setType(CqlResultType.findByValue(iprot.readI32()));
+            } else if (field.id == 2 && field.type == TType.LIST) {
+                result.setRows(readRows(iprot, transport));
+            } else if (field.id == 3 && field.type == TType.I32) {
+                result.setNum(iprot.readI32());
+            } else if (field.id == 4 && field.type == TType.STRUCT) {
+                CqlMetadata schema = new CqlMetadata();
+                schema.read(iprot);
+                result.setSchema(schema);
+            } else {
+                TProtocolUtil.skip(iprot, field.type);
+            }
+            iprot.readFieldEnd();
+        }
+        iprot.readStructEnd();
+        result.validate();
+        return result;
+    }
+
+    private static List<CqlRow> readRows(TProtocol iprot, TTransport transport) throws TException {
+        TList list = iprot.readListBegin();
+        int[] offsets = new int[list.size + 1];
+        for (int i = 0; i < list.size; i++) {
+            offsets[i] = transport.getBufferPosition();
+            skip(iprot, transport, list.elemType);
+        }
+        offsets[list.size] = transport.getBufferPosition();
+        iprot.readListEnd();
+        return new FrameRows(transport.getBuffer(), offsets);
+    }
+
+    /**
+     * Skip a value, stepping over binary values rather than wrapping them into buffers as TProtocolUtil does.
+     */
+    private static void skip(TProtocol iprot, TTransport transport, byte type) throws TException {
+        switch (type) {
+            case TType.STRING:
+                int size = iprot.readI32();
+                if (size < 0 || size > transport.getBytesRemainingInBuffer()) {
+                    throw new TProtocolException(TProtocolException.INVALID_DATA, "binary value of " + size
+                            + " bytes beyond the end of the frame");
+                }
+                transport.consumeBuffer(size);
+                break;
+            case TType.STRUCT:
+                iprot.readStructBegin();
+                for (TField field = iprot.readFieldBegin(); field.type != TType.STOP; field = iprot.readFieldBegin()) {
+                    skip(iprot, transport, field.type);
+                    iprot.readFieldEnd();
+                }
+                iprot.readStructEnd();
+                break;
+            case TType.LIST:
+                TList list = iprot.readListBegin();
+                for (int i = 0; i < list.size; i++) {
+                    skip(iprot, transport, list.elemType);
+                }
+                iprot.readListEnd();
+                break;
+            default:
+                TProtocolUtil.skip(iprot, type);
+        }
+    }
+
+    /**
+     * The rows of a result as they were received, each decoded when it is accessed.
+     */
+    static final class FrameRows extends AbstractList<CqlRow> implements RandomAccess {
+        private final byte[] frame;
+
+        /**
+         * the offsets of the rows in the frame, followed by the end of the last row
+         */
+        private final int[] offsets;
+
+        FrameRows(byte[] frame, int[] offsets) {
+            this.frame = frame;
+            this.offsets = offsets;
+        }
+
+        @Override
+        public CqlRow get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+            int offset = offsets[index];
+            CqlRow row = new CqlRow();
+            try {
+                row.read(new TBinaryProtocol(new TMemoryInputTransport(frame, offset, offsets[index + 1] - offset)));
+            } catch (TException e) {
+                // the row was walked through when the result was received
+                throw new IllegalStateException(e);
+            }
+            return row;
+        }
+
+        @Override
+        public int size() {
+            return offsets.length - 1;
+        }
+
+        /**
+         * @return the bytes the rows take in the frame
+         */
+        long getLength() {
+            return offsets[offsets.length - 1] - offsets[0];
+        }
+    }
+
+    /**
+     * The non-blocking client, whose CQL 3 calls decode their response with a StreamingClient.
+     */
+    static class Async extends Cassandra.AsyncClient {
+
+        Async(TProtocolFactory protocolFactory, TAsyncClientManager clientManager, TNonblockingTransport transport) {
+            super(protocolFactory, clientManager, transport);
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes") // the generated AsyncClient declares the callback raw
+        public void execute_cql3_query(ByteBuffer query, Compression compression, ConsistencyLevel consistency,
+                                       AsyncMethodCallback resultHandler) throws TException {
+            checkReady();
+            execute_cql3_query_call call = new execute_cql3_query_call(query, compression, consistency, resultHandler,
+                    this, ___protocolFactory, ___transport) {
+                @Override
+                public CqlResult getResult() throws InvalidRequestException, UnavailableException,
+                        TimedOutException, SchemaDisagreementException, TException {
+                    if (getState() != TAsyncMethodCall.State.RESPONSE_READ) {
+                        throw new IllegalStateException("Method call not finished!");
+                    }
+                    TMemoryInputTransport response = new TMemoryInputTransport(getFrameBuffer().array());
+                    return new StreamingClient(client.getProtocolFactory().getProtocol(response))
+                            .recv_execute_cql3_query();
+                }
+            };
+            ___currentMethod = call;
+            ___manager.call(call);
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes") // the generated AsyncClient declares the callback raw
+        public void execute_prepared_cql3_query(int itemId, List<ByteBuffer> values, ConsistencyLevel consistency,
+                                                AsyncMethodCallback resultHandler) throws TException {
+            checkReady();
+            execute_prepared_cql3_query_call call = new execute_prepared_cql3_query_call(itemId, values, consistency,
+                    resultHandler, this, ___protocolFactory, ___transport) {
+                @Override
+                public CqlResult getResult() throws InvalidRequestException, UnavailableException,
+                        TimedOutException, SchemaDisagreementException, TException {
+                    if (getState() != TAsyncMethodCall.State.RESPONSE_READ) {
+                        throw new IllegalStateException("Method call not finished!");
+                    }
+                    TMemoryInputTransport response = new TMemoryInputTransport(getFrameBuffer().array());
+                    return new StreamingClient(client.getProtocolFactory().getProtocol(response))
+                            .recv_execute_prepared_cql3_query();
+                }
+            };
+            ___currentMethod = call;
+            ___manager.call(call);
+        }
+    }
+}
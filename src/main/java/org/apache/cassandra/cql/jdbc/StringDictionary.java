@@ -0,0 +1,151 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Shares the String instances of the values of a text column that repeat, such as statuses or country codes,
+ * keyed by their bytes, so that each distinct value is decoded and held once per result set rather than once per
+ * row.
+ * <p/>
+ * The dictionary is bounded and gives up on columns whose values hardly repeat. Lookups may race, as when the rows
+ * are decoded in parallel: the entries are immutable, so a racing lookup at worst decodes a value again.
+ */
+final class StringDictionary {
+    /**
+     * longer values rarely repeat and are not kept
+     */
+    static final int MAX_VALUE_BYTES = 64;
+
+    private static final int CAPACITY = 1024;
+
+    private static final int MAX_ENTRIES = CAPACITY * 3 / 4;
+
+    private static final int MAX_PROBES = 8;
+
+    /**
+     * the lookups after which a dictionary hitting less than half of the time is no longer used
+     */
+    private static final int PROBATION = 4096;
+
+    private final AbstractJdbcType<?> type;
+
+    private final Entry[] entries = new Entry[CAPACITY];
+
+    private int size;
+
+    private int lookups;
+
+    private int hits;
+
+    private boolean disabled;
+
+    StringDictionary(AbstractJdbcType<?> type) {
+        this.type = type;
+    }
+
+    /**
+     * @return the text of the bytes, the same instance for the same bytes as long as the dictionary is in use
+     */
+    String get(ByteBuffer bytes) {
+        int length = bytes.remaining();
+        if (disabled || length > MAX_VALUE_BYTES) {
+            return type.getString(bytes);
+        }
+        if (++lookups >= PROBATION && hits * 2 < lookups) {
+            disabled = true;
+        }
+        int hash = hash(bytes);
+        int free = -1;
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            int slot = (hash + probe) & (CAPACITY - 1);
+            Entry entry = entries[slot];
+            if (entry == null) {
+                free = slot;
+                break;
+            }
+            if (entry.hash == hash && entry.matches(bytes)) {
+                hits++;
+                return entry.value;
+            }
+        }
+        String value = type.getString(bytes);
+        if (free >= 0 && size < MAX_ENTRIES) {
+            byte[] key = new byte[length];
+            bytes.duplicate().get(key);
+            entries[free] = new Entry(key, hash, value);
+            size++;
+        }
+        return value;
+    }
+
+    private static int hash(ByteBuffer bytes) {
+        int hash = 1;
+        for (int i = bytes.position(); i < bytes.limit(); i++) {
+            hash = 31 * hash + bytes.get(i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Decode text that is pure ASCII without going through a CharsetDecoder.
+     *
+     * @return the text, or null if some bytes are not ASCII
+     */
+    static String ascii(ByteBuffer bytes) {
+        int position = bytes.position();
+        char[] chars = new char[bytes.remaining()];
+        for (int i = 0; i < chars.length; i++) {
+            byte b = bytes.get(position + i);
+            if (b < 0) {
+                return null;
+            }
+            chars[i] = (char) b;
+        }
+        return new String(chars);
+    }
+
+    private static final class Entry {
+        final byte[] key;
+        final int hash;
+        final String value;
+
+        Entry(byte[] key, int hash, String value) {
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+        }
+
+        boolean matches(ByteBuffer bytes) {
+            if (bytes.remaining() != key.length) {
+                return false;
+            }
+            int position = bytes.position();
+            for (int i = 0; i < key.length; i++) {
+                if (bytes.get(position + i) != key[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,402 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.CqlResult;
+import org.apache.cassandra.thrift.CqlResultType;
+import org.apache.cassandra.thrift.CqlRow;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.thrift.TException;
+
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.apache.cassandra.cql.jdbc.Utils.NO_PAGING_KEY;
+
+/**
+ * Pages through the results of a SELECT over a whole table, so that only one page of rows is held at a time.
+ * <p/>
+ * Every page is read with a LIMIT, and the next one continues after the token of the last partition read, which
+ * is computed on the client. The rows of the last partition of a full page are dropped and read again with the
+ * next page, since the partition may go on beyond the limit. The number of rows per page is at most the fetch
+ * size, and is lowered for wide rows to keep the size of a page close to the byte budget of the connection.
+ * <p/>
+ * Pages may be read ahead in the background over the asynchronous channels of the connection, so that the
+ * cursor does not wait for the server at every page boundary; the pages read ahead are bounded in number.
+ * <p/>
+ * Only queries without a WHERE clause or ORDER BY, selecting the partition key columns, are paged, and only
+ * when the cluster uses the Murmur3 partitioner.
+ */
+class TokenRangePager {
+    static final Pattern PAGEABLE_PATTERN = Pattern.compile(
+            "\\s*SELECT\\s+(DISTINCT\\s+)?(.+?)\\s+FROM\\s+(?:(\\w+)\\.)?(\\w+)(?:\\s+LIMIT\\s+(\\d+))?(\\s+ALLOW\\s+FILTERING)?\\s*;?\\s*",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private final CassandraConnection connection;
+
+    private final ConsistencyLevel consistencyLevel;
+
+    /**
+     * the query as given
+     */
+    final String cql;
+
+    /**
+     * the query up to and including the table
+     */
+    private final String select;
+
+    /**
+     * the options following the LIMIT
+     */
+    private final String options;
+
+    /**
+     * the token function over the partition key, e.g. token("a", "b")
+     */
+    private final String token;
+
+    private final List<String> partitionKey;
+
+    private final ByteBuffer[] partitionKeyNames;
+
+    private final int fetchSize;
+
+    private final long pageBytes;
+
+    /**
+     * the rows still to be read, when the query has a limit of its own
+     */
+    private long remaining;
+
+    /**
+     * the number of rows to ask for with the next page
+     */
+    private int limit;
+
+    /**
+     * the token of the last partition read completely, null before the first page
+     */
+    private Long lastToken;
+
+    private boolean exhausted;
+
+    /**
+     * the number of pages read ahead at most, 0 to read every page when it is needed
+     */
+    private final int prefetchPages;
+
+    /**
+     * the fraction of a page the cursor passes before the next page is read ahead
+     */
+    final double prefetchThreshold;
+
+    /**
+     * the pages read ahead or being read, in order
+     */
+    private final Deque<ListenableFuture<CqlResult>> buffered = new ArrayDeque<ListenableFuture<CqlResult>>();
+
+    /**
+     * whether a page is being read ahead
+     */
+    private boolean fetching;
+
+    private boolean closed;
+
+    private TokenRangePager(CassandraConnection connection, ConsistencyLevel consistencyLevel, String cql, String select,
+                            String options, List<String> partitionKey, int fetchSize, long limit) {
+        this.connection = connection;
+        this.consistencyLevel = consistencyLevel;
+        this.cql = cql;
+        this.select = select;
+        this.options = options;
+        this.fetchSize = fetchSize;
+        this.pageBytes = connection.pageBytes;
+        // reading ahead goes over the asynchronous channels, which need CQL 3
+        this.prefetchPages = connection.majorCqlVersion < 3 ? 0 : connection.prefetchPages;
+        this.prefetchThreshold = connection.prefetchThreshold;
+        this.remaining = limit;
+        this.limit = fetchSize;
+        this.partitionKey = partitionKey;
+        this.partitionKeyNames = new ByteBuffer[partitionKey.size()];
+        StringBuilder sb = new StringBuilder("token(");
+        for (int i = 0; i < partitionKeyNames.length; i++) {
+            String column = partitionKey.get(i);
+            partitionKeyNames[i] = ByteBufferUtil.bytes(column);
+            sb.append(i == 0 ? "" : ", ").append('"').append(column.replace("\"", "\"\"")).append('"');
+        }
+        token = sb.append(')').toString();
+    }
+
+    /**
+     * @return a pager for the query, or null if the query can not or need not be paged
+     */
+    static TokenRangePager forQuery(CassandraConnection connection, String cql, int fetchSize,
+                                    ConsistencyLevel consistencyLevel) {
+        if (!TokenRing.MURMUR3_PARTITIONER.equals(connection.partitioner)) {
+            return null;
+        }
+        Matcher matcher = PAGEABLE_PATTERN.matcher(cql);
+        if (!matcher.matches()) {
+            return null;
+        }
+        String keyspace = matcher.group(3) != null ? matcher.group(3).toLowerCase() : connection.currentKeyspace;
+        if (keyspace == null) {
+            return null;
+        }
+        long limit = matcher.group(5) != null ? Long.parseLong(matcher.group(5)) : Long.MAX_VALUE;
+        if (limit <= fetchSize) {
+            return null;
+        }
+        List<String> partitionKey = connection.getPartitionKey(keyspace, matcher.group(4).toLowerCase());
+        if (partitionKey.isEmpty() || !selects(matcher.group(2), partitionKey)) {
+            return null;
+        }
+        String select = cql.substring(matcher.start(1) < 0 ? matcher.start(2) : matcher.start(1), matcher.end(4));
+        String options = matcher.group(6) != null ? matcher.group(6) : "";
+        return new TokenRangePager(connection, consistencyLevel, cql, "SELECT " + select, options, partitionKey, fetchSize, limit);
+    }
+
+    /**
+     * @return whether the selection returns the partition key columns under their own names
+     */
+    static boolean selects(String selection, List<String> partitionKey) {
+        if (selection.trim().equals("*")) {
+            return true;
+        }
+        List<String> columns = new ArrayList<String>();
+        for (String column : selection.split(",")) {
+            column = column.trim();
+            if (column.length() > 1 && column.startsWith("\"") && column.endsWith("\"")) {
+                columns.add(column.substring(1, column.length() - 1).replace("\"\"", "\""));
+            } else {
+                columns.add(column.toLowerCase());
+            }
+        }
+        return columns.containsAll(partitionKey);
+    }
+
+    /**
+     * Read the next page, waiting for it if it is being read ahead.
+     *
+     * @return the next page, or null when all rows were read
+     */
+    CqlResult nextPage() throws SQLException, TException {
+        if (prefetchPages > 0) {
+            ListenableFuture<CqlResult> page;
+            synchronized (this) {
+                if (buffered.isEmpty() && !exhausted) {
+                    fetchAhead(SettableFuture.<CqlResult>create());
+                }
+                page = buffered.pollFirst();
+            }
+            if (page == null) {
+                return null;
+            }
+            try {
+                return Uninterruptibles.getUninterruptibly(page);
+            } catch (ExecutionException e) {
+                Throwables.propagateIfInstanceOf(e.getCause(), SQLException.class);
+                Throwables.propagateIfInstanceOf(e.getCause(), TException.class);
+                throw new SQLNonTransientException(e.getCause());
+            }
+        }
+        while (!exhausted) {
+            int requested = (int) Math.min(limit, remaining);
+            CqlResult page = accept(connection.execute(getQuery(requested), consistencyLevel), requested);
+            if (page != null) {
+                return page;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Start reading the next page in the background, unless enough pages are read ahead already.
+     */
+    synchronized void readAhead() {
+        if (prefetchPages > 0 && !fetching && !exhausted && buffered.size() < prefetchPages) {
+            fetchAhead(SettableFuture.<CqlResult>create());
+        }
+    }
+
+    /**
+     * Read the next page over the asynchronous channels of the connection; when it arrives, the one after it is
+     * read ahead in turn as long as there is room for it.
+     */
+    private void fetchAhead(SettableFuture<CqlResult> page) {
+        fetching = true;
+        buffered.addLast(page);
+        request(page);
+    }
+
+    private void request(final SettableFuture<CqlResult> page) {
+        final int requested = (int) Math.min(limit, remaining);
+        ListenableFuture<CqlResult> result;
+        try {
+            result = connection.executeAsync(getQuery(requested), CassandraConnection.defaultCompression, consistencyLevel);
+        } catch (SQLException e) {
+            fail(page, e);
+            return;
+        }
+        Futures.addCallback(result, new FutureCallback<CqlResult>() {
+            public void onSuccess(CqlResult result) {
+                synchronized (TokenRangePager.this) {
+                    if (closed) {
+                        return;
+                    }
+                    CqlResult accepted;
+                    try {
+                        accepted = accept(result, requested);
+                    } catch (SQLException e) {
+                        fail(page, e);
+                        return;
+                    }
+                    if (accepted == null) {
+                        request(page);
+                        return;
+                    }
+                    fetching = false;
+                    page.set(accepted);
+                    readAhead();
+                }
+            }
+
+            public void onFailure(Throwable t) {
+                synchronized (TokenRangePager.this) {
+                    fail(page, t);
+                }
+            }
+        });
+    }
+
+    private void fail(SettableFuture<CqlResult> page, Throwable t) {
+        fetching = false;
+        exhausted = true;
+        page.setException(t);
+    }
+
+    /**
+     * Stop reading ahead and drop the pages read ahead.
+     */
+    synchronized void close() {
+        closed = true;
+        exhausted = true;
+        for (ListenableFuture<CqlResult> page : buffered) {
+            page.cancel(false);
+        }
+        buffered.clear();
+    }
+
+    private String getQuery(int requested) {
+        StringBuilder query = new StringBuilder(select);
+        if (lastToken != null) {
+            query.append(" WHERE ").append(token).append(" > ").append(lastToken);
+        }
+        return query.append(" LIMIT ").append(requested).append(options).toString();
+    }
+
+    /**
+     * Take in the rows read for a page and move on to the next one.
+     *
+     * @return the page, or null if the page has to be read again with a higher limit
+     */
+    private CqlResult accept(CqlResult result, int requested) throws SQLException {
+        if (result.getType() != CqlResultType.ROWS) {
+            exhausted = true;
+            return result;
+        }
+        List<CqlRow> rows = result.getRows();
+        if (rows.size() < requested || requested == remaining) {
+            exhausted = true;
+            return result;
+        }
+        // the last partition may go on beyond the limit, so it is read again with the next page
+        long last = getToken(rows.get(rows.size() - 1));
+        int end = rows.size() - 1;
+        while (end > 0 && getToken(rows.get(end - 1)) == last) {
+            end--;
+        }
+        if (end == 0) {
+            // a single partition fills the page, so ask for more rows until it fits
+            limit = requested > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE : requested * 2;
+            return null;
+        }
+        // a view, so rows left in the frame they were received in stay there
+        rows = rows.subList(0, end);
+        result.setRows(rows);
+        lastToken = getToken(rows.get(end - 1));
+        if (remaining != Long.MAX_VALUE) {
+            remaining -= end;
+        }
+        limit = nextLimit(rows, fetchSize, pageBytes);
+        return result;
+    }
+
+    /**
+     * @return the number of rows of the size of the given ones that fit the byte budget, at most the fetch size
+     */
+    static int nextLimit(List<CqlRow> rows, int fetchSize, long pageBytes) {
+        long bytes = 0;
+        for (CqlRow row : rows) {
+            for (Column column : row.getColumns()) {
+                // the name, the value and about as much for the Thrift framing of the column
+                bytes += (column.name == null ? 0 : column.name.remaining())
+                        + (column.value == null ? 0 : column.value.remaining()) + 16;
+            }
+        }
+        long rowBytes = Math.max(1, bytes / Math.max(1, rows.size()));
+        return (int) Math.max(1, Math.min(fetchSize, pageBytes / rowBytes));
+    }
+
+    private long getToken(CqlRow row) throws SQLException {
+        ByteBuffer[] components = new ByteBuffer[partitionKeyNames.length];
+        for (Column column : row.getColumns()) {
+            for (int i = 0; i < partitionKeyNames.length; i++) {
+                if (partitionKeyNames[i].equals(column.name)) {
+                    components[i] = column.value;
+                }
+            }
+        }
+        for (int i = 0; i < components.length; i++) {
+            if (components[i] == null) {
+                throw new SQLNonTransientException(String.format(NO_PAGING_KEY, partitionKey.get(i)));
+            }
+        }
+        return MurmurHash.getToken(TokenRing.routingKey(components));
+    }
+}
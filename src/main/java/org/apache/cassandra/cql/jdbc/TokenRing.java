@@ -0,0 +1,129 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.cassandra.cql.jdbc;
+
+import org.apache.cassandra.thrift.EndpointDetails;
+import org.apache.cassandra.thrift.TokenRange;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An immutable map from Murmur3 token ranges to the replicas that own them, as reported by {@code describe_ring}.
+ */
+class TokenRing {
+    static final String MURMUR3_PARTITIONER = "org.apache.cassandra.dht.Murmur3Partitioner";
+
+    /**
+     * the (inclusive) end tokens of the ranges, sorted
+     */
+    private final long[] endTokens;
+
+    private final List<List<String>> replicas;
+
+    private TokenRing(long[] endTokens, List<List<String>> replicas) {
+        this.endTokens = endTokens;
+        this.replicas = replicas;
+    }
+
+    /**
+     * Build the ring from a ring description.
+     *
+     * @return the ring, or null when the partitioner is not supported for client side token computation
+     */
+    static TokenRing build(String partitioner, List<TokenRange> ranges) {
+        if (!MURMUR3_PARTITIONER.equals(partitioner) || ranges == null || ranges.isEmpty()) {
+            return null;
+        }
+        List<TokenRange> sorted = new ArrayList<TokenRange>(ranges);
+        Collections.sort(sorted, new Comparator<TokenRange>() {
+            public int compare(TokenRange r1, TokenRange r2) {
+                long t1 = Long.parseLong(r1.getEnd_token());
+                long t2 = Long.parseLong(r2.getEnd_token());
+                return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+            }
+        });
+        long[] endTokens = new long[sorted.size()];
+        List<List<String>> replicas = new ArrayList<List<String>>(sorted.size());
+        for (int i = 0; i < endTokens.length; i++) {
+            TokenRange range = sorted.get(i);
+            endTokens[i] = Long.parseLong(range.getEnd_token());
+            List<String> hosts = new ArrayList<String>();
+            if (range.getEndpoint_details() != null) {
+                for (EndpointDetails endpoint : range.getEndpoint_details()) {
+                    hosts.add(endpoint.getHost());
+                }
+            } else {
+                hosts.addAll(range.getEndpoints());
+            }
+            replicas.add(Collections.unmodifiableList(hosts));
+        }
+        return new TokenRing(endTokens, Collections.unmodifiableList(replicas));
+    }
+
+    /**
+     * @return the replicas owning the given token, primary replica first
+     */
+    List<String> getReplicas(long token) {
+        int index = Arrays.binarySearch(endTokens, token);
+        if (index < 0) {
+            index = -index - 1;
+            if (index == endTokens.length) {
+                // past the last end token, so the token belongs to the range wrapping around the ring
+                index = 0;
+            }
+        }
+        return replicas.get(index);
+    }
+
+    /**
+     * @return the replicas owning the given serialized partition key
+     */
+    List<String> getReplicas(ByteBuffer routingKey) {
+        return getReplicas(MurmurHash.getToken(routingKey));
+    }
+
+    /**
+     * Serialize the components of a partition key the way the server does before hashing it: a single component
+     * is used as is, several are packed as a composite of length-prefixed values each followed by a zero byte.
+     */
+    static ByteBuffer routingKey(ByteBuffer[] components) {
+        if (components.length == 1) {
+            return components[0];
+        }
+        int size = 0;
+        for (ByteBuffer component : components) {
+            size += 2 + component.remaining() + 1;
+        }
+        ByteBuffer key = ByteBuffer.allocate(size);
+        for (ByteBuffer component : components) {
+            key.putShort((short) component.remaining());
+            key.put(component.duplicate());
+            key.put((byte) 0);
+        }
+        key.flip();
+        return key;
+    }
+}
@@ -30,46 +30,34 @@ import java.nio.charset.CharacterCodingException;
 public class TypedColumn {
     private final Column rawColumn;
 
-    ;
-    // we cache the frequently-accessed forms: java object for value, String for name.
+    // the descriptor holds the name as a String, decoded once for all rows; the value is composed into its
+    // java object on first access and cached.
     // Note that {N|V}.toString() isn't always the same as Type.getString
     // (a good example is byte buffers).
-    private final Object value;
-    private final String nameString;
-    private final AbstractJdbcType<?> nameType, valueType, keyType;
-    private final CollectionType collectionType;
+    private final ColumnDescriptor descriptor;
+    private Object value;
+    private boolean composed;
+
     public TypedColumn(Column column, AbstractJdbcType<?> comparator, AbstractJdbcType<?> validator) {
         this(column, comparator, validator, null, CollectionType.NOT_COLLECTION);
     }
 
     public TypedColumn(Column column, AbstractJdbcType<?> nameType, AbstractJdbcType<?> valueType, AbstractJdbcType<?> keyType, CollectionType type) {
-        rawColumn = column;
-        this.collectionType = type;
-        this.nameType = nameType;
-        this.nameString = nameType.getString(column.name);
-        this.valueType = valueType;
-        this.keyType = keyType;
-
-        if (column.value == null || !column.value.hasRemaining()) {
-            this.value = null;
-        } else {
-            switch (collectionType) {
-                case NOT_COLLECTION:
-                    this.value = valueType.compose(column.value);
-                    break;
-                case LIST:
-                    value = ListMaker.getInstance(valueType).compose(column.value);
-                    break;
-                case SET:
-                    value = SetMaker.getInstance(valueType).compose(column.value);
-                    break;
-                case MAP:
-                    value = MapMaker.getInstance(keyType, valueType).compose(column.value);
-                    break;
-                default:
-                    value = null;
-            }
-        }
+        this(column, new ColumnDescriptor(column.name, 0, nameType, valueType, keyType, type));
+    }
+
+    TypedColumn(Column column, ColumnDescriptor descriptor) {
+        this.rawColumn = column;
+        this.descriptor = descriptor;
+    }
+
+    /**
+     * A column whose value was composed ahead.
+     */
+    TypedColumn(Column column, ColumnDescriptor descriptor, Object value) {
+        this(column, descriptor);
+        this.value = value;
+        this.composed = true;
     }
 
     public Column getRawColumn() {
@@ -77,41 +65,45 @@ public class TypedColumn {
     }
 
     public Object getValue() {
+        if (!composed) {
+            value = descriptor.compose(rawColumn.value);
+            composed = true;
+        }
         return value;
     }
 
     public String getNameString() {
-        return nameString;
+        return descriptor.nameString;
     }
 
     public String getValueString() {
         if (rawColumn.value == null) {
             return null;
         }
-        return valueType.getString(rawColumn.value);
+        return descriptor.valueType.getString(rawColumn.value);
     }
 
     public AbstractJdbcType getNameType() {
-        return nameType;
+        return descriptor.nameType;
     }
 
     public AbstractJdbcType getValueType() {
-        return valueType;
+        return descriptor.valueType;
     }
 
     public CollectionType getCollectionType() {
-        return collectionType;
+        return descriptor.collectionType;
     }
 
     public String toString() {
         return String.format("TypedColumn [rawColumn=%s, value=%s, nameString=%s, nameType=%s, valueType=%s, keyType=%s, collectionType=%s]",
                 displayRawColumn(rawColumn),
-                value,
-                nameString,
-                nameType,
-                valueType,
-                keyType,
-                collectionType);
+                getValue(),
+                descriptor.nameString,
+                descriptor.nameType,
+                descriptor.valueType,
+                descriptor.keyType,
+                descriptor.collectionType);
     }
 
     private String displayRawColumn(Column column) {
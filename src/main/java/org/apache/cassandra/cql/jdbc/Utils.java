@@ -22,12 +22,14 @@
 package org.apache.cassandra.cql.jdbc;
 
 import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
 import org.apache.cassandra.thrift.Compression;
 import org.apache.cassandra.thrift.ConsistencyLevel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayOutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -36,6 +38,7 @@ import java.nio.ByteBuffer;
 import java.sql.SQLException;
 import java.sql.SQLNonTransientConnectionException;
 import java.sql.SQLSyntaxErrorException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -58,6 +61,21 @@ class Utils {
     public static final String KEY_PRIMARY_DC = "primarydc";
     public static final String KEY_BACKUP_DC = "backupdc";
     public static final String KEY_CONNECTION_RETRIES = "retries";
+    public static final String KEY_ASYNC_CHANNELS = "asyncchannels";
+    public static final String KEY_ASYNC_TIMEOUT = "asynctimeout";
+    public static final String KEY_TOKEN_AWARE = "tokenaware";
+    public static final String KEY_HOST_SELECTION = "hostselection";
+    public static final String KEY_SNAPSHOT_REFRESH = "snapshotrefresh";
+    public static final String KEY_BATCH_TYPE = "batchtype";
+    public static final String KEY_BATCH_SIZE = "batchsize";
+    public static final String KEY_FETCH_SIZE = "fetchsize";
+    public static final String KEY_PAGE_BYTES = "pagebytes";
+    public static final String KEY_PREFETCH_PAGES = "prefetchpages";
+    public static final String KEY_PREFETCH_THRESHOLD = "prefetchthreshold";
+    public static final String KEY_MEMORY_BUDGET = "memorybudget";
+    public static final String KEY_PARALLEL_DECODING = "paralleldecoding";
+    public static final String KEY_DEDUP_STRINGS = "dedupstrings";
+    public static final String KEY_STATEMENT_POOL_SIZE = "statementpoolsize";
     public static final String TAG_DESCRIPTION = "description";
     public static final String TAG_USER = "user";
     public static final String TAG_PASSWORD = "password";
@@ -72,9 +90,25 @@ class Utils {
     public static final String TAG_PRIMARY_DC = "primaryDatacenter";
     public static final String TAG_BACKUP_DC = "backupDatacenter";
     public static final String TAG_CONNECTION_RETRIES = "retries";
+    public static final String TAG_ASYNC_CHANNELS = "asyncChannels";
+    public static final String TAG_ASYNC_TIMEOUT = "asyncTimeout";
+    public static final String TAG_TOKEN_AWARE = "tokenAware";
+    public static final String TAG_HOST_SELECTION = "hostSelection";
+    public static final String TAG_SNAPSHOT_REFRESH = "snapshotRefresh";
+    public static final String TAG_BATCH_TYPE = "batchType";
+    public static final String TAG_BATCH_SIZE = "batchSize";
+    public static final String TAG_FETCH_SIZE = "fetchSize";
+    public static final String TAG_PAGE_BYTES = "pageBytes";
+    public static final String TAG_PREFETCH_PAGES = "prefetchPages";
+    public static final String TAG_PREFETCH_THRESHOLD = "prefetchThreshold";
+    public static final String TAG_MEMORY_BUDGET = "memoryBudget";
+    public static final String TAG_PARALLEL_DECODING = "parallelDecoding";
+    public static final String TAG_DEDUP_STRINGS = "dedupStrings";
+    public static final String TAG_STATEMENT_POOL_SIZE = "statementPoolSize";
     protected static final String WAS_CLOSED_CON = "method was called on a closed Connection";
     protected static final String WAS_CLOSED_STMT = "method was called on a closed Statement";
     protected static final String WAS_CLOSED_RSLT = "method was called on a closed ResultSet";
+    protected static final String WAS_FREED = "method was called on a freed Blob";
     protected static final String NO_INTERFACE = "no object was found that matched the provided interface: %s";
     protected static final String NO_TRANSACTIONS = "the Cassandra implementation does not support transactions";
     protected static final String NO_SERVER = "no Cassandra server is available";
@@ -83,7 +117,21 @@ class Utils {
     protected static final String SCHEMA_MISMATCH = "schema does not match across nodes, (try again later)";
     protected static final String NOT_SUPPORTED = "the Cassandra implementation does not support this method";
     protected static final String NO_GEN_KEYS = "the Cassandra implementation does not currently support returning generated  keys";
-    protected static final String NO_BATCH = "the Cassandra implementation does not currently support this batch in Statement";
+    protected static final String NO_BATCH = "the batch of a PreparedStatement can only hold sets of bound values";
+    protected static final String BAD_BATCH_TYPE = "the batch type must be one of LOGGED, UNLOGGED or COUNTER (parsed: '%s')";
+    protected static final String BATCH_FAILED = "batch failed after %d of %d statements: %s";
+    protected static final String BAD_HOST_SELECTION = "'%s' is neither a built-in host selection policy nor a class implementing HostSelectionPolicy";
+    protected static final String NO_ASYNC = "asynchronous execution requires CQL version 3 or higher";
+    protected static final String ASYNC_TIMED_OUT = "no response from %s within %d ms";
+    protected static final String NO_BULK_LOAD = "bulk loading requires connections to Cassandra (got %s)";
+    protected static final String BAD_BLOB_POSITION = "position %d and length %d are outside of the Blob";
+    protected static final String NO_PAGING_KEY = "the partition key column %s needed to page through the results is missing";
+    protected static final String SPILL_FAILED = "the rows of the result set could not be spilled to a temporary file";
+    protected static final String POOL_EXHAUSTED = "all %d connections of the pool stayed in use for %d ms";
+    protected static final String POOL_TOO_MANY_WAITING = "%d threads are already waiting for a connection of the pool";
+    protected static final String POOL_CLOSED = "the connection pool was closed";
+    protected static final String LOAD_ABORTED = "bulk load aborted after %d failed rows: %s";
+    protected static final String BAD_ROW_LENGTH = "row %d has %d values but the statement has %d bind markers";
     protected static final String NO_MULTIPLE = "the Cassandra implementation does not currently support multiple open Result Sets";
     protected static final String NO_VALIDATOR = "Could not find key validator for: %s.%s";
     protected static final String NO_COMPARATOR = "Could not find key comparator for: %s.%s";
@@ -97,6 +145,7 @@ class Utils {
     protected static final String BAD_FETCH_DIR = "fetch direction value of : %s is illegal";
     protected static final String BAD_AUTO_GEN = "auto key generation value of : %s is illegal";
     protected static final String BAD_FETCH_SIZE = "fetch size of : %s rows may not be negative";
+    protected static final String BAD_MEMORY_BUDGET = "memory budget of : %s bytes may not be negative";
     protected static final String MUST_BE_POSITIVE = "index must be a positive number less or equal the count of returned columns: %s";
     protected static final String VALID_LABELS = "name provided was not in the list of valid column labels: %s";
     protected static final String NOT_TRANSLATABLE = "column was stored in %s format which is not translatable to %s";
@@ -109,8 +158,56 @@ class Utils {
     protected static final String FORWARD_ONLY = "Can not position cursor with a type of TYPE_FORWARD_ONLY";
     protected static final Logger logger = LoggerFactory.getLogger(Utils.class);
     private static final Pattern KEYSPACE_PATTERN = Pattern.compile("USE (\\w+);?", Pattern.CASE_INSENSITIVE | Pattern.MULTILINE);
-    private static final Pattern SELECT_PATTERN = Pattern.compile("(?:SELECT|DELETE)\\s+.+\\s+FROM\\s+(\\w+).*", Pattern.CASE_INSENSITIVE | Pattern.MULTILINE);
-    private static final Pattern UPDATE_PATTERN = Pattern.compile("UPDATE\\s+(\\w+)\\s+.*", Pattern.CASE_INSENSITIVE);
+    private static final Pattern SELECT_PATTERN = Pattern.compile("(?:SELECT\\s+.+?|DELETE(?:\\s+.+?)?)\\s+FROM\\s+(\\w+).*", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern UPDATE_PATTERN = Pattern.compile("UPDATE\\s+(\\w+)\\s+.*", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern SCHEMA_CHANGE_PATTERN = Pattern.compile("\\s*(?:CREATE|ALTER|DROP)\\s.*", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern INSERT_PATTERN = Pattern.compile("INSERT\\s+INTO\\s+(\\w+)\\s*\\(.*", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    /**
+     * the longest query whose compressed form is cached, and the total size of the cache in bytes
+     */
+    private static final int MAX_CACHED_QUERY_LENGTH = 16 * 1024;
+    private static final long COMPRESSED_QUERIES_WEIGHT = 4 * 1024 * 1024;
+    /**
+     * compressed bytes of recently sent query strings, weighed by the size of the query and of its compressed form
+     */
+    private static final Cache<String, byte[]> compressedQueries = CacheBuilder.newBuilder()
+            .maximumWeight(COMPRESSED_QUERIES_WEIGHT)
+            .weigher(new Weigher<String, byte[]>() {
+                public int weigh(String query, byte[] compressed) {
+                    return 2 * query.length() + compressed.length;
+                }
+            })
+            .build();
+    /**
+     * a Deflater and an output buffer per thread, reset for every query instead of being allocated
+     */
+    private static final ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>() {
+        protected Deflater initialValue() {
+            return new Deflater();
+        }
+    };
+    /**
+     * the largest output buffer a thread keeps, a bigger one is only used for the query that needed it
+     */
+    private static final int MAX_DEFLATE_BUFFER = 64 * 1024;
+    private static final ThreadLocal<byte[]> deflateBuffers = new ThreadLocal<byte[]>() {
+        protected byte[] initialValue() {
+            return new byte[1024];
+        }
+    };
+
+    /**
+     * Choose how to send a query string: deflating short queries costs the client and the server more than it
+     * saves on the wire, and may even make them longer.
+     *
+     * @param queryStr    An un-compressed CQL query string
+     * @param compression The compression asked for
+     * @param threshold   The length from which a query is worth compressing
+     * @return The compression to use for the query
+     */
+    public static Compression chooseCompression(String queryStr, Compression compression, int threshold) {
+        return compression == Compression.GZIP && queryStr.length() < threshold ? Compression.NONE : compression;
+    }
 
     /**
      * Use the Compression object method to deflate the query string
@@ -120,26 +217,41 @@ class Utils {
      * @return A compressed string
      */
     public static ByteBuffer compressQuery(String queryStr, Compression compression) {
-        byte[] data = queryStr.getBytes(Charsets.UTF_8);
-        Deflater compressor = new Deflater();
+        if (compression != Compression.GZIP) {
+            return ByteBuffer.wrap(queryStr.getBytes(Charsets.UTF_8));
+        }
+        byte[] compressed = compressedQueries.getIfPresent(queryStr);
+        if (compressed == null) {
+            compressed = deflate(queryStr.getBytes(Charsets.UTF_8));
+            if (queryStr.length() <= MAX_CACHED_QUERY_LENGTH) {
+                compressedQueries.put(queryStr, compressed);
+            }
+        }
+        // a buffer of its own for every request, the bytes are shared
+        return ByteBuffer.wrap(compressed);
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater compressor = deflaters.get();
+        compressor.reset();
         compressor.setInput(data);
         compressor.finish();
 
-        ByteArrayOutputStream byteArray = new ByteArrayOutputStream();
-        byte[] buffer = new byte[1024];
-
-        try {
-            while (!compressor.finished()) {
-                int size = compressor.deflate(buffer);
-                byteArray.write(buffer, 0, size);
+        byte[] buffer = deflateBuffers.get();
+        int length = 0;
+        while (!compressor.finished()) {
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                if (buffer.length <= MAX_DEFLATE_BUFFER) {
+                    deflateBuffers.set(buffer);
+                }
             }
-        } finally {
-            compressor.end(); //clean up after the Deflater
+            length += compressor.deflate(buffer, length, buffer.length - length);
         }
 
-        logger.trace("Compressed query statement {} bytes in length to {} bytes", data.length, byteArray.size());
+        logger.trace("Compressed query statement {} bytes in length to {} bytes", data.length, length);
 
-        return ByteBuffer.wrap(byteArray.toByteArray());
+        return Arrays.copyOf(buffer, length);
     }
 
     /**
@@ -208,6 +320,51 @@ class Utils {
                 if (params.containsKey(KEY_CONNECTION_RETRIES)) {
                     props.setProperty(TAG_CONNECTION_RETRIES, params.get(KEY_CONNECTION_RETRIES));
                 }
+                if (params.containsKey(KEY_ASYNC_CHANNELS)) {
+                    props.setProperty(TAG_ASYNC_CHANNELS, params.get(KEY_ASYNC_CHANNELS));
+                }
+                if (params.containsKey(KEY_ASYNC_TIMEOUT)) {
+                    props.setProperty(TAG_ASYNC_TIMEOUT, params.get(KEY_ASYNC_TIMEOUT));
+                }
+                if (params.containsKey(KEY_TOKEN_AWARE)) {
+                    props.setProperty(TAG_TOKEN_AWARE, params.get(KEY_TOKEN_AWARE));
+                }
+                if (params.containsKey(KEY_HOST_SELECTION)) {
+                    props.setProperty(TAG_HOST_SELECTION, params.get(KEY_HOST_SELECTION));
+                }
+                if (params.containsKey(KEY_SNAPSHOT_REFRESH)) {
+                    props.setProperty(TAG_SNAPSHOT_REFRESH, params.get(KEY_SNAPSHOT_REFRESH));
+                }
+                if (params.containsKey(KEY_BATCH_TYPE)) {
+                    props.setProperty(TAG_BATCH_TYPE, params.get(KEY_BATCH_TYPE));
+                }
+                if (params.containsKey(KEY_BATCH_SIZE)) {
+                    props.setProperty(TAG_BATCH_SIZE, params.get(KEY_BATCH_SIZE));
+                }
+                if (params.containsKey(KEY_FETCH_SIZE)) {
+                    props.setProperty(TAG_FETCH_SIZE, params.get(KEY_FETCH_SIZE));
+                }
+                if (params.containsKey(KEY_PAGE_BYTES)) {
+                    props.setProperty(TAG_PAGE_BYTES, params.get(KEY_PAGE_BYTES));
+                }
+                if (params.containsKey(KEY_PREFETCH_PAGES)) {
+                    props.setProperty(TAG_PREFETCH_PAGES, params.get(KEY_PREFETCH_PAGES));
+                }
+                if (params.containsKey(KEY_PREFETCH_THRESHOLD)) {
+                    props.setProperty(TAG_PREFETCH_THRESHOLD, params.get(KEY_PREFETCH_THRESHOLD));
+                }
+                if (params.containsKey(KEY_MEMORY_BUDGET)) {
+                    props.setProperty(TAG_MEMORY_BUDGET, params.get(KEY_MEMORY_BUDGET));
+                }
+                if (params.containsKey(KEY_PARALLEL_DECODING)) {
+                    props.setProperty(TAG_PARALLEL_DECODING, params.get(KEY_PARALLEL_DECODING));
+                }
+                if (params.containsKey(KEY_DEDUP_STRINGS)) {
+                    props.setProperty(TAG_DEDUP_STRINGS, params.get(KEY_DEDUP_STRINGS));
+                }
+                if (params.containsKey(KEY_STATEMENT_POOL_SIZE)) {
+                    props.setProperty(TAG_STATEMENT_POOL_SIZE, params.get(KEY_STATEMENT_POOL_SIZE));
+                }
 
 //               String[] items = query.split("&");
 //               if (items.length != 1) throw new SQLNonTransientConnectionException(URI_IS_SIMPLE);
@@ -305,9 +462,65 @@ class Utils {
         if (isUpdate.matches()) {
             cf = isUpdate.group(1);
         }
+        Matcher isInsert = INSERT_PATTERN.matcher(cql);
+        if (isInsert.matches()) {
+            cf = isInsert.group(1);
+        }
         return cf;
     }
 
+    /**
+     * Determine whether a CQL statement changes the schema.
+     *
+     * @param cql A CQL query string
+     * @return true for CREATE, ALTER and DROP statements
+     */
+    public static boolean isSchemaChange(String cql) {
+        return SCHEMA_CHANGE_PATTERN.matcher(cql).matches();
+    }
+
+    /**
+     * Wrap statements into a single CQL batch.
+     *
+     * @param batchType  LOGGED, UNLOGGED or COUNTER
+     * @param statements CQL statements, with or without a terminating semicolon
+     * @param from       index of the first statement of the batch
+     * @param to         index after the last statement of the batch
+     * @return the batch statement
+     */
+    public static String buildBatch(String batchType, List<String> statements, int from, int to) {
+        StringBuilder batch = new StringBuilder("BEGIN ");
+        if (!"LOGGED".equals(batchType)) {
+            batch.append(batchType).append(' ');
+        }
+        batch.append("BATCH\n");
+        for (int i = from; i < to; i++) {
+            String statement = statements.get(i).trim();
+            while (statement.endsWith(";")) {
+                statement = statement.substring(0, statement.length() - 1).trim();
+            }
+            batch.append(statement).append(";\n");
+        }
+        return batch.append("APPLY BATCH").toString();
+    }
+
+    /**
+     * @return the number of bytes of the string encoded in UTF-8, counted without encoding it
+     */
+    public static int utf8Length(String string) {
+        int length = string.length();
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c >= 0x800) {
+                // three bytes, or four for a surrogate pair which is two chars
+                length += Character.isSurrogate(c) ? 1 : 2;
+            } else if (c >= 0x80) {
+                length++;
+            }
+        }
+        return length;
+    }
+
     // Utility method
 
     /**
@@ -0,0 +1,80 @@
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+package org.apache.cassandra.cql.jdbc;
+
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class CassandraBlobUnitTest {
+
+    private static CassandraBlob blob() {
+        // a value in the middle of a larger buffer, as in a Thrift frame
+        ByteBuffer frame = ByteBuffer.wrap(new byte[]{9, 9, 1, 2, 3, 4, 5, 9});
+        frame.position(2);
+        frame.limit(7);
+        return new CassandraBlob(frame.slice());
+    }
+
+    @Test
+    public void testRead() throws Exception {
+        CassandraBlob blob = blob();
+        assertEquals(5, blob.length());
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5}, blob.getBytes(1, 5));
+        assertArrayEquals(new byte[]{2, 3}, blob.getBytes(2, 2));
+        assertArrayEquals(new byte[]{4, 5}, blob.getBytes(4, 10));
+        assertArrayEquals(new byte[0], blob.getBytes(6, 1));
+
+        InputStream stream = blob.getBinaryStream(3, 2);
+        assertEquals(3, stream.read());
+        assertEquals(4, stream.read());
+        assertEquals(-1, stream.read());
+        // reading does not move the blob
+        assertEquals(5, blob.length());
+    }
+
+    @Test
+    public void testPosition() throws Exception {
+        CassandraBlob blob = blob();
+        assertEquals(3, blob.position(new byte[]{3, 4}, 1));
+        assertEquals(-1, blob.position(new byte[]{3, 4}, 4));
+        assertEquals(-1, blob.position(new byte[]{9}, 1));
+        assertEquals(1, blob.position(blob(), 1));
+    }
+
+    @Test(expected = SQLException.class)
+    public void testBadPosition() throws Exception {
+        blob().getBytes(0, 1);
+    }
+
+    @Test(expected = SQLException.class)
+    public void testFreed() throws Exception {
+        CassandraBlob blob = blob();
+        blob.free();
+        blob.length();
+    }
+}
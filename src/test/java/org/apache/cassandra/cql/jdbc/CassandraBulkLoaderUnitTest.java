@@ -0,0 +1,119 @@
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+package org.apache.cassandra.cql.jdbc;
+
+import com.google.common.util.concurrent.Futures;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.CqlPreparedResult;
+import org.apache.cassandra.thrift.CqlResult;
+import org.apache.cassandra.thrift.CqlResultType;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.nio.ByteBuffer;
+import java.sql.SQLSyntaxErrorException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CassandraBulkLoaderUnitTest {
+
+    private static final String CQL = "INSERT INTO users (id, name) VALUES (?, ?)";
+
+    private static CassandraConnection connection() throws Exception {
+        CassandraConnection connection = mock(CassandraConnection.class);
+        connection.defaultConsistencyLevel = ConsistencyLevel.ONE;
+        CqlPreparedResult prepared = new CqlPreparedResult(1, 2);
+        prepared.setVariable_names(Arrays.asList("id", "name"));
+        when(connection.prepare(CQL)).thenReturn(prepared);
+        CassandraPreparedStatement statement = new CassandraPreparedStatement(connection, CQL);
+        when(connection.prepareStatement(CQL)).thenReturn(statement);
+        when(connection.executeAsync(anyString(), anyInt(), anyListOf(ByteBuffer.class), any(ConsistencyLevel.class)))
+                .thenReturn(Futures.immediateFuture(new CqlResult(CqlResultType.VOID)));
+        return connection;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<List<ByteBuffer>> sent(CassandraConnection connection, int times) throws Exception {
+        ArgumentCaptor<List> values = ArgumentCaptor.forClass(List.class);
+        verify(connection, times(times)).executeAsync(eq(CQL), eq(1), values.capture(), eq(ConsistencyLevel.ONE));
+        return (List<List<ByteBuffer>>) (List<?>) values.getAllValues();
+    }
+
+    @Test
+    public void testShortRowRejected() throws Exception {
+        CassandraConnection connection = connection();
+        CassandraBulkLoader loader = new CassandraBulkLoader(connection);
+        loader.setWindowSize(1);
+        loader.setReportInterval(0);
+        List<Object[]> rows = Arrays.asList(new Object[]{"1", "one"}, new Object[]{"2"});
+        try {
+            loader.load(CQL, rows.iterator());
+            fail("the second row has a value too few");
+        } catch (SQLSyntaxErrorException e) {
+            // expected
+        }
+        // the name of the first row was not written with the second
+        List<List<ByteBuffer>> sent = sent(connection, 1);
+        assertEquals(Arrays.asList(ByteBufferUtil.bytes("1"), ByteBufferUtil.bytes("one")), sent.get(0));
+    }
+
+    @Test
+    public void testLongRowRejected() throws Exception {
+        CassandraConnection connection = connection();
+        CassandraBulkLoader loader = new CassandraBulkLoader(connection);
+        loader.setReportInterval(0);
+        List<Object[]> rows = Arrays.asList(new Object[][]{{"1", "one", "extra"}});
+        try {
+            loader.load(CQL, rows.iterator());
+            fail("the row has a value too many");
+        } catch (SQLSyntaxErrorException e) {
+            // expected
+        }
+        sent(connection, 0);
+    }
+
+    @Test
+    public void testRowsBoundOneByOne() throws Exception {
+        CassandraConnection connection = connection();
+        CassandraBulkLoader loader = new CassandraBulkLoader(connection);
+        loader.setWindowSize(1);
+        loader.setReportInterval(0);
+        List<Object[]> rows = Arrays.asList(new Object[]{"1", "one"}, new Object[]{"2", "two"});
+        assertEquals(2, loader.load(CQL, rows.iterator()));
+        List<List<ByteBuffer>> sent = sent(connection, 2);
+        assertEquals(Arrays.asList(ByteBufferUtil.bytes("1"), ByteBufferUtil.bytes("one")), sent.get(0));
+        assertEquals(Arrays.asList(ByteBufferUtil.bytes("2"), ByteBufferUtil.bytes("two")), sent.get(1));
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+package org.apache.cassandra.cql.jdbc;
+
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.CqlPreparedResult;
+import org.apache.cassandra.thrift.CqlResult;
+import org.apache.cassandra.thrift.CqlResultType;
+import org.apache.thrift.transport.TTransportException;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.sql.SQLTransientConnectionException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CassandraPreparedStatementUnitTest {
+
+    private static final String CQL = "UPDATE counts SET n = n + 1 WHERE id = ?";
+
+    @Test
+    public void testReplicaFailureKeepsConnectionOpen() throws Exception {
+        CassandraConnection connection = mock(CassandraConnection.class);
+        connection.defaultConsistencyLevel = ConsistencyLevel.ONE;
+        List<String> names = Arrays.asList("id");
+        CqlPreparedResult prepared = new CqlPreparedResult(1, 1);
+        prepared.setVariable_names(names);
+        when(connection.prepare(CQL)).thenReturn(prepared);
+        when(connection.getRoutingIndexes(CQL, names)).thenReturn(new int[]{1});
+        when(connection.chooseReplica(any(ByteBuffer.class))).thenReturn("replica");
+        when(connection.prepare("replica", CQL)).thenReturn(new CqlPreparedResult(2, 1));
+        when(connection.execute(eq("replica"), eq(2), anyListOf(ByteBuffer.class), any(ConsistencyLevel.class)))
+                .thenThrow(new TTransportException("replica went away"));
+        when(connection.execute(eq(1), anyListOf(ByteBuffer.class), any(ConsistencyLevel.class)))
+                .thenReturn(new CqlResult(CqlResultType.VOID));
+
+        CassandraPreparedStatement statement = new CassandraPreparedStatement(connection, CQL);
+        statement.setInt(1, 7);
+        try {
+            statement.executeUpdate();
+            fail("the replica may have applied the update");
+        } catch (SQLTransientConnectionException e) {
+            // expected
+        }
+        verify(connection).replicaFailed("replica");
+        verify(connection, never()).disconnect();
+        // not retried on the coordinator
+        verify(connection, never()).execute(anyInt(), anyListOf(ByteBuffer.class), any(ConsistencyLevel.class));
+
+        // the next statement goes through the coordinator while the replica is down
+        when(connection.chooseReplica(any(ByteBuffer.class))).thenReturn(null);
+        statement.setInt(1, 8);
+        assertEquals(0, statement.executeUpdate());
+        verify(connection, never()).disconnect();
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+package org.apache.cassandra.cql.jdbc;
+
+import org.apache.cassandra.thrift.CqlMetadata;
+import org.apache.cassandra.thrift.CqlResult;
+import org.apache.cassandra.thrift.CqlResultType;
+import org.apache.cassandra.thrift.CqlRow;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.sql.ResultSet;
+import java.sql.SQLSyntaxErrorException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.apache.cassandra.cql.jdbc.TestRows.column;
+import static org.apache.cassandra.cql.jdbc.TestRows.row;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CassandraResultSetUnitTest {
+
+    private static CassandraStatement statement(boolean parallelDecoding) throws Exception {
+        CassandraStatement statement = mock(CassandraStatement.class);
+        when(statement.getResultSetType()).thenReturn(ResultSet.TYPE_FORWARD_ONLY);
+        when(statement.getFetchDirection()).thenReturn(ResultSet.FETCH_FORWARD);
+        statement.connection = mock(CassandraConnection.class);
+        statement.connection.parallelDecoding = parallelDecoding;
+        return statement;
+    }
+
+    private static CqlResult result(Map<String, String> valueTypes, List<CqlRow> rows) {
+        Map<ByteBuffer, String> nameTypes = new LinkedHashMap<ByteBuffer, String>();
+        Map<ByteBuffer, String> types = new LinkedHashMap<ByteBuffer, String>();
+        for (Map.Entry<String, String> entry : valueTypes.entrySet()) {
+            nameTypes.put(ByteBufferUtil.bytes(entry.getKey()), "UTF8Type");
+            types.put(ByteBufferUtil.bytes(entry.getKey()), entry.getValue());
+        }
+        CqlResult result = new CqlResult(CqlResultType.ROWS);
+        result.setSchema(new CqlMetadata(nameTypes, types, "UTF8Type", "BytesType"));
+        result.setRows(rows);
+        return result;
+    }
+
+    private static final String[] PRIMITIVE_COLUMNS = {"b", "i", "l", "f", "d", "v", "s"};
+
+    private static Map<String, String> primitiveTypes() {
+        Map<String, String> valueTypes = new LinkedHashMap<String, String>();
+        valueTypes.put("b", "BooleanType");
+        valueTypes.put("i", "Int32Type");
+        valueTypes.put("l", "LongType");
+        valueTypes.put("f", "FloatType");
+        valueTypes.put("d", "DoubleType");
+        valueTypes.put("v", "IntegerType");
+        valueTypes.put("s", "UTF8Type");
+        return valueTypes;
+    }
+
+    private static CqlRow primitiveRow(int key, ByteBuffer... values) {
+        CqlRow row = row(ByteBufferUtil.bytes(key));
+        for (int i = 0; i < values.length; i++) {
+            row.addToColumns(column(PRIMITIVE_COLUMNS[i], values[i]));
+        }
+        return row;
+    }
+
+    private static ByteBuffer bool(boolean value) {
+        return ByteBuffer.wrap(new byte[]{(byte) (value ? 1 : 0)});
+    }
+
+    private static ByteBuffer varint(long value) {
+        return ByteBuffer.wrap(BigInteger.valueOf(value).toByteArray());
+    }
+
+    @Test
+    public void testPrimitiveGetters() throws Exception {
+        long big = (1L << 40) + 5;
+        List<CqlRow> rows = Arrays.asList(
+                primitiveRow(1, bool(true), ByteBufferUtil.bytes(-7), ByteBufferUtil.bytes(big), ByteBufferUtil.bytes(1.5f),
+                        ByteBufferUtil.bytes(2.25), varint(42), ByteBufferUtil.bytes("43")),
+                primitiveRow(2, bool(false), ByteBufferUtil.bytes(0), ByteBufferUtil.bytes(0L), ByteBufferUtil.bytes(0f),
+                        ByteBufferUtil.bytes(0d), varint(0), ByteBufferUtil.bytes("0")));
+        CassandraResultSet resultSet = new CassandraResultSet(statement(false), result(primitiveTypes(), rows));
+
+        assertTrue(resultSet.next());
+        assertTrue(resultSet.getBoolean(1));
+        assertFalse(resultSet.wasNull());
+        assertEquals(-7, resultSet.getInt(2));
+        assertEquals(-7, resultSet.getInt("i"));
+        // narrowed as a cast does
+        assertEquals(5, resultSet.getInt(3));
+        assertEquals(42, resultSet.getInt(6));
+        assertEquals(43, resultSet.getInt(7));
+        // widened
+        assertEquals(-7L, resultSet.getLong(2));
+        assertEquals(big, resultSet.getLong(3));
+        assertEquals(big, resultSet.getLong("l"));
+        assertEquals(42L, resultSet.getLong(6));
+        assertEquals(43L, resultSet.getLong(7));
+        assertEquals(1.5f, resultSet.getFloat(4), 0);
+        assertEquals(1.5f, resultSet.getFloat("f"), 0);
+        assertEquals(2.25f, resultSet.getFloat(5), 0);
+        assertEquals(-7f, resultSet.getFloat(2), 0);
+        assertEquals((float) big, resultSet.getFloat(3), 0);
+        assertEquals(2.25, resultSet.getDouble(5), 0);
+        assertEquals(2.25, resultSet.getDouble("d"), 0);
+        assertEquals(1.5, resultSet.getDouble(4), 0);
+        assertEquals(-7.0, resultSet.getDouble(2), 0);
+        assertEquals((double) big, resultSet.getDouble(3), 0);
+        // numbers other than zero are true
+        assertTrue(resultSet.getBoolean(2));
+        assertTrue(resultSet.getBoolean(3));
+        assertFalse(resultSet.wasNull());
+
+        assertTrue(resultSet.next());
+        assertFalse(resultSet.getBoolean(1));
+        assertFalse(resultSet.getBoolean(2));
+        assertFalse(resultSet.getBoolean(3));
+        assertFalse(resultSet.wasNull());
+        assertEquals(0, resultSet.getInt(2));
+        assertEquals(0L, resultSet.getLong(3));
+        assertEquals(0, resultSet.getInt(6));
+        assertFalse(resultSet.wasNull());
+        assertFalse(resultSet.next());
+    }
+
+    @Test
+    public void testPrimitiveGettersOnNull() throws Exception {
+        ByteBuffer empty = ByteBufferUtil.EMPTY_BYTE_BUFFER;
+        List<CqlRow> rows = Arrays.asList(
+                primitiveRow(1, null, null, null, null, null, null, null),
+                // an empty value is read as null by the getters of primitives
+                primitiveRow(2, empty, empty, empty, empty, empty));
+        CassandraResultSet resultSet = new CassandraResultSet(statement(false), result(primitiveTypes(), rows));
+        for (int row = 0; row < rows.size(); row++) {
+            assertTrue(resultSet.next());
+            int columns = rows.get(row).getColumnsSize();
+            for (int i = 1; i <= columns; i++) {
+                assertFalse(resultSet.getBoolean(i));
+                assertTrue(resultSet.wasNull());
+                assertEquals(0, resultSet.getInt(i));
+                assertTrue(resultSet.wasNull());
+                assertEquals(0L, resultSet.getLong(i));
+                assertTrue(resultSet.wasNull());
+                assertEquals(0f, resultSet.getFloat(i), 0);
+                assertTrue(resultSet.wasNull());
+                assertEquals(0.0, resultSet.getDouble(i), 0);
+                assertTrue(resultSet.wasNull());
+            }
+        }
+        assertFalse(resultSet.next());
+    }
+
+    @Test
+    public void testColumnsChangingBetweenRows() throws Exception {
+        Map<String, String> valueTypes = new LinkedHashMap<String, String>();
+        valueTypes.put("id", "Int32Type");
+        valueTypes.put("name", "UTF8Type");
+        valueTypes.put("extra", "LongType");
+        List<CqlRow> rows = Arrays.asList(
+                row(ByteBufferUtil.bytes(1), column("id", ByteBufferUtil.bytes(1)),
+                        column("name", ByteBufferUtil.bytes("one"))),
+                row(ByteBufferUtil.bytes(2), column("id", ByteBufferUtil.bytes(2)),
+                        column("name", ByteBufferUtil.bytes("two")), column("extra", ByteBufferUtil.bytes(20L))),
+                row(ByteBufferUtil.bytes(3), column("name", ByteBufferUtil.bytes("three")),
+                        column("id", ByteBufferUtil.bytes(3))),
+                row(ByteBufferUtil.bytes(4), column("name", ByteBufferUtil.bytes("four")),
+                        column("id", ByteBufferUtil.bytes(4))));
+        CassandraResultSet resultSet = new CassandraResultSet(statement(false), result(valueTypes, rows));
+
+        assertTrue(resultSet.next());
+        assertEquals(2, resultSet.getMetaData().getColumnCount());
+        assertEquals(1, resultSet.getInt("id"));
+        assertEquals("one", resultSet.getString(2));
+
+        // a column more
+        assertTrue(resultSet.next());
+        assertEquals(3, resultSet.getMetaData().getColumnCount());
+        assertEquals(3, resultSet.findColumn("extra"));
+        assertEquals(20L, resultSet.getObject("extra"));
+        assertEquals("two", resultSet.getString("name"));
+
+        // the same columns in another order
+        assertTrue(resultSet.next());
+        assertEquals(2, resultSet.getMetaData().getColumnCount());
+        assertEquals("name", resultSet.getMetaData().getColumnName(1));
+        assertEquals("three", resultSet.getString(1));
+        assertEquals(3, resultSet.getInt(2));
+        try {
+            resultSet.findColumn("extra");
+            fail("the column is not in the row");
+        } catch (SQLSyntaxErrorException e) {
+            // expected
+        }
+
+        // described by the previous row, whose values are not carried over
+        assertTrue(resultSet.next());
+        assertEquals("four", resultSet.getString("name"));
+        assertEquals(4, resultSet.getObject(2));
+        assertFalse(resultSet.next());
+    }
+
+    @Test
+    public void testValuesComposedOnDemand() throws Exception {
+        Map<String, String> valueTypes = new LinkedHashMap<String, String>();
+        valueTypes.put("id", "Int32Type");
+        valueTypes.put("name", "UTF8Type");
+        ByteBuffer first = ByteBufferUtil.bytes("aaa");
+        ByteBuffer second = ByteBufferUtil.bytes("ccc");
+        List<CqlRow> rows = Arrays.asList(
+                row(ByteBufferUtil.bytes(1), column("id", ByteBufferUtil.bytes(1)),
+                        column("name", first)),
+                row(ByteBufferUtil.bytes(2), column("id", ByteBufferUtil.bytes(2)),
+                        column("name", second)));
+        CassandraResultSet resultSet = new CassandraResultSet(statement(false), result(valueTypes, rows));
+
+        assertTrue(resultSet.next());
+        // nothing was composed when the cursor moved, so the getter reads the value as it is now
+        Arrays.fill(first.array(), (byte) 'b');
+        assertEquals("bbb", resultSet.getString("name"));
+        // and composes it once for the row
+        Arrays.fill(first.array(), (byte) 'x');
+        assertEquals("bbb", resultSet.getObject(2));
+
+        // the values of the previous row are dropped on the next one
+        assertTrue(resultSet.next());
+        Arrays.fill(second.array(), (byte) 'd');
+        assertEquals("ddd", resultSet.getObject("name"));
+        assertEquals(2, resultSet.getObject(1));
+        assertFalse(resultSet.next());
+    }
+
+    @Test
+    public void testParallelDecodingInSelectOrder() throws Exception {
+        // the metadata lists the columns in another order than the rows, as its hash map does
+        Map<String, String> valueTypes = new LinkedHashMap<String, String>();
+        valueTypes.put("name", "UTF8Type");
+        valueTypes.put("id", "Int32Type");
+        List<CqlRow> rows = new ArrayList<CqlRow>();
+        List<ByteBuffer> names = new ArrayList<ByteBuffer>();
+        for (int i = 0; i < 2 * ParallelDecoder.MIN_ROWS; i++) {
+            ByteBuffer name = ByteBufferUtil.bytes("name" + i);
+            names.add(name);
+            rows.add(row(ByteBufferUtil.bytes(i), column("id", ByteBufferUtil.bytes(i)),
+                    column("name", name)));
+        }
+        CassandraResultSet resultSet = new CassandraResultSet(statement(true), result(valueTypes, rows));
+        // the values composed ahead no longer depend on the raw values
+        for (ByteBuffer name : names) {
+            Arrays.fill(name.array(), (byte) 'x');
+        }
+        assertEquals("id", resultSet.getMetaData().getColumnName(1));
+        for (int i = 0; i < rows.size(); i++) {
+            assertTrue(resultSet.next());
+            assertEquals(i, resultSet.getObject(1));
+            assertEquals("name" + i, resultSet.getString("name"));
+        }
+        assertFalse(resultSet.next());
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+package org.apache.cassandra.cql.jdbc;
+
+import org.apache.cassandra.thrift.EndpointDetails;
+import org.apache.cassandra.thrift.KsDef;
+import org.apache.cassandra.thrift.TokenRange;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ClusterSnapshotUnitTest {
+
+    private static TokenRange range(String start, String end, String... hostsAndDcs) {
+        TokenRange range = new TokenRange(start, end, new ArrayList<String>());
+        List<EndpointDetails> details = new ArrayList<EndpointDetails>();
+        for (int i = 0; i < hostsAndDcs.length; i += 2) {
+            range.getEndpoints().add(hostsAndDcs[i]);
+            details.add(new EndpointDetails().setHost(hostsAndDcs[i]).setDatacenter(hostsAndDcs[i + 1]));
+        }
+        range.setEndpoint_details(details);
+        return range;
+    }
+
+    @Test
+    public void testGetHosts() throws Exception {
+        List<TokenRange> ring = Arrays.asList(
+                range("0", "100", "10.0.0.1", "dc1", "10.1.0.1", "dc2"),
+                range("100", "0", "10.0.0.2", "dc1", "10.0.0.1", "dc1"));
+        ClusterSnapshot snapshot = new ClusterSnapshot("Test Cluster", ring, TokenRing.MURMUR3_PARTITIONER, null,
+                new ColumnDecoder(new ArrayList<KsDef>()));
+        assertEquals(Arrays.asList("10.0.0.1", "10.1.0.1", "10.0.0.2"), snapshot.getHosts(null));
+        assertEquals(Arrays.asList("10.0.0.1", "10.0.0.2"), snapshot.getHosts("dc1"));
+        assertNotNull(snapshot.tokenRing);
+        assertNotNull(snapshot.decoder);
+    }
+
+    @Test
+    public void testShareAndInvalidate() throws Exception {
+        ClusterSnapshot snapshot = new ClusterSnapshot("Test Cluster", null, null, null, new ColumnDecoder(new ArrayList<KsDef>()));
+        assertNull(snapshot.tokenRing);
+        assertEquals(0, snapshot.getHosts(null).size());
+
+        String key = "jdbc:cassandra://snapshot-test:9160/ks#null";
+        String other = "jdbc:cassandra://snapshot-other:9160/ks#null";
+        assertNull(ClusterSnapshot.get(key));
+        ClusterSnapshot.share(key, snapshot, null, "ks", 3600);
+        ClusterSnapshot.share(other, snapshot, null, "ks", 3600);
+        assertSame(snapshot, ClusterSnapshot.get(key));
+        ClusterSnapshot.invalidate(key);
+        assertNull(ClusterSnapshot.get(key));
+        // a schema change on one cluster leaves the snapshots of the others shared
+        assertSame(snapshot, ClusterSnapshot.get(other));
+        ClusterSnapshot.invalidate(other);
+        assertNull(ClusterSnapshot.get(other));
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+package org.apache.cassandra.cql.jdbc;
+
+import org.apache.cassandra.cql.jdbc.TypedColumn.CollectionType;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class CodecPlanUnitTest {
+
+    @Test
+    public void testSimpleTypes() throws Exception {
+        CodecPlan plan = CodecPlan.forType("org.apache.cassandra.db.marshal.UTF8Type");
+        assertSame(JdbcUTF8.instance, plan.type);
+        assertSame(JdbcUTF8.instance, plan.valueType);
+        assertEquals(CollectionType.NOT_COLLECTION, plan.collectionType);
+        assertSame(JdbcAscii.instance, CodecPlan.forType("AsciiType").type);
+        assertSame(JdbcDate.instance, CodecPlan.forType("org.apache.cassandra.db.marshal.TimestampType").valueType);
+        assertNull(CodecPlan.forType(null).valueType);
+    }
+
+    @Test
+    public void testCollectionTypes() throws Exception {
+        CodecPlan list = CodecPlan.forType("org.apache.cassandra.db.marshal.ListType(org.apache.cassandra.db.marshal.Int32Type)");
+        assertEquals(CollectionType.LIST, list.collectionType);
+        assertNull(list.type);
+        assertNull(list.keyType);
+        assertSame(JdbcInt32.instance, list.valueType);
+
+        CodecPlan set = CodecPlan.forType("org.apache.cassandra.db.marshal.SetType(org.apache.cassandra.db.marshal.TimestampType)");
+        assertEquals(CollectionType.SET, set.collectionType);
+        assertSame(JdbcDate.instance, set.valueType);
+
+        CodecPlan map = CodecPlan.forType("org.apache.cassandra.db.marshal.MapType(org.apache.cassandra.db.marshal.TimestampType,org.apache.cassandra.db.marshal.LongType)");
+        assertEquals(CollectionType.MAP, map.collectionType);
+        assertSame(JdbcDate.instance, map.keyType);
+        assertSame(JdbcLong.instance, map.valueType);
+    }
+
+    @Test
+    public void testPlansAreShared() throws Exception {
+        String type = "org.apache.cassandra.db.marshal.MapType(org.apache.cassandra.db.marshal.UTF8Type,org.apache.cassandra.db.marshal.UTF8Type)";
+        assertSame(CodecPlan.forType(type), CodecPlan.forType(new String(type)));
+    }
+}
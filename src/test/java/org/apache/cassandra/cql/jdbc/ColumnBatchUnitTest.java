@@ -0,0 +1,94 @@
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+package org.apache.cassandra.cql.jdbc;
+
+import org.apache.cassandra.cql.jdbc.TypedColumn.CollectionType;
+import org.apache.cassandra.thrift.CqlRow;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.apache.cassandra.cql.jdbc.TestRows.column;
+import static org.apache.cassandra.cql.jdbc.TestRows.descriptor;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ColumnBatchUnitTest {
+
+    private static final ColumnDescriptor[] COLUMNS = {
+            descriptor("id", 0, JdbcInt32.instance),
+            descriptor("total", 1, JdbcLong.instance),
+            descriptor("score", 2, JdbcFloat.instance),
+            descriptor("country", 3, JdbcUTF8.instance),
+            descriptor("tags", 4, JdbcUTF8.instance, CollectionType.LIST)
+    };
+
+    private static CqlRow row(int id, Long total, float score, String country) {
+        return TestRows.row(ByteBufferUtil.bytes(id), column("id", ByteBufferUtil.bytes(id)),
+                column("total", total == null ? null : ByteBufferUtil.bytes(total)),
+                column("score", ByteBufferUtil.bytes(score)),
+                column("country", country == null ? ByteBufferUtil.EMPTY_BYTE_BUFFER : ByteBufferUtil.bytes(country)),
+                column("tags", null));
+    }
+
+    @Test
+    public void testDecodeColumns() throws Exception {
+        List<CqlRow> rows = Arrays.asList(row(1, 10L, 0.5f, "fr"), row(2, null, 1.5f, "de"), row(3, 30L, 2.5f, "fr"),
+                row(4, 40L, 3.5f, null));
+        ColumnBatch batch = new ColumnBatch(COLUMNS, rows);
+        assertEquals(4, batch.getRowCount());
+        assertEquals(5, batch.getColumnCount());
+        assertEquals(2, batch.findColumn("total"));
+        assertEquals("score", batch.getColumnName(3));
+
+        assertArrayEquals(new int[]{1, 2, 3, 4}, batch.getInts(1));
+        assertArrayEquals(new long[]{10, 0, 30, 40}, batch.getLongs(2));
+        assertTrue(batch.isNull(1, 2));
+        assertFalse(batch.isNull(0, 2));
+        assertEquals(1, batch.getNulls(2).cardinality());
+        assertArrayEquals(new double[]{0.5, 1.5, 2.5, 3.5}, batch.getDoubles(3), 0.0);
+
+        assertArrayEquals(new int[]{0, 1, 0, -1}, batch.getCodes(4));
+        assertArrayEquals(new String[]{"fr", "de"}, batch.getDictionary(4));
+        assertArrayEquals(new Object[]{"fr", "de", "fr", null}, batch.getObjects(4));
+        assertArrayEquals(new Object[]{1, 2, 3, 4}, batch.getObjects(1));
+        assertEquals(4, batch.getNulls(5).cardinality());
+    }
+
+    @Test(expected = SQLException.class)
+    public void testWrongType() throws Exception {
+        new ColumnBatch(COLUMNS, Arrays.asList(row(1, 10L, 0.5f, "fr"))).getLongs(1);
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        ColumnBatch batch = new ColumnBatch(COLUMNS, new ArrayList<CqlRow>());
+        assertEquals(0, batch.getRowCount());
+        assertEquals(0, batch.getInts(1).length);
+    }
+}
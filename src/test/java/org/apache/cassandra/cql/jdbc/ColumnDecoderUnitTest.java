@@ -0,0 +1,116 @@
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+package org.apache.cassandra.cql.jdbc;
+
+import org.apache.cassandra.thrift.CfDef;
+import org.apache.cassandra.thrift.KsDef;
+import org.apache.cassandra.thrift.NotFoundException;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.thrift.transport.TTransportException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ColumnDecoderUnitTest {
+
+    private static class CountingLoader implements ColumnDecoder.Loader {
+        final List<String> loaded = new ArrayList<String>();
+
+        public KsDef describe(String keyspace) throws Exception {
+            loaded.add(keyspace);
+            if (keyspace.equals("missing")) {
+                throw new NotFoundException();
+            }
+            if (keyspace.equals("unreachable")) {
+                throw new TTransportException("connection refused");
+            }
+            CfDef cf = new CfDef(keyspace, "users");
+            cf.setComparator_type("UTF8Type");
+            cf.setDefault_validation_class("Int32Type");
+            cf.setKey_validation_class("LongType");
+            cf.setKey_alias(ByteBufferUtil.bytes("id"));
+            return new KsDef(keyspace, "SimpleStrategy", Arrays.asList(cf));
+        }
+    }
+
+    @Test
+    public void testLazyLoading() throws Exception {
+        CountingLoader loader = new CountingLoader();
+        ColumnDecoder decoder = new ColumnDecoder(loader);
+        assertEquals(0, loader.loaded.size());
+
+        assertEquals(JdbcUTF8.instance, decoder.getComparator("ks1", "users"));
+        assertEquals(JdbcInt32.instance, decoder.getDefaultValidator("ks1", "users"));
+        assertEquals(JdbcLong.instance, decoder.getKeyValidator("ks1", "users"));
+        assertNull(decoder.getComparator("ks1", "unknown"));
+        assertEquals(Arrays.asList("ks1"), loader.loaded);
+
+        assertEquals("id", decoder.colNameAsString("ks2", "users", ByteBufferUtil.bytes("id")));
+        assertEquals(Arrays.asList("ks1", "ks2"), loader.loaded);
+
+        // a keyspace that does not exist is not asked for again
+        assertNull(decoder.getComparator("missing", "users"));
+        assertNull(decoder.getComparator("missing", "users"));
+        assertEquals(Arrays.asList("ks1", "ks2", "missing"), loader.loaded);
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        CountingLoader loader = new CountingLoader();
+        ColumnDecoder decoder = new ColumnDecoder(loader);
+        decoder.getComparator("ks1", "users");
+        decoder.getComparator("ks2", "users");
+
+        decoder.invalidate("ks1");
+        decoder.getComparator("ks1", "users");
+        decoder.getComparator("ks2", "users");
+        assertEquals(Arrays.asList("ks1", "ks2", "ks1"), loader.loaded);
+
+        decoder.invalidateAll();
+        decoder.getComparator("ks1", "users");
+        decoder.getComparator("ks2", "users");
+        assertEquals(Arrays.asList("ks1", "ks2", "ks1", "ks1", "ks2"), loader.loaded);
+    }
+
+    @Test
+    public void testFailedLoadRetriedLater() throws Exception {
+        CountingLoader loader = new CountingLoader();
+        ColumnDecoder decoder = new ColumnDecoder(loader, 100);
+        assertNull(decoder.getComparator("unreachable", "users"));
+        assertNull(decoder.getComparator("unreachable", "users"));
+        assertEquals(Arrays.asList("unreachable"), loader.loaded);
+
+        Thread.sleep(150);
+        assertNull(decoder.getComparator("unreachable", "users"));
+        assertEquals(Arrays.asList("unreachable", "unreachable"), loader.loaded);
+
+        // a schema change is worth trying again at once
+        decoder.invalidateAll();
+        assertNull(decoder.getComparator("unreachable", "users"));
+        assertEquals(Arrays.asList("unreachable", "unreachable", "unreachable"), loader.loaded);
+    }
+}
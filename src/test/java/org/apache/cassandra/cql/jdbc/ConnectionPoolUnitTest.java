@@ -0,0 +1,226 @@
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+package org.apache.cassandra.cql.jdbc;
+
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class ConnectionPoolUnitTest {
+
+    private static class CountingConnector implements ConnectionPool.Connector {
+        final AtomicInteger opened = new AtomicInteger();
+
+        public PooledCassandraConnection open() {
+            opened.incrementAndGet();
+            return mock(PooledCassandraConnection.class);
+        }
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        CountingConnector connector = new CountingConnector();
+        ConnectionPool pool = new ConnectionPool(connector);
+        PooledCassandraConnection first = pool.borrow();
+        PooledCassandraConnection second = pool.borrow();
+        assertNotSame(first, second);
+        assertEquals(2, pool.getSize());
+        pool.release(first);
+        pool.release(second);
+        assertEquals(2, pool.getIdle());
+        // the connection the thread returned last comes first
+        assertSame(second, pool.borrow());
+        assertSame(first, pool.borrow());
+        assertEquals(2, connector.opened.get());
+        assertEquals(0, pool.getIdle());
+    }
+
+    @Test
+    public void testMaxIdle() throws Exception {
+        ConnectionPool pool = new ConnectionPool(new CountingConnector());
+        pool.setMaxIdle(1);
+        PooledCassandraConnection first = pool.borrow();
+        PooledCassandraConnection second = pool.borrow();
+        pool.release(first);
+        pool.release(second);
+        verify(first, never()).close();
+        verify(second).close();
+        assertEquals(1, pool.getSize());
+        assertEquals(1, pool.getIdle());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        ConnectionPool pool = new ConnectionPool(new CountingConnector());
+        pool.setMaxSize(1);
+        pool.setWaitTimeout(50);
+        pool.borrow();
+        try {
+            pool.borrow();
+            fail();
+        } catch (SQLTransientConnectionException e) {
+            assertEquals(0, pool.getWaiting());
+        }
+        pool.setMaxWaiting(0);
+        try {
+            pool.borrow();
+            fail();
+        } catch (SQLTransientConnectionException e) {
+            assertEquals(0, pool.getWaiting());
+        }
+    }
+
+    @Test
+    public void testHandoff() throws Exception {
+        final ConnectionPool pool = new ConnectionPool(new CountingConnector());
+        pool.setMaxSize(1);
+        PooledCassandraConnection connection = pool.borrow();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<PooledCassandraConnection> waiter = executor.submit(new Callable<PooledCassandraConnection>() {
+                public PooledCassandraConnection call() throws SQLException {
+                    return pool.borrow();
+                }
+            });
+            while (pool.getWaiting() == 0) {
+                Thread.sleep(1);
+            }
+            pool.release(connection);
+            assertSame(connection, waiter.get(5, TimeUnit.SECONDS));
+            assertEquals(1, pool.getSize());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testDiscardAndClose() throws Exception {
+        CountingConnector connector = new CountingConnector();
+        ConnectionPool pool = new ConnectionPool(connector);
+        pool.setMaxSize(1);
+        PooledCassandraConnection broken = pool.borrow();
+        pool.discard(broken);
+        verify(broken).close();
+        // a connection released after it was discarded stays out of the pool
+        pool.release(broken);
+        PooledCassandraConnection connection = pool.borrow();
+        assertNotSame(broken, connection);
+        pool.release(connection);
+        pool.close();
+        verify(connection).close();
+        assertEquals(0, pool.getSize());
+        assertEquals(0, pool.getIdle());
+        try {
+            pool.borrow();
+            fail();
+        } catch (SQLException e) {
+            assertEquals(2, connector.opened.get());
+        }
+    }
+
+    @Test
+    public void testMinIdle() throws Exception {
+        CountingConnector connector = new CountingConnector();
+        ConnectionPool pool = new ConnectionPool(connector);
+        pool.setMinIdle(2);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.getIdle() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(2, pool.getIdle());
+        assertEquals(2, connector.opened.get());
+        pool.borrow();
+        pool.replenish();
+        assertEquals(2, pool.getIdle());
+        assertEquals(3, pool.getSize());
+        pool.close();
+    }
+
+    @Test
+    public void testIdleTimeout() throws Exception {
+        ConnectionPool pool = new ConnectionPool(new CountingConnector());
+        pool.setIdleTimeout(1);
+        PooledCassandraConnection first = pool.borrow();
+        PooledCassandraConnection second = pool.borrow();
+        pool.release(first);
+        pool.release(second);
+        pool.setMinIdle(1);
+        Thread.sleep(5);
+        pool.maintain();
+        assertEquals(1, pool.getSize());
+        assertEquals(1, pool.getIdle());
+        pool.close();
+    }
+
+    @Test
+    public void testMaxLifetime() throws Exception {
+        ConnectionPool pool = new ConnectionPool(new CountingConnector());
+        pool.setMaxLifetime(1);
+        PooledCassandraConnection connection = pool.borrow();
+        Thread.sleep(5);
+        pool.release(connection);
+        verify(connection).close();
+        assertEquals(0, pool.getSize());
+        pool.close();
+    }
+
+    @Test
+    public void testAutoSizing() throws Exception {
+        ConnectionPool pool = new ConnectionPool(new CountingConnector());
+        pool.setAutoSizing(true);
+        pool.setIdleTimeout(1);
+        PooledCassandraConnection first = pool.borrow();
+        PooledCassandraConnection second = pool.borrow();
+        PooledCassandraConnection third = pool.borrow();
+        pool.release(first);
+        pool.release(second);
+        pool.discard(third);
+        Thread.sleep(5);
+        // the three connections in use at once are kept open, and the discarded one is opened again
+        pool.maintain();
+        assertEquals(3, pool.getSize());
+        assertEquals(3, pool.getIdle());
+        // once the peak is forgotten, the connections time out
+        for (int i = 0; i < 12; i++) {
+            pool.maintain();
+        }
+        Thread.sleep(5);
+        pool.maintain();
+        assertEquals(0, pool.getSize());
+        pool.close();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+package org.apache.cassandra.cql.jdbc;
+
+import org.apache.cassandra.thrift.TimedOutException;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DriverMetricsUnitTest {
+
+    @Test
+    public void testStatementType() {
+        assertEquals("SELECT", DriverMetrics.statementType("  select * from t"));
+        assertEquals("INSERT", DriverMetrics.statementType("INSERT INTO t (a) VALUES (1)"));
+        assertEquals("UPDATE", DriverMetrics.statementType("UPDATE t SET a = 1 WHERE k = 2"));
+        assertEquals("DELETE", DriverMetrics.statementType("DELETE FROM t WHERE k = 2"));
+        assertEquals("BATCH", DriverMetrics.statementType("BEGIN UNLOGGED BATCH INSERT INTO t (a) VALUES (1) APPLY BATCH"));
+        assertEquals("OTHER", DriverMetrics.statementType("CREATE TABLE t (k int PRIMARY KEY)"));
+        assertEquals("OTHER", DriverMetrics.statementType(""));
+    }
+
+    @Test
+    public void testMBeans() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName selects = new ObjectName(DriverMetrics.DOMAIN + ":type=Statements,name=SELECT");
+        ObjectName table = new ObjectName(DriverMetrics.DOMAIN + ":type=Tables,name=metricstest");
+        DriverMetrics.QueryMetrics metrics = DriverMetrics.forQuery("SELECT a FROM metricstest WHERE k = 1");
+        long before = (Long) server.getAttribute(selects, "Count");
+        metrics.record(System.nanoTime());
+        assertEquals(before + 1, server.getAttribute(selects, "Count"));
+        assertEquals(1L, server.getAttribute(table, "Count"));
+
+        ObjectName errors = new ObjectName(DriverMetrics.DOMAIN + ":type=Errors");
+        long errorsBefore = (Long) server.getAttribute(errors, "ErrorCount");
+        DriverMetrics.error(new TimedOutException());
+        assertEquals(errorsBefore + 1, server.getAttribute(errors, "ErrorCount"));
+    }
+
+    @Test
+    public void testPoolMBeans() throws Exception {
+        ConnectionPool pool = new ConnectionPool(null);
+        ObjectName[] names = DriverMetrics.registerPool(pool, pool.borrowWait);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertTrue(server.isRegistered(names[0]));
+        assertEquals(0, server.getAttribute(names[0], "Active"));
+        assertEquals(0L, server.getAttribute(names[1], "Count"));
+        DriverMetrics.unregister(names);
+        pool.close();
+        assertTrue(!server.isRegistered(names[0]) && !server.isRegistered(names[1]));
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+package org.apache.cassandra.cql.jdbc;
+
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HostSelectionPoliciesUnitTest {
+
+    @Test
+    public void testRoundRobin() throws Exception {
+        List<String> hosts = Arrays.asList("rr1", "rr2", "rr3");
+        HostSelectionPolicy policy = HostSelectionPolicies.forName("roundrobin");
+        String first = policy.select(hosts);
+        Set<String> selected = new HashSet<String>();
+        selected.add(first);
+        selected.add(policy.select(hosts));
+        selected.add(policy.select(hosts));
+        assertEquals(3, selected.size());
+        assertEquals(first, policy.select(hosts));
+    }
+
+    @Test
+    public void testLeastOutstanding() throws Exception {
+        List<String> hosts = Arrays.asList("lo1", "lo2", "lo3");
+        HostStats.get("lo1").start();
+        HostStats.get("lo1").start();
+        long start = HostStats.get("lo2").start();
+        HostStats.get("lo3").start();
+        HostStats.get("lo2").finish(start, false);
+        HostSelectionPolicy policy = HostSelectionPolicies.forName("leastOutstanding");
+        for (int i = 0; i < 5; i++) {
+            assertEquals("lo2", policy.select(hosts));
+        }
+    }
+
+    @Test
+    public void testLatencyAware() throws Exception {
+        List<String> hosts = Arrays.asList("la1", "la2");
+        HostSelectionPolicy policy = HostSelectionPolicies.forName("latencyaware");
+        // a host that failed scores worse than one that answers
+        HostStats.get("la1").failed();
+        HostStats.get("la2").finish(HostStats.get("la2").start(), false);
+        assertTrue(HostStats.get("la1").getAverageLatency() > HostStats.get("la2").getAverageLatency());
+        for (int i = 0; i < 5; i++) {
+            assertEquals("la2", policy.select(hosts));
+        }
+        // a host without samples is probed
+        assertEquals("la3", policy.select(Arrays.asList("la1", "la2", "la3")));
+    }
+
+    @Test
+    public void testCustomPolicy() throws Exception {
+        HostSelectionPolicy policy = HostSelectionPolicies.forName(FirstHost.class.getName());
+        assertEquals("c1", policy.select(Arrays.asList("c1", "c2")));
+    }
+
+    @Test(expected = SQLException.class)
+    public void testUnknownPolicy() throws Exception {
+        HostSelectionPolicies.forName("java.lang.String");
+    }
+
+    public static class FirstHost implements HostSelectionPolicy {
+        public String select(List<String> hosts) {
+            return hosts.get(0);
+        }
+    }
+}
@@ -20,6 +20,7 @@
  */
 package org.apache.cassandra.cql.jdbc;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import org.apache.cassandra.cql.ConnectionDetails;
 import org.apache.cassandra.thrift.ConsistencyLevel;
 import org.junit.AfterClass;
@@ -35,12 +36,15 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class JdbcRegressionTest {
@@ -471,6 +475,178 @@ public class JdbcRegressionTest {
     }
 
 
+    @Test
+    public void testAsyncExecute() throws Exception {
+        CassandraStatementExtras statement = statementExtras(con.createStatement());
+
+        List<ListenableFuture<ResultSet>> updates = new ArrayList<ListenableFuture<ResultSet>>();
+        for (int i = 0; i < 20; i++) {
+            updates.add(statement.executeAsync("INSERT INTO regressiontest (keyname,bValue,iValue) VALUES( 'async" + i + "',true, " + i + ");"));
+        }
+        for (ListenableFuture<ResultSet> update : updates) {
+            assertNull(update.get());
+        }
+
+        PreparedStatement prepared = con.prepareStatement("SELECT iValue FROM regressiontest WHERE keyname=?;");
+        CassandraStatementExtras preparedExtras = statementExtras(prepared);
+        prepared.setString(1, "async7");
+        ListenableFuture<ResultSet> query = preparedExtras.executeQueryAsync();
+        // the bound values were captured on submission
+        prepared.setString(1, "async8");
+
+        ResultSet result = query.get();
+        assertTrue(result.next());
+        assertEquals(7, result.getInt(1));
+        statement.close();
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        Statement statement = con.createStatement();
+        for (int i = 0; i < 5; i++) {
+            statement.addBatch("INSERT INTO regressiontest (keyname,bValue,iValue) VALUES( 'batch" + i + "',true, " + i + ");");
+        }
+        int[] counts = statement.executeBatch();
+        assertEquals(5, counts.length);
+        assertEquals(Statement.SUCCESS_NO_INFO, counts[4]);
+        statement.close();
+
+        PreparedStatement prepared = con.prepareStatement("INSERT INTO regressiontest (keyname,bValue,iValue) VALUES(?, true, ?);");
+        for (int i = 5; i < 500; i++) {
+            prepared.setString(1, "batch" + i);
+            prepared.setInt(2, i);
+            prepared.addBatch();
+        }
+        counts = prepared.executeBatch();
+        assertEquals(495, counts.length);
+        assertEquals(0, prepared.executeBatch().length);
+
+        PreparedStatement query = con.prepareStatement("SELECT iValue FROM regressiontest WHERE keyname=?;");
+        for (int i : new int[]{0, 4, 5, 250, 499}) {
+            query.setString(1, "batch" + i);
+            ResultSet result = query.executeQuery();
+            assertTrue(result.next());
+            assertEquals(i, result.getInt(1));
+        }
+    }
+
+    @Test
+    public void testBulkLoad() throws Exception {
+        List<Object[]> rows = new ArrayList<Object[]>();
+        for (int i = 0; i < 2000; i++) {
+            rows.add(new Object[]{"bulk" + i, i});
+        }
+        CassandraBulkLoader loader = con.unwrap(CassandraBulkLoader.class);
+        loader.setWindowSize(300);
+        loader.setMaxInFlight(8);
+        long written = loader.load("INSERT INTO regressiontest (keyname,bValue,iValue) VALUES(?, true, ?);", rows.iterator());
+        assertEquals(2000, written);
+        assertEquals(0, loader.getRowsFailed());
+
+        PreparedStatement query = con.prepareStatement("SELECT iValue FROM regressiontest WHERE keyname=?;");
+        for (int i : new int[]{0, 299, 300, 1999}) {
+            query.setString(1, "bulk" + i);
+            ResultSet result = query.executeQuery();
+            assertTrue(result.next());
+            assertEquals(i, result.getInt(1));
+        }
+    }
+
+    @Test
+    public void testPaging() throws Exception {
+        Statement statement = con.createStatement();
+        for (int i = 0; i < 100; i++) {
+            statement.addBatch("INSERT INTO regressiontest (keyname,bValue,iValue) VALUES( 'page" + i + "',true, " + i + ");");
+        }
+        statement.executeBatch();
+
+        Set<String> unpaged = new HashSet<String>();
+        ResultSet result = statement.executeQuery("SELECT keyname FROM regressiontest;");
+        while (result.next()) {
+            unpaged.add(result.getString(1));
+        }
+
+        statement.setFetchSize(7);
+        Set<String> paged = new HashSet<String>();
+        int count = 0;
+        result = statement.executeQuery("SELECT keyname FROM regressiontest;");
+        while (result.next()) {
+            paged.add(result.getString(1));
+            count++;
+        }
+        assertEquals(unpaged.size(), count);
+        assertEquals(unpaged, paged);
+
+        result = statement.executeQuery("SELECT keyname FROM regressiontest LIMIT 20;");
+        count = 0;
+        while (result.next()) {
+            count++;
+        }
+        assertEquals(20, count);
+    }
+
+    @Test
+    public void testPrefetch() throws Exception {
+        java.sql.Connection prefetching = DriverManager.getConnection(String.format(
+                "jdbc:cassandra://%s:%d/%s?fetchsize=5&prefetchpages=2&prefetchthreshold=0.2", HOST, PORT, KEYSPACE));
+        Statement statement = prefetching.createStatement();
+        for (int i = 0; i < 50; i++) {
+            statement.addBatch("INSERT INTO regressiontest (keyname,bValue,iValue) VALUES( 'prefetch" + i + "',true, " + i + ");");
+        }
+        statement.executeBatch();
+
+        Set<String> keys = new HashSet<String>();
+        int count = 0;
+        ResultSet result = statement.executeQuery("SELECT keyname FROM regressiontest;");
+        while (result.next()) {
+            keys.add(result.getString(1));
+            count++;
+        }
+        assertEquals(keys.size(), count);
+        for (int i = 0; i < 50; i++) {
+            assertTrue(keys.contains("prefetch" + i));
+        }
+        prefetching.close();
+    }
+
+    @Test
+    public void testScroll() throws Exception {
+        Statement statement = con.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+        for (int i = 0; i < 30; i++) {
+            statement.addBatch("INSERT INTO regressiontest (keyname,bValue,iValue) VALUES( 'scroll" + i + "',true, " + i + ");");
+        }
+        statement.executeBatch();
+
+        statement.setFetchSize(7);
+        ResultSet result = statement.executeQuery("SELECT keyname FROM regressiontest;");
+        List<String> forward = new ArrayList<String>();
+        while (result.next()) {
+            forward.add(result.getString(1));
+        }
+        assertTrue(result.isAfterLast());
+        assertTrue(forward.size() >= 30);
+
+        assertTrue(result.last());
+        assertEquals(forward.size(), result.getRow());
+        assertEquals(forward.get(forward.size() - 1), result.getString(1));
+        for (int row = forward.size() - 1; row >= 0; row--) {
+            assertEquals(forward.get(row), result.getString(1));
+            assertEquals(row > 0, result.previous());
+        }
+        assertTrue(result.isBeforeFirst());
+
+        assertTrue(result.absolute(10));
+        assertEquals(forward.get(9), result.getString(1));
+        assertTrue(result.relative(-5));
+        assertEquals(forward.get(4), result.getString(1));
+        assertTrue(result.absolute(-2));
+        assertEquals(forward.get(forward.size() - 2), result.getString(1));
+        assertFalse(result.relative(5));
+        assertTrue(result.isAfterLast());
+        assertTrue(result.first());
+        assertEquals(forward.get(0), result.getString(1));
+    }
+
     @Test
     public void isValid() throws Exception {
 //    	assert con.isValid(3);
@@ -0,0 +1,130 @@
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+package org.apache.cassandra.cql.jdbc;
+
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.CqlRow;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.apache.cassandra.cql.jdbc.TestRows.column;
+import static org.apache.cassandra.cql.jdbc.TestRows.idAndName;
+import static org.apache.cassandra.cql.jdbc.TestRows.row;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PackedRowStoreUnitTest {
+
+    private static final ColumnDescriptor[] COLUMNS = idAndName();
+
+    @Test
+    public void testDescribedRows() throws Exception {
+        PackedRowStore store = new PackedRowStore(COLUMNS);
+        for (int i = 0; i < 1000; i++) {
+            store.add(row(ByteBufferUtil.bytes(i), column("id", ByteBufferUtil.bytes(i)),
+                    column("name", i % 3 == 0 ? null : ByteBufferUtil.bytes("name" + i))));
+        }
+        assertEquals(1000, store.size());
+        for (int i : new int[]{999, 0, 500, 3, 4}) {
+            CqlRow row = store.get(i);
+            assertArrayEquals(ByteBufferUtil.getArray(ByteBufferUtil.bytes(i)), row.getKey());
+            List<Column> columns = row.getColumns();
+            assertEquals(2, columns.size());
+            assertEquals("id", ByteBufferUtil.string(columns.get(0).name));
+            assertEquals(i, ByteBufferUtil.toInt(columns.get(0).value));
+            if (i % 3 == 0) {
+                assertNull(columns.get(1).value);
+            } else {
+                assertEquals("name" + i, ByteBufferUtil.string(columns.get(1).value));
+            }
+        }
+    }
+
+    @Test
+    public void testNamedRows() throws Exception {
+        PackedRowStore store = new PackedRowStore(COLUMNS);
+        store.add(row(null, column("id", ByteBufferUtil.bytes(1)), column("name", ByteBufferUtil.bytes("a"))));
+        store.add(row(ByteBufferUtil.bytes("k"), column("other", ByteBufferUtil.EMPTY_BYTE_BUFFER)));
+
+        CqlRow first = store.get(0);
+        assertNull(first.getKey());
+        assertEquals(2, first.getColumns().size());
+
+        CqlRow second = store.get(1);
+        assertEquals("k", ByteBufferUtil.string(second.bufferForKey()));
+        assertEquals(1, second.getColumns().size());
+        assertEquals("other", ByteBufferUtil.string(second.getColumns().get(0).name));
+        assertEquals(0, second.getColumns().get(0).value.remaining());
+    }
+
+    @Test
+    public void testSpill() throws Exception {
+        PackedRowStore store = new PackedRowStore(COLUMNS, 1000);
+        for (int i = 0; i < 500; i++) {
+            store.add(row(ByteBufferUtil.bytes(i), column("id", ByteBufferUtil.bytes(i)),
+                    i % 2 == 0 ? column("name", ByteBufferUtil.bytes("name" + i)) : column("other", null)));
+            assertEquals(store.getLength() > 1000, store.isSpilled());
+        }
+        assertTrue(store.isSpilled());
+        assertEquals(500, store.size());
+        for (int i : new int[]{0, 499, 49, 50, 51, 250}) {
+            CqlRow row = store.get(i);
+            assertEquals(i, ByteBufferUtil.toInt(row.bufferForKey()));
+            assertEquals(i, ByteBufferUtil.toInt(row.getColumns().get(0).value));
+            if (i % 2 == 0) {
+                assertEquals("name" + i, ByteBufferUtil.string(row.getColumns().get(1).value));
+            } else {
+                assertEquals("other", ByteBufferUtil.string(row.getColumns().get(1).name));
+                assertNull(row.getColumns().get(1).value);
+            }
+        }
+        store.close();
+        assertFalse(store.isSpilled());
+    }
+
+    @Test
+    public void testEstimateLength() throws Exception {
+        PackedRowStore store = new PackedRowStore(COLUMNS);
+        List<CqlRow> rows = new ArrayList<CqlRow>();
+        for (int i = 0; i < 10; i++) {
+            rows.add(row(ByteBufferUtil.bytes(i), column("id", ByteBufferUtil.bytes(i)), column("name", null)));
+            store.add(rows.get(i));
+        }
+        assertEquals(store.getLength(), PackedRowStore.estimateLength(rows));
+    }
+
+    @Test
+    public void testViewsAreIndependent() throws Exception {
+        PackedRowStore store = new PackedRowStore(COLUMNS);
+        store.add(row(null, column("id", ByteBufferUtil.bytes(7)), column("name", ByteBufferUtil.bytes("x"))));
+        ByteBuffer value = store.get(0).getColumns().get(0).value;
+        value.getInt();
+        assertEquals(7, ByteBufferUtil.toInt(store.get(0).getColumns().get(0).value));
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+package org.apache.cassandra.cql.jdbc;
+
+import org.apache.cassandra.cql.jdbc.TypedColumn.CollectionType;
+import org.apache.cassandra.thrift.CqlRow;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.apache.cassandra.cql.jdbc.TestRows.column;
+import static org.apache.cassandra.cql.jdbc.TestRows.descriptor;
+import static org.apache.cassandra.cql.jdbc.TestRows.idAndName;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ParallelDecoderUnitTest {
+
+    private static final ColumnDescriptor[] COLUMNS = idAndName(descriptor("scores", 2, JdbcInt32.instance, CollectionType.LIST));
+
+    private static ByteBuffer list(int... elements) {
+        ByteBuffer bytes = ByteBuffer.allocate(2 + 6 * elements.length);
+        bytes.putShort((short) elements.length);
+        for (int element : elements) {
+            bytes.putShort((short) 4);
+            bytes.putInt(element);
+        }
+        bytes.flip();
+        return bytes;
+    }
+
+    private static CqlRow row(int id) {
+        return idAndName(id, column("scores", list(id, -id)));
+    }
+
+    @Test
+    public void testDecode() throws Exception {
+        List<CqlRow> rows = new ArrayList<CqlRow>();
+        for (int i = 0; i < 5000; i++) {
+            rows.add(row(i));
+        }
+        ParallelDecoder decoder = ParallelDecoder.decode(rows, COLUMNS);
+        assertEquals(5000, decoder.rows.size());
+        for (int i = 0; i < 5000; i++) {
+            assertSame(rows.get(i), decoder.rows.get(i));
+            assertArrayEquals(new Object[]{i, i % 2 == 0 ? null : "name" + i, Arrays.asList(i, -i)},
+                    decoder.values[i]);
+        }
+    }
+
+    @Test
+    public void testLeftToCursor() throws Exception {
+        ByteBuffer truncated = list(1, 2);
+        truncated.limit(truncated.limit() - 2);
+        List<CqlRow> rows = Arrays.asList(row(1),
+                TestRows.row(ByteBufferUtil.bytes(2), column("id", ByteBufferUtil.bytes(2))),
+                TestRows.row(ByteBufferUtil.bytes(3), column("id", ByteBufferUtil.bytes(3)), column("name", null),
+                        column("scores", truncated)));
+        ParallelDecoder decoder = ParallelDecoder.decode(rows, COLUMNS);
+        assertEquals(1, decoder.values[0][0]);
+        assertNull(decoder.values[1]);
+        assertNull(decoder.values[2]);
+    }
+}
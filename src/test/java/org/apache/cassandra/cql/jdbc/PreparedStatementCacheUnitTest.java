@@ -0,0 +1,91 @@
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+package org.apache.cassandra.cql.jdbc;
+
+import org.apache.cassandra.thrift.CqlPreparedResult;
+import org.apache.cassandra.thrift.InvalidRequestException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PreparedStatementCacheUnitTest {
+
+    private static CqlPreparedResult prepared(int itemId) {
+        return new CqlPreparedResult(itemId, 1);
+    }
+
+    @Test
+    public void testKey() {
+        String cql = "SELECT * FROM keytest WHERE id = ?";
+        CqlPreparedResult result = prepared(1);
+        PreparedStatementCache.put("10.0.0.1", "ks", cql, result);
+        assertSame(result, PreparedStatementCache.get("10.0.0.1", "ks", new String(cql)));
+        assertNull(PreparedStatementCache.get("10.0.0.2", "ks", cql));
+        assertNull(PreparedStatementCache.get("10.0.0.1", "other", cql));
+        assertNull(PreparedStatementCache.get("10.0.0.1", null, cql));
+        PreparedStatementCache.put("10.0.0.1", null, cql, result);
+        assertSame(result, PreparedStatementCache.get("10.0.0.1", null, cql));
+    }
+
+    @Test
+    public void testInvalidate() {
+        String cql = "SELECT * FROM invalidatetest WHERE id = ?";
+        PreparedStatementCache.put("10.0.0.1", "ks", cql, prepared(1));
+        PreparedStatementCache.invalidate("10.0.0.1", "ks", cql, 1);
+        assertNull(PreparedStatementCache.get("10.0.0.1", "ks", cql));
+
+        // another connection prepared the statement again meanwhile
+        CqlPreparedResult reprepared = prepared(2);
+        PreparedStatementCache.put("10.0.0.1", "ks", cql, reprepared);
+        PreparedStatementCache.invalidate("10.0.0.1", "ks", cql, 1);
+        assertSame(reprepared, PreparedStatementCache.get("10.0.0.1", "ks", cql));
+    }
+
+    @Test
+    public void testInvalidateKeyspace() {
+        String cql = "SELECT * FROM keyspacetest WHERE id = ?";
+        CqlPreparedResult other = prepared(3);
+        PreparedStatementCache.put("10.0.0.1", "changed", cql, prepared(1));
+        PreparedStatementCache.put("10.0.0.2", "changed", cql, prepared(2));
+        PreparedStatementCache.put("10.0.0.1", "other", cql, other);
+        PreparedStatementCache.put("10.0.0.3", "other", cql, other);
+        PreparedStatementCache.invalidateKeyspace("changed");
+        assertNull(PreparedStatementCache.get("10.0.0.1", "changed", cql));
+        assertNull(PreparedStatementCache.get("10.0.0.2", "changed", cql));
+        // the statements of the other keyspaces survive, on the same host or another
+        assertSame(other, PreparedStatementCache.get("10.0.0.1", "other", cql));
+        assertSame(other, PreparedStatementCache.get("10.0.0.3", "other", cql));
+    }
+
+    @Test
+    public void testIsUnknown() {
+        assertTrue(PreparedStatementCache.isUnknown(new InvalidRequestException("Prepared query with ID 42 not found"
+                + " (either the query was not prepared on this host (maybe the host has been restarted?)"
+                + " or you have prepared too many queries and it has been evicted from the internal cache)")));
+        assertTrue(PreparedStatementCache.isUnknown(new InvalidRequestException("Prepared query with id 42 not found")));
+        assertFalse(PreparedStatementCache.isUnknown(new InvalidRequestException("unconfigured table keytest")));
+        assertFalse(PreparedStatementCache.isUnknown(new InvalidRequestException()));
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+package org.apache.cassandra.cql.jdbc;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PreparedStatementPoolUnitTest {
+
+    private static CassandraPreparedStatement statement(String cql) {
+        CassandraPreparedStatement statement = mock(CassandraPreparedStatement.class);
+        when(statement.getCql()).thenReturn(cql);
+        return statement;
+    }
+
+    @Test
+    public void testTakeAndOffer() {
+        PreparedStatementPool pool = new PreparedStatementPool(4);
+        assertNull(pool.take("SELECT a FROM t"));
+        CassandraPreparedStatement statement = statement("SELECT a FROM t");
+        pool.offer(statement);
+        assertSame(statement, pool.take("SELECT a FROM t"));
+        assertNull(pool.take("SELECT a FROM t"));
+        assertEquals(1, pool.getHits());
+        assertEquals(2, pool.getMisses());
+        verify(statement, never()).close();
+    }
+
+    @Test
+    public void testEviction() {
+        PreparedStatementPool pool = new PreparedStatementPool(2);
+        CassandraPreparedStatement first = statement("SELECT a FROM t");
+        CassandraPreparedStatement second = statement("SELECT b FROM t");
+        CassandraPreparedStatement third = statement("SELECT c FROM t");
+        pool.offer(first);
+        pool.offer(second);
+        // the first CQL was used more recently than the second
+        pool.offer(pool.take("SELECT a FROM t"));
+        pool.offer(third);
+        assertEquals(2, pool.size());
+        verify(second).close();
+        verify(first, never()).close();
+        verify(third, never()).close();
+        assertSame(first, pool.take("SELECT a FROM t"));
+        assertNull(pool.take("SELECT b FROM t"));
+    }
+
+    @Test
+    public void testClose() {
+        PreparedStatementPool pool = new PreparedStatementPool(2);
+        CassandraPreparedStatement statement = statement("SELECT a FROM t");
+        pool.offer(statement);
+        pool.close();
+        verify(statement).close();
+        assertNull(pool.take("SELECT a FROM t"));
+    }
+
+    @Test
+    public void testDisabled() {
+        PreparedStatementPool pool = new PreparedStatementPool(0);
+        CassandraPreparedStatement statement = statement("SELECT a FROM t");
+        pool.offer(statement);
+        verify(statement).close();
+        assertNull(pool.take("SELECT a FROM t"));
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+package org.apache.cassandra.cql.jdbc;
+
+import org.apache.cassandra.thrift.Cassandra;
+import org.apache.cassandra.thrift.CqlMetadata;
+import org.apache.cassandra.thrift.CqlResult;
+import org.apache.cassandra.thrift.CqlResultType;
+import org.apache.cassandra.thrift.CqlRow;
+import org.apache.cassandra.thrift.InvalidRequestException;
+import org.apache.thrift.TBase;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.transport.TMemoryBuffer;
+import org.apache.thrift.transport.TMemoryInputTransport;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.apache.cassandra.cql.jdbc.TestRows.idAndName;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StreamingClientUnitTest {
+
+    private static CqlResult rows(int count) {
+        List<CqlRow> rows = new ArrayList<CqlRow>();
+        for (int i = 0; i < count; i++) {
+            rows.add(idAndName(i));
+        }
+        CqlResult result = new CqlResult(CqlResultType.ROWS);
+        result.setRows(rows);
+        result.setSchema(new CqlMetadata(new HashMap<ByteBuffer, String>(), new HashMap<ByteBuffer, String>(),
+                "UTF8Type", "Int32Type"));
+        return result;
+    }
+
+    /**
+     * @return a client reading the given result as the reply to a call
+     */
+    private static StreamingClient reply(String method, TBase result) throws Exception {
+        TMemoryBuffer buffer = new TMemoryBuffer(1024);
+        TBinaryProtocol protocol = new TBinaryProtocol(buffer);
+        protocol.writeMessageBegin(new TMessage(method, TMessageType.REPLY, 0));
+        result.write(protocol);
+        protocol.writeMessageEnd();
+        byte[] frame = Arrays.copyOf(buffer.getArray(), buffer.length());
+        return new StreamingClient(new TBinaryProtocol(new TMemoryInputTransport(frame)));
+    }
+
+    @Test
+    public void testRowsStayInFrame() throws Exception {
+        CqlResult expected = rows(100);
+        Cassandra.execute_cql3_query_result reply = new Cassandra.execute_cql3_query_result();
+        reply.setSuccess(expected);
+        CqlResult result = reply("execute_cql3_query", reply).recv_execute_cql3_query();
+
+        assertTrue(result.getRows() instanceof StreamingClient.FrameRows);
+        assertEquals(expected, result);
+        assertEquals(expected.getRows().get(99), result.getRows().get(99));
+        assertEquals(1, result.getRows().subList(50, 51).size());
+    }
+
+    @Test
+    public void testPreparedRows() throws Exception {
+        CqlResult expected = rows(0);
+        Cassandra.execute_prepared_cql3_query_result reply = new Cassandra.execute_prepared_cql3_query_result();
+        reply.setSuccess(expected);
+        CqlResult result = reply("execute_prepared_cql3_query", reply).recv_execute_prepared_cql3_query();
+        assertEquals(0, result.getRowsSize());
+        assertEquals(expected.getSchema(), result.getSchema());
+    }
+
+    @Test
+    public void testException() throws Exception {
+        Cassandra.execute_cql3_query_result reply = new Cassandra.execute_cql3_query_result();
+        reply.setIre(new InvalidRequestException("unconfigured columnfamily"));
+        try {
+            reply("execute_cql3_query", reply).recv_execute_cql3_query();
+            fail();
+        } catch (InvalidRequestException e) {
+            assertEquals("unconfigured columnfamily", e.getWhy());
+        }
+    }
+}
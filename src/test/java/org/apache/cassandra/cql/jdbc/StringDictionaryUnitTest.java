@@ -0,0 +1,81 @@
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+package org.apache.cassandra.cql.jdbc;
+
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class StringDictionaryUnitTest {
+
+    @Test
+    public void testSharedValues() throws Exception {
+        StringDictionary dictionary = new StringDictionary(JdbcUTF8.instance);
+        String first = dictionary.get(ByteBufferUtil.bytes("shipped"));
+        for (int i = 0; i < 10000; i++) {
+            assertSame(first, dictionary.get(ByteBufferUtil.bytes("shipped")));
+            assertEquals("pending" + i % 10, dictionary.get(ByteBufferUtil.bytes("pending" + i % 10)));
+        }
+        assertEquals("shipped", first);
+        assertSame(dictionary.get(ByteBufferUtil.bytes("pending1")), dictionary.get(ByteBufferUtil.bytes("pending1")));
+    }
+
+    @Test
+    public void testDistinctValues() throws Exception {
+        StringDictionary dictionary = new StringDictionary(JdbcUTF8.instance);
+        for (int i = 0; i < 10000; i++) {
+            assertEquals("id" + i, dictionary.get(ByteBufferUtil.bytes("id" + i)));
+        }
+        // no longer in use once the values turned out not to repeat
+        assertNotSame(dictionary.get(ByteBufferUtil.bytes("id1")), dictionary.get(ByteBufferUtil.bytes("id1")));
+    }
+
+    @Test
+    public void testLongValues() throws Exception {
+        StringDictionary dictionary = new StringDictionary(JdbcUTF8.instance);
+        StringBuilder text = new StringBuilder();
+        while (text.length() <= StringDictionary.MAX_VALUE_BYTES) {
+            text.append("long value ");
+        }
+        String value = dictionary.get(ByteBufferUtil.bytes(text.toString()));
+        assertEquals(text.toString(), value);
+        assertNotSame(value, dictionary.get(ByteBufferUtil.bytes(text.toString())));
+    }
+
+    @Test
+    public void testAscii() throws Exception {
+        ByteBuffer bytes = ByteBuffer.wrap("xxabcxx".getBytes("US-ASCII"), 2, 3);
+        assertEquals("abc", StringDictionary.ascii(bytes));
+        assertEquals(2, bytes.position());
+        ByteBuffer accented = ByteBufferUtil.bytes("café", Charset.forName("UTF-8"));
+        assertNull(StringDictionary.ascii(accented));
+        assertEquals("café", JdbcUTF8.instance.getString(accented));
+        assertEquals("", JdbcAscii.instance.getString(ByteBufferUtil.EMPTY_BYTE_BUFFER));
+    }
+}
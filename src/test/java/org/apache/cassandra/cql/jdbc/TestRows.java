@@ -0,0 +1,87 @@
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+
+package org.apache.cassandra.cql.jdbc;
+
+import org.apache.cassandra.cql.jdbc.TypedColumn.CollectionType;
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.CqlRow;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builders of the thrift rows and column descriptors shared by the unit tests.
+ */
+final class TestRows {
+
+    private TestRows() {
+    }
+
+    static Column column(String name, ByteBuffer value) {
+        Column column = new Column(ByteBufferUtil.bytes(name));
+        column.setValue(value);
+        return column;
+    }
+
+    /**
+     * @return a row of the given key whose column list can still be modified
+     */
+    static CqlRow row(ByteBuffer key, Column... columns) {
+        CqlRow row = new CqlRow();
+        row.setKey(key);
+        row.setColumns(new ArrayList<Column>(Arrays.asList(columns)));
+        return row;
+    }
+
+    /**
+     * @return a row keyed by id with an int "id" and a text "name", null for even ids, followed by the given columns
+     */
+    static CqlRow idAndName(int id, Column... more) {
+        CqlRow row = row(ByteBufferUtil.bytes(id), column("id", ByteBufferUtil.bytes(id)),
+                column("name", id % 2 == 0 ? null : ByteBufferUtil.bytes("name" + id)));
+        row.getColumns().addAll(Arrays.asList(more));
+        return row;
+    }
+
+    static ColumnDescriptor descriptor(String name, int position, AbstractJdbcType<?> valueType) {
+        return descriptor(name, position, valueType, CollectionType.NOT_COLLECTION);
+    }
+
+    static ColumnDescriptor descriptor(String name, int position, AbstractJdbcType<?> valueType, CollectionType type) {
+        return new ColumnDescriptor(ByteBufferUtil.bytes(name), position, JdbcUTF8.instance, valueType, null, type);
+    }
+
+    /**
+     * @return the descriptors of the "id" and "name" columns of {@link #idAndName}, followed by the given ones
+     */
+    static ColumnDescriptor[] idAndName(ColumnDescriptor... more) {
+        List<ColumnDescriptor> descriptors = new ArrayList<ColumnDescriptor>();
+        descriptors.add(descriptor("id", 0, JdbcInt32.instance));
+        descriptors.add(descriptor("name", 1, JdbcUTF8.instance));
+        descriptors.addAll(Arrays.asList(more));
+        return descriptors.toArray(new ColumnDescriptor[descriptors.size()]);
+    }
+}
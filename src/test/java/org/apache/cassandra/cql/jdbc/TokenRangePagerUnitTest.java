@@ -0,0 +1,84 @@
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+package org.apache.cassandra.cql.jdbc;
+
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.CqlRow;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TokenRangePagerUnitTest {
+
+    @Test
+    public void testPageableQueries() throws Exception {
+        Matcher matcher = TokenRangePager.PAGEABLE_PATTERN.matcher("select * from ks.users limit 50000 allow filtering;");
+        assertTrue(matcher.matches());
+        assertEquals("ks", matcher.group(3));
+        assertEquals("users", matcher.group(4));
+        assertEquals("50000", matcher.group(5));
+
+        matcher = TokenRangePager.PAGEABLE_PATTERN.matcher("SELECT DISTINCT id\nFROM users");
+        assertTrue(matcher.matches());
+        assertNull(matcher.group(3));
+        assertEquals("id", matcher.group(2));
+
+        assertFalse(TokenRangePager.PAGEABLE_PATTERN.matcher("SELECT * FROM users WHERE id = 1").matches());
+        assertFalse(TokenRangePager.PAGEABLE_PATTERN.matcher("SELECT * FROM users ORDER BY name").matches());
+        assertFalse(TokenRangePager.PAGEABLE_PATTERN.matcher("UPDATE users SET name = 'x' WHERE id = 1").matches());
+    }
+
+    @Test
+    public void testSelectsPartitionKey() throws Exception {
+        List<String> key = Arrays.asList("a", "B");
+        assertTrue(TokenRangePager.selects("*", key));
+        assertTrue(TokenRangePager.selects("A, \"B\", c", key));
+        assertFalse(TokenRangePager.selects("a, b, c", key));
+        assertFalse(TokenRangePager.selects("a, \"B\" AS x", key));
+        assertFalse(TokenRangePager.selects("count(*)", Collections.singletonList("a")));
+    }
+
+    @Test
+    public void testNextLimit() throws Exception {
+        List<CqlRow> rows = new ArrayList<CqlRow>();
+        for (int i = 0; i < 10; i++) {
+            Column column = new Column(ByteBufferUtil.bytes("v"));
+            column.setValue(ByteBuffer.allocate(983));
+            rows.add(new CqlRow(ByteBufferUtil.bytes(i), Collections.singletonList(column)));
+        }
+        // rows of 1000 bytes each
+        assertEquals(100, TokenRangePager.nextLimit(rows, 5000, 100000));
+        assertEquals(50, TokenRangePager.nextLimit(rows, 50, 100000));
+        assertEquals(1, TokenRangePager.nextLimit(rows, 5000, 10));
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+package org.apache.cassandra.cql.jdbc;
+
+import org.apache.cassandra.thrift.TokenRange;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TokenRingUnitTest {
+
+    @Test
+    public void testMurmur3Token() throws Exception {
+        // tokens as computed by the Murmur3Partitioner of the server
+        assertEquals(-468459073612751032L, MurmurHash.getToken(ByteBufferUtil.bytes("key0")));
+        assertEquals(-6939566278689883785L, MurmurHash.getToken(ByteBufferUtil.bytes("async7")));
+        assertEquals(3387803449176249109L, MurmurHash.getToken(ByteBufferUtil.bytes("jsmith")));
+        assertEquals(8213365047359667313L, MurmurHash.getToken(ByteBufferUtil.bytes("1")));
+        assertEquals(Long.MIN_VALUE, MurmurHash.getToken(ByteBuffer.allocate(0)));
+    }
+
+    @Test
+    public void testTokenIgnoresBufferPosition() throws Exception {
+        ByteBuffer key = ByteBuffer.allocate(10);
+        key.put(new byte[]{1, 2, 3, 4});
+        key.put(ByteBufferUtil.bytes("jsmith"));
+        key.position(4);
+        assertEquals(3387803449176249109L, MurmurHash.getToken(key));
+        assertEquals(4, key.position());
+    }
+
+    @Test
+    public void testGetReplicas() throws Exception {
+        List<TokenRange> ranges = new ArrayList<TokenRange>();
+        ranges.add(new TokenRange("0", "4611686018427387904", Arrays.asList("10.0.0.3", "10.0.0.1")));
+        ranges.add(new TokenRange("-4611686018427387904", "0", Arrays.asList("10.0.0.2", "10.0.0.3")));
+        ranges.add(new TokenRange("4611686018427387904", "-4611686018427387904", Arrays.asList("10.0.0.1", "10.0.0.2")));
+        TokenRing ring = TokenRing.build(TokenRing.MURMUR3_PARTITIONER, ranges);
+
+        assertEquals(Arrays.asList("10.0.0.2", "10.0.0.3"), ring.getReplicas(0L));
+        assertEquals(Arrays.asList("10.0.0.3", "10.0.0.1"), ring.getReplicas(1L));
+        assertEquals(Arrays.asList("10.0.0.1", "10.0.0.2"), ring.getReplicas(Long.MAX_VALUE));
+        assertEquals(Arrays.asList("10.0.0.1", "10.0.0.2"), ring.getReplicas(Long.MIN_VALUE));
+        // "async7" hashes to -6939566278689883785
+        assertEquals(Arrays.asList("10.0.0.1", "10.0.0.2"), ring.getReplicas(ByteBufferUtil.bytes("async7")));
+        // "jsmith" hashes to 3387803449176249109
+        assertEquals(Arrays.asList("10.0.0.3", "10.0.0.1"), ring.getReplicas(ByteBufferUtil.bytes("jsmith")));
+    }
+
+    @Test
+    public void testUnsupportedPartitioner() throws Exception {
+        List<TokenRange> ranges = new ArrayList<TokenRange>();
+        ranges.add(new TokenRange("0", "0", Arrays.asList("10.0.0.1")));
+        assertNull(TokenRing.build("org.apache.cassandra.dht.RandomPartitioner", ranges));
+    }
+
+    @Test
+    public void testCompositeRoutingKey() throws Exception {
+        ByteBuffer key = TokenRing.routingKey(new ByteBuffer[]{ByteBufferUtil.bytes("ab"), ByteBufferUtil.bytes(1)});
+        assertEquals(ByteBuffer.wrap(new byte[]{0, 2, 'a', 'b', 0, 0, 4, 0, 0, 0, 1, 0}), key);
+
+        ByteBuffer single = ByteBufferUtil.bytes("ab");
+        assertEquals(single, TokenRing.routingKey(new ByteBuffer[]{single}));
+    }
+}
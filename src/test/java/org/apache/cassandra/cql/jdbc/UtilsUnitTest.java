@@ -26,10 +26,20 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.cassandra.thrift.Compression;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
+import java.util.Random;
+import java.util.zip.Inflater;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class UtilsUnitTest {
     private static final Logger LOG = LoggerFactory.getLogger(CollectionsTest.class);
@@ -102,4 +112,79 @@ public class UtilsUnitTest {
 
         assertEquals(happypath, Utils.PROTOCOL + result);
     }
+
+    @Test
+    public void testDetermineCurrentColumnFamily() throws Exception {
+        assertEquals("users", Utils.determineCurrentColumnFamily("SELECT * FROM users WHERE id = ?"));
+        assertEquals("users", Utils.determineCurrentColumnFamily("UPDATE users SET name = ? WHERE id = ?"));
+        assertEquals("users", Utils.determineCurrentColumnFamily("DELETE FROM users WHERE id = ?"));
+        assertEquals("users", Utils.determineCurrentColumnFamily("insert into users (id, name)\n values (?, ?)"));
+        assertNull(Utils.determineCurrentColumnFamily("TRUNCATE users"));
+    }
+
+    @Test
+    public void testIsSchemaChange() throws Exception {
+        assertTrue(Utils.isSchemaChange("CREATE TABLE users (id int PRIMARY KEY)"));
+        assertTrue(Utils.isSchemaChange("  alter table users\n add name text"));
+        assertTrue(Utils.isSchemaChange("DROP KEYSPACE test"));
+        assertFalse(Utils.isSchemaChange("SELECT * FROM users"));
+        assertFalse(Utils.isSchemaChange("INSERT INTO dropped (id) VALUES (1)"));
+    }
+
+    private static String inflate(ByteBuffer compressed) throws Exception {
+        Inflater inflater = new Inflater();
+        inflater.setInput(compressed.array(), compressed.arrayOffset() + compressed.position(), compressed.remaining());
+        byte[] buffer = new byte[1024 * 1024];
+        int length = inflater.inflate(buffer);
+        assertTrue(inflater.finished());
+        inflater.end();
+        return new String(buffer, 0, length, "UTF-8");
+    }
+
+    @Test
+    public void testCompressQuery() throws Exception {
+        String query = "SELECT * FROM users WHERE id = 'ünïcødé'";
+        assertEquals(query, inflate(Utils.compressQuery(query, Compression.GZIP)));
+        assertEquals(ByteBuffer.wrap(query.getBytes("UTF-8")), Utils.compressQuery(query, Compression.NONE));
+
+        // larger than the initial deflate buffer and not compressible
+        StringBuilder builder = new StringBuilder("INSERT INTO blobs (id, data) VALUES (1, 0x");
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            builder.append(Integer.toHexString(random.nextInt(16)));
+        }
+        String large = builder.append(")").toString();
+        assertEquals(large, inflate(Utils.compressQuery(large, Compression.GZIP)));
+
+        // cached queries share their bytes but not their buffers
+        ByteBuffer first = Utils.compressQuery(large, Compression.GZIP);
+        first.position(first.limit());
+        ByteBuffer second = Utils.compressQuery(large, Compression.GZIP);
+        assertNotSame(first, second);
+        assertEquals(large, inflate(second));
+    }
+
+    @Test
+    public void testChooseCompression() throws Exception {
+        assertEquals(Compression.NONE, Utils.chooseCompression("SELECT * FROM users", Compression.GZIP, 512));
+        assertEquals(Compression.GZIP, Utils.chooseCompression("SELECT * FROM users", Compression.GZIP, 10));
+        assertEquals(Compression.NONE, Utils.chooseCompression("SELECT * FROM users", Compression.NONE, 10));
+    }
+
+    @Test
+    public void testUtf8Length() throws Exception {
+        for (String string : Arrays.asList("", "SELECT * FROM users", "WHERE name = 'ünïcødé'", "'\u20ac'",
+                "'\ud83d\ude00'")) {
+            assertEquals(string, string.getBytes("UTF-8").length, Utils.utf8Length(string));
+        }
+    }
+
+    @Test
+    public void testBuildBatch() throws Exception {
+        List<String> statements = Arrays.asList("INSERT INTO t (k) VALUES (1);", " UPDATE t SET v = 2 WHERE k = 1 ", "DELETE FROM t WHERE k = 3 ; ");
+        assertEquals("BEGIN BATCH\nINSERT INTO t (k) VALUES (1);\nUPDATE t SET v = 2 WHERE k = 1;\nAPPLY BATCH",
+                Utils.buildBatch("LOGGED", statements, 0, 2));
+        assertEquals("BEGIN UNLOGGED BATCH\nDELETE FROM t WHERE k = 3;\nAPPLY BATCH",
+                Utils.buildBatch("UNLOGGED", statements, 2, 3));
+    }
 }